@@ -0,0 +1,315 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.util.Vector;
+
+/**
+ * A change to one node between two snapshots that may need attention: a node
+ * became critical, recovered from critical, appeared or disappeared.
+ * <p>
+ * Transitions are found by walking both trees together from the root.  A
+ * subtree with the same {@link NodeTree#getAlertHash(int) alert hash} in both
+ * trees is skipped without visiting its descendants, so the work is in
+ * proportion to the nodes that changed and their siblings, not the size of
+ * the tree.  Changes to alert messages alone are not transitions.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class AlertTransition {
+
+  /**
+   * A node became critical, including nodes that appear as critical.
+   */
+  static final byte CRITICAL = 1;
+
+  /**
+   * A node was critical and is now at any other alert level, including
+   * {@link AlertLevel#UNKNOWN}.
+   */
+  static final byte RECOVERED = 2;
+
+  /**
+   * A node was added, reported only for the top of an added subtree.
+   */
+  static final byte APPEARED = 3;
+
+  /**
+   * A node was removed, reported only for the top of a removed subtree.
+   */
+  static final byte DISAPPEARED = 4;
+
+  private static final AlertTransition[] NO_TRANSITIONS = new AlertTransition[0];
+
+  /**
+   * Gets the alert hash of a node from the hash code of its label, its alert
+   * level, and the sum of {@link #mixChildHash(int)} of its children.  The
+   * children are summed so the hash does not depend on their order.
+   *
+   * @see  NodeTree#getAlertHash(int)
+   */
+  static int getAlertHash(int labelHash, byte alertLevel, int childrenHash) {
+    int h = labelHash * 31 + alertLevel;
+    h ^= h >>> 16;
+    h *= 0x45d9f3b;
+    h ^= h >>> 16;
+    return h + childrenHash * 0x9e3779b9;
+  }
+
+  /**
+   * Mixes the alert hash of a child before it is added to the sum of its
+   * siblings, so similar children do not cancel each other.
+   */
+  static int mixChildHash(int hash) {
+    hash ^= hash >>> 15;
+    hash *= 0x2c1b3c6d;
+    hash ^= hash >>> 12;
+    return hash;
+  }
+
+  /**
+   * The old node of a node only in the new tree, at the top of an added
+   * subtree or within one.
+   */
+  private static final int
+    APPEARED_NODE = -1,
+    WITHIN_APPEARED = -2;
+
+  /**
+   * Adds a pair of nodes to visit, growing the stack as needed.
+   */
+  private static int[] push(int[] stack, int stackSize, int oldNode, int newNode, int depth) {
+    if (stackSize+3 > stack.length) {
+      int[] grown = new int[stack.length*2];
+      System.arraycopy(stack, 0, grown, 0, stackSize);
+      stack = grown;
+    }
+    stack[stackSize] = oldNode;
+    stack[stackSize+1] = newNode;
+    stack[stackSize+2] = depth;
+    return stack;
+  }
+
+  /**
+   * Finds the transitions from one tree to another, parents before children.
+   * This does not recurse.
+   */
+  static AlertTransition[] findTransitions(NodeTree oldTree, NodeTree newTree) {
+    Vector transitions = new Vector();
+    String[] path = new String[8];
+    // The nodes still to visit, as the old node, new node and depth of each
+    int[] stack = new int[3*16];
+    if (oldTree.getLabel(0).equals(newTree.getLabel(0))) {
+      if (oldTree.getAlertHash(0) == newTree.getAlertHash(0)) {
+        return NO_TRANSITIONS;
+      }
+      push(stack, 0, 0, 0, 0);
+    } else {
+      path[0] = oldTree.getLabel(0);
+      transitions.addElement(new AlertTransition(DISAPPEARED, path, 0, oldTree, 0));
+      push(stack, 0, APPEARED_NODE, 0, 0);
+    }
+    int stackSize = 3;
+    while (stackSize > 0) {
+      stackSize -= 3;
+      int oldNode = stack[stackSize];
+      int newNode = stack[stackSize+1];
+      int depth = stack[stackSize+2];
+      if (depth+1 >= path.length) {
+        String[] grown = new String[path.length*2];
+        System.arraycopy(path, 0, grown, 0, path.length);
+        path = grown;
+      }
+      // The ancestors are already in the path, since each subtree is finished before its siblings
+      path[depth] = newTree.getLabel(newNode);
+      if (oldNode < 0) {
+        // An added subtree, only visiting the children of nodes with critical descendants
+        if (oldNode == APPEARED_NODE) {
+          transitions.addElement(new AlertTransition(APPEARED, path, depth, newTree, newNode));
+        }
+        if (newTree.getAlertLevel(newNode) == AlertLevel.CRITICAL) {
+          transitions.addElement(new AlertTransition(CRITICAL, path, depth, newTree, newNode));
+        }
+        if (newTree.getDescendantCount(newNode, AlertLevel.CRITICAL) > 0) {
+          int first = newTree.getFirstChild(newNode);
+          for (int child=first+newTree.getChildCount(newNode)-1; child >= first; child--) {
+            stack = push(stack, stackSize, WITHIN_APPEARED, child, depth+1);
+            stackSize += 3;
+          }
+        }
+        continue;
+      }
+      byte oldLevel = oldTree.getAlertLevel(oldNode);
+      byte newLevel = newTree.getAlertLevel(newNode);
+      if (newLevel == AlertLevel.CRITICAL && oldLevel != AlertLevel.CRITICAL) {
+        transitions.addElement(new AlertTransition(CRITICAL, path, depth, newTree, newNode));
+      } else if (oldLevel == AlertLevel.CRITICAL && newLevel != AlertLevel.CRITICAL) {
+        transitions.addElement(new AlertTransition(RECOVERED, path, depth, newTree, newNode));
+      }
+      int newCount = newTree.getChildCount(newNode);
+      int oldCount = oldTree.getChildCount(oldNode);
+      if (newCount == 0 && oldCount == 0) {
+        continue;
+      }
+      // Pushed last to first so they are visited in order, skipping unchanged subtrees
+      int matched = 0;
+      int first = newTree.getFirstChild(newNode);
+      for (int child=first+newCount-1; child >= first; child--) {
+        int oldChild = oldCount == 0 ? -1 : oldTree.getChild(oldNode, newTree.getLabel(child));
+        if (oldChild == -1) {
+          stack = push(stack, stackSize, APPEARED_NODE, child, depth+1);
+          stackSize += 3;
+        } else {
+          matched++;
+          if (oldTree.getAlertHash(oldChild) != newTree.getAlertHash(child)) {
+            stack = push(stack, stackSize, oldChild, child, depth+1);
+            stackSize += 3;
+          }
+        }
+      }
+      // Labels are unique per parent, so when every old child was matched none were removed
+      if (matched < oldCount) {
+        for (int child=oldTree.getFirstChild(oldNode), end=child+oldCount; child<end; child++) {
+          String label = oldTree.getLabel(child);
+          if (newCount == 0 || newTree.getChild(newNode, label) == -1) {
+            path[depth+1] = label;
+            transitions.addElement(new AlertTransition(DISAPPEARED, path, depth+1, oldTree, child));
+          }
+        }
+      }
+    }
+    int size = transitions.size();
+    if (size == 0) {
+      return NO_TRANSITIONS;
+    }
+    AlertTransition[] array = new AlertTransition[size];
+    transitions.copyInto(array);
+    return array;
+  }
+
+  private final byte type;
+  private final String[] path;
+  private final byte alertLevel;
+  private final String alertMessage;
+
+  /**
+   * @param  path   the labels from the root, through <code>depth</code>
+   * @param  tree   the tree containing the node, the old tree when it disappeared
+   */
+  private AlertTransition(byte type, String[] path, int depth, NodeTree tree, int node) {
+    this.type = type;
+    this.path = new String[depth+1];
+    System.arraycopy(path, 0, this.path, 0, depth+1);
+    this.alertLevel = tree.getAlertLevel(node);
+    this.alertMessage = tree.getAlertMessage(node);
+  }
+
+  /**
+   * Gets the type of transition.
+   *
+   * @see  #CRITICAL
+   * @see  #RECOVERED
+   * @see  #APPEARED
+   * @see  #DISAPPEARED
+   */
+  byte getType() {
+    return type;
+  }
+
+  /**
+   * Gets the labels from the root to the node.  The array must not be modified.
+   */
+  String[] getPath() {
+    return path;
+  }
+
+  /**
+   * Gets the alert level of the node, its last alert level when it disappeared.
+   */
+  byte getAlertLevel() {
+    return alertLevel;
+  }
+
+  /**
+   * Gets the alert message of the node or <code>null</code> for none.
+   */
+  String getAlertMessage() {
+    return alertMessage;
+  }
+
+  /**
+   * Determines if this transition is for the given node or one of its
+   * descendants.
+   */
+  boolean isWithin(String[] ancestorPath) {
+    if (ancestorPath.length > path.length) {
+      return false;
+    }
+    for (int c=0; c<ancestorPath.length; c++) {
+      if (!ancestorPath[c].equals(path[c])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the labels of the path, skipping the root, separated by slashes.
+   */
+  String getPathDisplay() {
+    StringBuffer sb = new StringBuffer();
+    for (int c=1; c<path.length; c++) {
+      if (c>1) {
+        sb.append(" / ");
+      }
+      sb.append(path[c]);
+    }
+    return sb.toString();
+  }
+
+  public String toString() {
+    String typeDisplay;
+    switch (type) {
+      case CRITICAL:
+        typeDisplay = "Critical";
+        break;
+      case RECOVERED:
+        typeDisplay = "Recovered";
+        break;
+      case APPEARED:
+        typeDisplay = "Appeared";
+        break;
+      case DISAPPEARED:
+        typeDisplay = "Disappeared";
+        break;
+      default:
+        throw new RuntimeException("Unexpected value for type: "+type);
+    }
+    return alertMessage == null
+      ? typeDisplay+": "+getPathDisplay()
+      : typeDisplay+": "+getPathDisplay()+": "+alertMessage;
+  }
+}
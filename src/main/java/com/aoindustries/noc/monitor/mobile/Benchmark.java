@@ -0,0 +1,99 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import javax.microedition.lcdui.Display;
+import javax.microedition.lcdui.Form;
+import javax.microedition.midlet.MIDlet;
+
+/**
+ * Runs the {@link TreeBenchmark} on trees of each size, then the
+ * {@link CodecBenchmark}, showing each report as it completes.  Reports are
+ * also written to the console, so runs may be compared across builds in an
+ * emulator.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class Benchmark extends MIDlet implements Runnable {
+
+  /**
+   * The number of times each snapshot is decoded by the codec benchmark.
+   */
+  private static final int CODEC_ITERATIONS = 20;
+
+  private final Form form = new Form("Benchmark");
+  private Thread thread;
+
+  protected void startApp() {
+    Display.getDisplay(this).setCurrent(form);
+    synchronized (this) {
+      if (thread == null) {
+        thread = new Thread(this);
+        thread.start();
+      }
+    }
+  }
+
+  protected void pauseApp() {
+    // Keeps running
+  }
+
+  protected void destroyApp(boolean unconditional) {
+    synchronized (this) {
+      thread = null;
+    }
+  }
+
+  private synchronized boolean isRunning() {
+    return thread == Thread.currentThread();
+  }
+
+  private void report(String report) {
+    System.out.print(report);
+    form.append(report);
+  }
+
+  public void run() {
+    report("Tree benchmark version "+TreeBenchmark.VERSION+"\n");
+    for (int i=0; i<TreeBenchmark.HOSTS.length && isRunning(); i++) {
+      try {
+        report(TreeBenchmark.run(TreeBenchmark.HOSTS[i]));
+      } catch (OutOfMemoryError err) {
+        report("Out of memory at "+TreeBenchmark.HOSTS[i]+" hosts per data center\n");
+        break;
+      } catch (Exception err) {
+        report(err.toString()+"\n");
+      }
+    }
+    if (isRunning()) {
+      try {
+        report(CodecBenchmark.run(TreeBenchmark.HOSTS[1], CODEC_ITERATIONS));
+      } catch (Exception err) {
+        report(err.toString()+"\n");
+      }
+    }
+    report("Done\n");
+  }
+}
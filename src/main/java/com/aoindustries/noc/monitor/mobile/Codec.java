@@ -0,0 +1,245 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression of the responses from the server.
+ * <p>
+ * The client sends the codecs it supports, in order of preference, after the
+ * protocol version.  The server answers with the id of the codec it chose as
+ * a single uncompressed byte, followed by the compressed response.  A server
+ * that does not understand the protocol version sends gzip without the id,
+ * which is recognized by the first byte of the gzip header.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+abstract class Codec {
+
+  /**
+   * The codec ids.  Any change to the label dictionary requires a new id.
+   * Id 3 was an earlier label dictionary and is no longer used.
+   */
+  static final byte
+    GZIP = 1,
+    DEFLATE = 2,
+    DEFLATE_LABELS = 4;
+
+  /**
+   * The first byte of every gzip stream.
+   */
+  private static final int GZIP_MAGIC = 0x1f;
+
+  /**
+   * Labels and messages commonly seen in the tree, in the format written by
+   * {@link DataOutputStream#writeUTF(String)}, so the string table of a full
+   * tree may refer back to them.  The most common are last, where they are
+   * reached by the shortest distances.
+   */
+  private static final String[] DICTIONARY_STRINGS = {
+    "Unknown",
+    "Critical",
+    "Medium",
+    "Low",
+    "High",
+    " is Unknown",
+    " is Critical",
+    " is High",
+    " is Medium",
+    " is Low",
+    "PostgreSQL Servers",
+    "MySQL Servers",
+    "SMTP",
+    "HTTP",
+    "Backups",
+    "RAID",
+    "File Systems",
+    "Net Devices",
+    "Time",
+    "Hard Drives",
+    "Ping",
+    "Swap Space",
+    "Memory",
+    "Disk Space",
+    "Load Average",
+    "Data Center ",
+    ".aoindustries.com"
+  };
+
+  private static final byte[] LABEL_DICTIONARY;
+
+  static {
+    try {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bout);
+      for (int i=0; i<DICTIONARY_STRINGS.length; i++) out.writeUTF(DICTIONARY_STRINGS[i]);
+      out.flush();
+      LABEL_DICTIONARY = bout.toByteArray();
+    } catch (IOException err) {
+      throw new RuntimeException(err.toString());
+    }
+  }
+
+  /**
+   * A deflate stream, with or without the gzip header and a dictionary.
+   */
+  private static class DeflateCodec extends Codec {
+
+    private final boolean gzip;
+    private final byte[] dictionary;
+
+    private DeflateCodec(byte id, String name, boolean gzip, byte[] dictionary) {
+      super(id, name);
+      this.gzip = gzip;
+      this.dictionary = dictionary;
+    }
+
+    InputStream getInputStream(InputStream in) throws IOException {
+      return InflaterInputStream.getInstance(in, gzip, false, dictionary);
+    }
+
+    OutputStream getOutputStream(OutputStream out) throws IOException {
+      return new DeflaterOutputStream(out, gzip, dictionary);
+    }
+  }
+
+  /**
+   * The supported codecs, most preferred first.
+   */
+  private static final Codec[] codecs = {
+    new DeflateCodec(DEFLATE_LABELS, "deflate-labels", false, LABEL_DICTIONARY),
+    new DeflateCodec(DEFLATE, "deflate", false, null),
+    new DeflateCodec(GZIP, "gzip", true, null)
+  };
+
+  /**
+   * Gets the number of supported codecs.
+   */
+  static int getCodecCount() {
+    return codecs.length;
+  }
+
+  /**
+   * Gets a supported codec by preference.
+   */
+  static Codec getCodec(int index) {
+    return codecs[index];
+  }
+
+  /**
+   * Finds a supported codec by id.
+   *
+   * @return  the codec or <code>null</code> when not supported
+   */
+  static Codec findCodec(byte id) {
+    for (int i=0; i<codecs.length; i++) {
+      Codec codec = codecs[i];
+      if (codec.id == id) {
+        return codec;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Writes the ids of the supported codecs, most preferred first.
+   */
+  static void writeCodecs(DataOutputStream out) throws IOException {
+    out.writeByte(codecs.length);
+    for (int i=0; i<codecs.length; i++) out.writeByte(codecs[i].id);
+  }
+
+  /**
+   * Reads the codecs supported by the client and picks the first also
+   * supported here, or gzip when none are.
+   */
+  static Codec readCodecs(DataInputStream in) throws IOException {
+    Codec chosen = null;
+    int count = in.readUnsignedByte();
+    for (int i=0; i<count; i++) {
+      Codec codec = findCodec(in.readByte());
+      if (chosen == null) {
+        chosen = codec;
+      }
+    }
+    return chosen == null ? findCodec(GZIP) : chosen;
+  }
+
+  /**
+   * Reads the codec id sent by the server and opens the decompressing stream.
+   * A gzip stream from a server that does not understand the protocol
+   * version is also accepted.
+   */
+  static InputStream readInputStream(InputStream in) throws IOException {
+    int id = in.read();
+    if (id == -1) {
+      throw new EOFException();
+    }
+    if (id == GZIP_MAGIC) {
+      return InflaterInputStream.getInstance(in, true, true, null);
+    }
+    Codec codec = findCodec((byte)id);
+    if (codec == null) {
+      throw new IOException("Unsupported codec: "+id);
+    }
+    return codec.getInputStream(in);
+  }
+
+  private final byte id;
+  private final String name;
+
+  Codec(byte id, String name) {
+    this.id = id;
+    this.name = name;
+  }
+
+  final byte getId() {
+    return id;
+  }
+
+  public String toString() {
+    return name;
+  }
+
+  /**
+   * Opens a stream decompressing the provided stream.  Closing it closes the
+   * provided stream.
+   */
+  abstract InputStream getInputStream(InputStream in) throws IOException;
+
+  /**
+   * Opens a stream compressing into the provided stream.  Closing it closes
+   * the provided stream.
+   */
+  abstract OutputStream getOutputStream(OutputStream out) throws IOException;
+}
@@ -0,0 +1,122 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compares the bytes and decode time per snapshot of each {@link Codec}, using
+ * a full tree from a {@link SyntheticTree}.  Decode time is measured for the
+ * decompression alone and for decompression along with parsing the tree.
+ *
+ * @author  AO Industries, Inc.
+ */
+final class CodecBenchmark {
+
+  /** Make no instances. */
+  private CodecBenchmark() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param  hosts       the number of hosts in each of three data centers, with
+   *                     sixteen nodes per host
+   * @param  iterations  the number of times each snapshot is decoded
+   *
+   * @return  the report, one line per codec
+   */
+  static String run(int hosts, int iterations) throws IOException {
+    SyntheticTree synthetic = new SyntheticTree(1, 3, hosts, 15);
+    FlatNodeTree tree = FlatNodeTree.valueOf(synthetic.toNode());
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bout);
+    CompactNodeTree.write(out, tree);
+    out.flush();
+    byte[] raw = bout.toByteArray();
+    StringBuffer report = new StringBuffer();
+    report.append(tree.getSize()).append(" nodes, ").append(iterations).append(" iterations\n");
+    report.append("none: ").append(raw.length).append(" bytes, ");
+    appendTenths(report, time(null, raw, iterations, true)).append(" ms parse\n");
+    for (int i=0, count=Codec.getCodecCount(); i<count; i++) {
+      Codec codec = Codec.getCodec(i);
+      bout.reset();
+      OutputStream compressed = codec.getOutputStream(bout);
+      compressed.write(raw);
+      compressed.close();
+      byte[] bytes = bout.toByteArray();
+      report.append(codec).append(": ").append(bytes.length).append(" bytes, ");
+      appendTenths(report, time(codec, bytes, iterations, false)).append(" ms decode, ");
+      appendTenths(report, time(codec, bytes, iterations, true)).append(" ms parse\n");
+    }
+    return report.toString();
+  }
+
+  /**
+   * Decodes the bytes the given number of times.
+   *
+   * @param  codec  the codec or <code>null</code> when not compressed
+   * @param  parse  <code>true</code> to also parse the tree
+   *
+   * @return  the tenths of milliseconds per iteration
+   */
+  private static long time(Codec codec, byte[] bytes, int iterations, boolean parse) throws IOException {
+    byte[] buffer = new byte[4096];
+    long start = System.currentTimeMillis();
+    for (int i=0; i<iterations; i++) {
+      InputStream in = new ByteArrayInputStream(bytes);
+      if (codec != null) {
+        in = codec.getInputStream(in);
+      }
+      if (parse) {
+        SnapshotInput snapshotIn = SnapshotInput.getInstance(in);
+        try {
+          CompactNodeTree.readTree(snapshotIn);
+        } finally {
+          snapshotIn.close();
+        }
+      } else {
+        try {
+          while (in.read(buffer, 0, buffer.length) != -1) {
+            // Discard
+          }
+        } finally {
+          in.close();
+        }
+      }
+    }
+    return (System.currentTimeMillis() - start) * 10 / iterations;
+  }
+
+  private static StringBuffer appendTenths(StringBuffer report, long tenths) {
+    return report.append(tenths / 10).append('.').append(tenths % 10);
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The compact node tree format, used on the network and in the record store.
+ * <p>
+ * Every distinct label and alert message is written once, in a string table
+ * ahead of the nodes, with the most used strings first.  Each node then refers
+ * to its strings by index.  Indexes and child counts are written as variable
+ * length integers, seven bits per byte, so most take a single byte and there is
+ * no limit on the number of children.  The alert level and flags share a byte.
+ * </p>
+ * <p>
+ * The string table maps directly to the string pool of {@link FlatNodeTree},
+ * so repeated labels are also only kept in memory once.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class CompactNodeTree {
+
+  /** Make no instances. */
+  private CompactNodeTree() {
+    throw new AssertionError();
+  }
+
+  /**
+   * The flags byte of each node.
+   */
+  private static final int
+    ALERT_LEVEL_MASK = 0x0f,
+    HAS_ALERT_MESSAGE = 0x10,
+    ALLOWS_CHILDREN = 0x20;
+
+  /**
+   * Writes a non-negative int in one to five bytes.
+   */
+  static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    if (value<0) {
+      throw new IOException("Negative value not allowed: "+value);
+    }
+    while (value>0x7f) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  /**
+   * Gets the indexes of the counts, ordered by decreasing count.
+   */
+  static int[] sortByCount(int[] counts) {
+    int len = counts.length;
+    int[] sorted = new int[len];
+    for (int c=0; c<len; c++) sorted[c] = c;
+    for (int gap=len/2; gap>0; gap/=2) {
+      for (int c=gap; c<len; c++) {
+        int index = sorted[c];
+        int count = counts[index];
+        int d = c;
+        while (d >= gap && counts[sorted[d-gap]]<count) {
+          sorted[d] = sorted[d-gap];
+          d -= gap;
+        }
+        sorted[d] = index;
+      }
+    }
+    return sorted;
+  }
+
+  /**
+   * Writes a node tree to the provided DataOutputStream.
+   */
+  static void write(DataOutputStream out, FlatNodeTree tree) throws IOException {
+    String[] strings = tree.getStrings();
+    int numStrings = strings.length;
+    int numNodes = tree.getSize();
+
+    // Count how many times each string is used
+    int[] counts = new int[numStrings];
+    for (int c=0; c<numNodes; c++) {
+      counts[tree.getLabelIndex(c)]++;
+      int alertMessageIndex = tree.getAlertMessageIndex(c);
+      if (alertMessageIndex != -1) {
+        counts[alertMessageIndex]++;
+      }
+    }
+
+    // Most used first, so they get the shortest indexes
+    int[] sorted = sortByCount(counts);
+
+    // The string table
+    int[] newIndexes = new int[numStrings];
+    writeVarInt(out, numStrings);
+    for (int c=0; c<numStrings; c++) {
+      int str = sorted[c];
+      newIndexes[str] = c;
+      out.writeUTF(strings[str]);
+    }
+
+    // The nodes, in pre-order, with the next child to write by depth
+    int[] nodeStack = new int[16];
+    int[] nextChildStack = new int[16];
+    int depth = 0;
+    int node = 0;
+    while (true) {
+      writeVarInt(out, newIndexes[tree.getLabelIndex(node)]);
+      byte alertLevel = tree.getAlertLevel(node);
+      if (alertLevel<0 || alertLevel>ALERT_LEVEL_MASK) {
+        throw new IOException("Alert level out of range: "+alertLevel);
+      }
+      int alertMessageIndex = tree.getAlertMessageIndex(node);
+      int flags = alertLevel;
+      if (alertMessageIndex != -1) {
+        flags |= HAS_ALERT_MESSAGE;
+      }
+      if (tree.getAllowsChildren(node)) {
+        flags |= ALLOWS_CHILDREN;
+      }
+      out.writeByte(flags);
+      if (alertMessageIndex != -1) {
+        writeVarInt(out, newIndexes[alertMessageIndex]);
+      }
+      int numChildren = tree.getChildCount(node);
+      writeVarInt(out, numChildren);
+      if (numChildren>0) {
+        if (depth == nodeStack.length) {
+          int[] newNodeStack = new int[depth*2];
+          System.arraycopy(nodeStack, 0, newNodeStack, 0, depth);
+          nodeStack = newNodeStack;
+          int[] newNextChildStack = new int[depth*2];
+          System.arraycopy(nextChildStack, 0, newNextChildStack, 0, depth);
+          nextChildStack = newNextChildStack;
+        }
+        int firstChild = tree.getFirstChild(node);
+        nodeStack[depth] = node;
+        nextChildStack[depth] = firstChild+1;
+        depth++;
+        node = firstChild;
+      } else {
+        // Move to the next sibling of the nearest parent that has one
+        while (true) {
+          if (depth == 0) {
+            return;
+          }
+          int parentDepth = depth-1;
+          int parent = nodeStack[parentDepth];
+          int next = nextChildStack[parentDepth];
+          if (next<tree.getFirstChild(parent)+tree.getChildCount(parent)) {
+            nextChildStack[parentDepth] = next+1;
+            node = next;
+            break;
+          }
+          depth = parentDepth;
+        }
+      }
+    }
+  }
+
+  private static String getString(String[] strings, int index) throws IOException {
+    if (index >= strings.length) {
+      throw new IOException("String index out of range: "+index);
+    }
+    return strings[index];
+  }
+
+  /**
+   * Reads a node tree from the provided input, calling the handler as each
+   * node arrives.
+   *
+   * @see  NodeTreeReader
+   */
+  static void read(SnapshotInput in, NodeTreeReader.Handler handler) throws IOException {
+    int numStrings = in.readVarInt();
+    String[] strings = new String[numStrings];
+    for (int c=0; c<numStrings; c++) strings[c] = in.readUTF();
+    // The number of children still to be read, by depth of their parent
+    int[] remaining = new int[16];
+    int depth = 0;
+    while (true) {
+      String label = getString(strings, in.readVarInt());
+      int flags = in.readUnsignedByte();
+      String alertMessage = (flags & HAS_ALERT_MESSAGE) != 0 ? getString(strings, in.readVarInt()) : null;
+      int numChildren = in.readVarInt();
+      handler.startNode(
+        depth,
+        label,
+        (byte)(flags & ALERT_LEVEL_MASK),
+        alertMessage,
+        (flags & ALLOWS_CHILDREN) != 0,
+        numChildren
+      );
+      if (numChildren>0) {
+        if (depth == remaining.length) {
+          int[] newRemaining = new int[depth*2];
+          System.arraycopy(remaining, 0, newRemaining, 0, depth);
+          remaining = newRemaining;
+        }
+        remaining[depth++] = numChildren;
+      } else {
+        handler.endNode(depth);
+        // End each parent that has no more children
+        while (true) {
+          if (depth == 0) {
+            return;
+          }
+          int parentDepth = depth-1;
+          if (--remaining[parentDepth]>0) {
+            break;
+          }
+          handler.endNode(parentDepth);
+          depth = parentDepth;
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a node tree from the provided input.
+   */
+  static FlatNodeTree readTree(SnapshotInput in) throws IOException {
+    FlatNodeTree.Builder builder = new FlatNodeTree.Builder();
+    read(in, builder);
+    return builder.build();
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+/**
+ * The CRC-32 used by gzip, which is not provided by CLDC.
+ *
+ * @author  AO Industries, Inc.
+ */
+final class Crc32 {
+
+  /** Make no instances. */
+  private Crc32() {
+    throw new AssertionError();
+  }
+
+  private static final int[] table = new int[256];
+
+  static {
+    for (int n=0; n<256; n++) {
+      int c = n;
+      for (int k=0; k<8; k++) {
+        if ((c & 1) != 0) {
+          c = 0xedb88320 ^ (c >>> 1);
+        } else {
+          c >>>= 1;
+        }
+      }
+      table[n] = c;
+    }
+  }
+
+  /**
+   * Updates a CRC-32 with the provided bytes.  Start with a <code>crc</code>
+   * of <code>0</code>.
+   */
+  static int update(int crc, byte[] buf, int off, int len) {
+    int c = ~crc;
+    for (int end=off+len; off<end; off++) {
+      c = table[(c ^ buf[off]) & 0xff] ^ (c >>> 8);
+    }
+    return ~c;
+  }
+}
@@ -0,0 +1,429 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a raw deflate or gzip stream.  Matches are found with hash chains over
+ * a small window and encoded with the fixed Huffman codes, which keeps memory
+ * and time low enough to run in the {@link LocalServer} on a handset.
+ * <p>
+ * Each call to {@link #flush()} ends the current block followed by an empty
+ * stored block, so the reader may decode everything written so far.
+ * </p>
+ *
+ * @see  InflaterInputStream
+ *
+ * @author  AO Industries, Inc.
+ */
+class DeflaterOutputStream extends OutputStream {
+
+  /**
+   * The window searched for matches, smaller than the 32 KiB allowed.
+   */
+  private static final int WINDOW_SIZE = 8192;
+  private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+
+  private static final int HASH_BITS = 12;
+  private static final int HASH_SIZE = 1 << HASH_BITS;
+  private static final int HASH_MASK = HASH_SIZE - 1;
+
+  private static final int MIN_MATCH = 3;
+  private static final int MAX_MATCH = 258;
+
+  /**
+   * Compression stops with this much input left, unless flushing, so every
+   * match may reach its full length.
+   */
+  private static final int MIN_LOOKAHEAD = MAX_MATCH + MIN_MATCH + 1;
+
+  /**
+   * The most entries followed on each hash chain.
+   */
+  private static final int MAX_CHAIN = 32;
+
+  /**
+   * Stops searching once a match this long is found.
+   */
+  private static final int NICE_MATCH = 128;
+
+  private static final short NIL = -1;
+
+  /**
+   * The fixed literal and length codes, bit-reversed for writing.
+   */
+  private static final short[] LITERAL_CODES = new short[288];
+  private static final byte[] LITERAL_LENGTHS = new byte[288];
+
+  /**
+   * The length symbol, minus 257, for each match length minus {@link #MIN_MATCH}.
+   */
+  private static final byte[] LENGTH_SYMBOLS = new byte[MAX_MATCH - MIN_MATCH + 1];
+
+  private static final short[] LENGTH_BASE = {
+    3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+    35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258
+  };
+
+  private static final byte[] LENGTH_EXTRA = {
+    0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+    3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0
+  };
+
+  private static final short[] DISTANCE_BASE = {
+    1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+    257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+    8193, 12289, 16385, 24577
+  };
+
+  private static final byte[] DISTANCE_EXTRA = {
+    0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+    7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13
+  };
+
+  static {
+    for (int i=0; i<288; i++) {
+      int code;
+      int length;
+      if (i<144) {
+        code = 0x30 + i;
+        length = 8;
+      } else if (i<256) {
+        code = 0x190 + i - 144;
+        length = 9;
+      } else if (i<280) {
+        code = i - 256;
+        length = 7;
+      } else {
+        code = 0xc0 + i - 280;
+        length = 8;
+      }
+      LITERAL_CODES[i] = (short)reverse(code, length);
+      LITERAL_LENGTHS[i] = (byte)length;
+    }
+    for (int sym=0; sym<29; sym++) {
+      int end = sym == 28 ? MAX_MATCH : LENGTH_BASE[sym+1] - 1;
+      // 258 has its own symbol instead of being the last of 227-258
+      if (sym == 27) {
+        end = 257;
+      }
+      for (int len=LENGTH_BASE[sym]; len<=end; len++) LENGTH_SYMBOLS[len - MIN_MATCH] = (byte)sym;
+    }
+  }
+
+  private static int reverse(int code, int length) {
+    int reversed = 0;
+    for (int i=0; i<length; i++) {
+      reversed = (reversed << 1) | (code & 1);
+      code >>>= 1;
+    }
+    return reversed;
+  }
+
+  private static int getDistanceSymbol(int dist) {
+    int sym = 29;
+    while (DISTANCE_BASE[sym] > dist) sym--;
+    return sym;
+  }
+
+  private final OutputStream out;
+  private final boolean gzip;
+
+  /**
+   * The previous window followed by new input.
+   */
+  private final byte[] window = new byte[2 * WINDOW_SIZE];
+  private final short[] head = new short[HASH_SIZE];
+  private final short[] prev = new short[WINDOW_SIZE];
+  private int strStart;
+  private int lookahead;
+
+  private final byte[] buffer = new byte[4096];
+  private int count;
+  private int bitBuffer;
+  private int bitCount;
+  private boolean blockOpen;
+
+  private int crc;
+  private int size;
+  private boolean closed;
+
+  /**
+   * @param  gzip        <code>true</code> to write the gzip header and trailer
+   * @param  dictionary  the bytes preceding the stream or <code>null</code> for none
+   */
+  DeflaterOutputStream(OutputStream out, boolean gzip, byte[] dictionary) throws IOException {
+    this.out = out;
+    this.gzip = gzip;
+    for (int i=0; i<HASH_SIZE; i++) head[i] = NIL;
+    if (dictionary != null) {
+      int len = dictionary.length;
+      if (len > WINDOW_SIZE) {
+        len = WINDOW_SIZE;
+      }
+      System.arraycopy(dictionary, dictionary.length - len, window, 0, len);
+      for (int pos=0; pos + MIN_MATCH <= len; pos++) insert(pos);
+      strStart = len;
+    }
+    if (gzip) {
+      // Header: magic, deflate, no flags, no mtime, no extra flags, unknown OS
+      byte[] header = {
+        (byte)0x1f, (byte)0x8b, 8, 0,
+        0, 0, 0, 0,
+        0, (byte)255
+      };
+      System.arraycopy(header, 0, buffer, 0, header.length);
+      count = header.length;
+    }
+  }
+
+  private int hash(int pos) {
+    byte[] window = this.window;
+    return ((window[pos] << 8) ^ (window[pos+1] << 4) ^ window[pos+2]) & HASH_MASK;
+  }
+
+  /**
+   * Adds a position to its hash chain.
+   *
+   * @return  the previous position with the same hash or {@link #NIL}
+   */
+  private int insert(int pos) {
+    int h = hash(pos);
+    short previous = head[h];
+    prev[pos & WINDOW_MASK] = previous;
+    head[h] = (short)pos;
+    return previous;
+  }
+
+  private void writeBits(int value, int bits) throws IOException {
+    bitBuffer |= value << bitCount;
+    bitCount += bits;
+    while (bitCount >= 8) {
+      if (count == buffer.length) {
+        out.write(buffer, 0, count);
+        count = 0;
+      }
+      buffer[count++] = (byte)bitBuffer;
+      bitBuffer >>>= 8;
+      bitCount -= 8;
+    }
+  }
+
+  private void alignToByte() throws IOException {
+    if (bitCount > 0) {
+      writeBits(0, 8 - bitCount);
+    }
+  }
+
+  private void writeSymbol(int sym) throws IOException {
+    if (!blockOpen) {
+      // Not last, fixed codes
+      writeBits(2, 3);
+      blockOpen = true;
+    }
+    writeBits(LITERAL_CODES[sym], LITERAL_LENGTHS[sym]);
+  }
+
+  private void writeMatch(int length, int dist) throws IOException {
+    int sym = LENGTH_SYMBOLS[length - MIN_MATCH];
+    writeSymbol(257 + sym);
+    writeBits(length - LENGTH_BASE[sym], LENGTH_EXTRA[sym]);
+    int distSym = getDistanceSymbol(dist);
+    writeBits(reverse(distSym, 5), 5);
+    writeBits(dist - DISTANCE_BASE[distSym], DISTANCE_EXTRA[distSym]);
+  }
+
+  private void endBlock() throws IOException {
+    if (blockOpen) {
+      writeBits(LITERAL_CODES[256], LITERAL_LENGTHS[256]);
+      blockOpen = false;
+    }
+  }
+
+  /**
+   * Finds the longest match for the current position along its hash chain.
+   *
+   * @return  the length in the low 16 bits and distance in the high bits, or
+   *          zero when there is no match
+   */
+  private int longestMatch(int match) {
+    byte[] window = this.window;
+    int scan = strStart;
+    int limit = scan - WINDOW_SIZE;
+    int maxLength = lookahead < MAX_MATCH ? lookahead : MAX_MATCH;
+    int bestLength = MIN_MATCH - 1;
+    int bestDistance = 0;
+    for (int chain=MAX_CHAIN; match > limit && match >= 0 && chain > 0; chain--) {
+      if (
+        window[match + bestLength] == window[scan + bestLength]
+        && window[match] == window[scan]
+        && window[match + 1] == window[scan + 1]
+      ) {
+        int len = 2;
+        while (len < maxLength && window[match + len] == window[scan + len]) len++;
+        if (len > bestLength) {
+          bestLength = len;
+          bestDistance = scan - match;
+          if (len >= NICE_MATCH || len == maxLength) {
+            break;
+          }
+        }
+      }
+      match = prev[match & WINDOW_MASK];
+    }
+    return bestLength >= MIN_MATCH ? ((bestDistance << 16) | bestLength) : 0;
+  }
+
+  /**
+   * Encodes the input until only {@link #MIN_LOOKAHEAD} bytes are left, or all
+   * of it when flushing.
+   */
+  private void compress(boolean flush) throws IOException {
+    byte[] window = this.window;
+    while (lookahead >= MIN_LOOKAHEAD || (flush && lookahead > 0)) {
+      int match = 0;
+      if (lookahead >= MIN_MATCH) {
+        match = longestMatch(insert(strStart));
+      }
+      if (match != 0) {
+        int length = match & 0xffff;
+        writeMatch(length, match >>> 16);
+        lookahead -= length;
+        int end = strStart + length;
+        strStart++;
+        while (strStart < end) {
+          if (strStart + MIN_MATCH <= end + lookahead) {
+            insert(strStart);
+          }
+          strStart++;
+        }
+      } else {
+        writeSymbol(window[strStart] & 0xff);
+        strStart++;
+        lookahead--;
+      }
+    }
+  }
+
+  /**
+   * Moves the upper half of the window down once the input reaches the end.
+   */
+  private void slide() {
+    System.arraycopy(window, WINDOW_SIZE, window, 0, WINDOW_SIZE);
+    strStart -= WINDOW_SIZE;
+    for (int i=0; i<HASH_SIZE; i++) {
+      int pos = head[i];
+      head[i] = pos >= WINDOW_SIZE ? (short)(pos - WINDOW_SIZE) : NIL;
+    }
+    for (int i=0; i<WINDOW_SIZE; i++) {
+      int pos = prev[i];
+      prev[i] = pos >= WINDOW_SIZE ? (short)(pos - WINDOW_SIZE) : NIL;
+    }
+  }
+
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte)b}, 0, 1);
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (gzip) {
+      crc = Crc32.update(crc, b, off, len);
+      size += len;
+    }
+    while (len > 0) {
+      int end = strStart + lookahead;
+      if (end == window.length) {
+        compress(false);
+        slide();
+        end = strStart + lookahead;
+      }
+      int chunk = window.length - end;
+      if (chunk > len) {
+        chunk = len;
+      }
+      System.arraycopy(b, off, window, end, chunk);
+      lookahead += chunk;
+      off += chunk;
+      len -= chunk;
+    }
+  }
+
+  private static void setIntLE(byte[] buffer, int pos, int i) {
+    buffer[pos] = (byte)i;
+    buffer[pos+1] = (byte)(i >>> 8);
+    buffer[pos+2] = (byte)(i >>> 16);
+    buffer[pos+3] = (byte)(i >>> 24);
+  }
+
+  public void flush() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (lookahead > 0 || blockOpen) {
+      compress(true);
+      endBlock();
+      // Empty stored block, ending on a byte boundary
+      writeBits(0, 3);
+      alignToByte();
+      writeBits(0xffff0000, 32);
+    }
+    out.write(buffer, 0, count);
+    count = 0;
+    out.flush();
+  }
+
+  public void close() throws IOException {
+    if (!closed) {
+      try {
+        compress(true);
+        endBlock();
+        // Last block, fixed codes, end of block only
+        writeBits(3, 3);
+        writeBits(LITERAL_CODES[256], LITERAL_LENGTHS[256]);
+        alignToByte();
+        if (gzip) {
+          if (count + 8 > buffer.length) {
+            out.write(buffer, 0, count);
+            count = 0;
+          }
+          setIntLE(buffer, count, crc);
+          setIntLE(buffer, count + 4, size);
+          count += 8;
+        }
+        out.write(buffer, 0, count);
+        count = 0;
+        out.flush();
+      } finally {
+        closed = true;
+        out.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,403 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Caches the details of nodes by their label path, so drilling into a node is
+ * usually answered without waiting on the network.
+ * <p>
+ * The least recently used details are evicted once their estimated size
+ * exceeds {@link #MAX_SIZE}, and details older than {@link #MAX_AGE} are
+ * retrieved again.  When the same node is requested again while it is being
+ * retrieved, the requests share the one retrieval.
+ * </p>
+ * <p>
+ * The details of nodes at {@link AlertLevel#HIGH} or above are retrieved in
+ * the background after each new tree, most severe first, since those are
+ * the nodes most likely to be looked at.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class DetailCache {
+
+  private static final boolean DEBUG = false;
+
+  /**
+   * Retrieves the details of one node.
+   */
+  interface Fetcher {
+
+    /**
+     * @return  the details or <code>null</code> when the node is not found
+     */
+    NodeDetail fetch(String[] path) throws IOException;
+  }
+
+  /**
+   * The maximum estimated bytes of details kept.
+   */
+  static final int MAX_SIZE = 64 * 1024;
+
+  /**
+   * The number of milliseconds details are used before being retrieved again.
+   */
+  static final long MAX_AGE = 2L * 60 * 1000;
+
+  /**
+   * The maximum number of nodes prefetched for each tree.
+   */
+  private static final int MAX_PREFETCH = 8;
+
+  /**
+   * One cached node, in a doubly-linked list from most to least recently used.
+   */
+  private static class Entry {
+    private final String key;
+    private final NodeDetail detail;
+    private final long time;
+    private Entry previous;
+    private Entry next;
+
+    private Entry(String key, NodeDetail detail, long time) {
+      this.key = key;
+      this.detail = detail;
+      this.time = time;
+    }
+  }
+
+  /**
+   * A retrieval in progress, shared by all requests for the same node.
+   */
+  private static class Pending {
+    private boolean done;
+    private NodeDetail detail;
+    private IOException error;
+  }
+
+  private final Fetcher fetcher;
+
+  /**
+   * Also the lock for all fields.
+   */
+  private final Hashtable entries = new Hashtable();
+  private Entry first;
+  private Entry last;
+  private int size;
+  private final Hashtable pending = new Hashtable();
+
+  private final Vector prefetchQueue = new Vector();
+  private boolean prefetching;
+  private boolean stopped;
+
+  DetailCache(Fetcher fetcher) {
+    this.fetcher = fetcher;
+  }
+
+  /**
+   * Gets the key for a path, which is unambiguous for any labels.
+   */
+  private static String getKey(String[] path) {
+    StringBuffer sb = new StringBuffer();
+    for (int c=0; c<path.length; c++) {
+      String label = path[c];
+      sb.append(label.length()).append(':').append(label);
+    }
+    return sb.toString();
+  }
+
+  private void unlink(Entry entry) {
+    if (entry.previous == null) {
+      first = entry.next;
+    } else {
+      entry.previous.next = entry.next;
+    }
+    if (entry.next == null) {
+      last = entry.previous;
+    } else {
+      entry.next.previous = entry.previous;
+    }
+    entry.previous = null;
+    entry.next = null;
+  }
+
+  private void linkFirst(Entry entry) {
+    entry.next = first;
+    if (first == null) {
+      last = entry;
+    } else {
+      first.previous = entry;
+    }
+    first = entry;
+  }
+
+  private void remove(Entry entry) {
+    unlink(entry);
+    entries.remove(entry.key);
+    size -= entry.detail.getSize();
+  }
+
+  /**
+   * Adds details, evicting the least recently used to make room.  Details
+   * larger than the whole cache are not kept.
+   */
+  private void put(String key, NodeDetail detail) {
+    Entry old = (Entry)entries.get(key);
+    if (old != null) {
+      remove(old);
+    }
+    int detailSize = detail.getSize();
+    if (detailSize > MAX_SIZE) {
+      return;
+    }
+    while (size + detailSize > MAX_SIZE) {
+      if (DEBUG) {
+        System.out.println("DetailCache: Evicting "+last.key);
+      }
+      remove(last);
+    }
+    Entry entry = new Entry(key, detail, System.currentTimeMillis());
+    entries.put(key, entry);
+    linkFirst(entry);
+    size += detailSize;
+  }
+
+  /**
+   * Gets the cached details when not too old, marking them most recently used.
+   * Must hold the lock.
+   *
+   * @return  the entry or <code>null</code> when not cached
+   */
+  private Entry getFresh(String key) {
+    Entry entry = (Entry)entries.get(key);
+    if (entry != null) {
+      long age = System.currentTimeMillis() - entry.time;
+      // Also retrieve again when system time reset
+      if (age > MAX_AGE || age < 0) {
+        remove(entry);
+        return null;
+      }
+      if (entry != first) {
+        unlink(entry);
+        linkFirst(entry);
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * Gets the details of a node, retrieving them when not cached or too old.
+   * Blocks while they are retrieved.
+   *
+   * @return  the details or <code>null</code> when the node is not found
+   */
+  NodeDetail get(String[] path) throws IOException {
+    String key = getKey(path);
+    Pending request;
+    synchronized (entries) {
+      Entry entry = getFresh(key);
+      if (entry != null) {
+        return entry.detail;
+      }
+      request = (Pending)pending.get(key);
+      if (request != null) {
+        // Wait for the retrieval already in progress
+        while (!request.done) {
+          try {
+            entries.wait();
+          } catch (InterruptedException err) {
+            throw new InterruptedIOException(err.toString());
+          }
+        }
+        if (request.error != null) {
+          throw request.error;
+        }
+        return request.detail;
+      }
+      request = new Pending();
+      pending.put(key, request);
+    }
+    NodeDetail detail = null;
+    IOException error = null;
+    boolean success = false;
+    try {
+      detail = fetcher.fetch(path);
+      success = true;
+      return detail;
+    } catch (IOException err) {
+      error = err;
+      throw err;
+    } finally {
+      synchronized (entries) {
+        pending.remove(key);
+        if (detail != null) {
+          put(key, detail);
+        }
+        request.detail = detail;
+        request.error = success || error != null ? error : new IOException("Unable to retrieve details");
+        request.done = true;
+        entries.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Gets the details of a node only when already cached and not too old.
+   *
+   * @return  the details or <code>null</code> when not cached
+   */
+  NodeDetail getIfCached(String[] path) {
+    synchronized (entries) {
+      Entry entry = getFresh(getKey(path));
+      return entry == null ? null : entry.detail;
+    }
+  }
+
+  /**
+   * Adds the nodes at one alert level, in order, only visiting the branches
+   * that lead to them.  This does not recurse.
+   */
+  private static void findPrefetch(NodeTree tree, byte alertLevel, Vector paths) {
+    String[] path = new String[8];
+    // The nodes still to visit, as the node and depth of each
+    int[] stack = new int[2*16];
+    // Starting at the root
+    stack[0] = 0;
+    stack[1] = 0;
+    int stackSize = 2;
+    while (stackSize > 0 && paths.size() < MAX_PREFETCH) {
+      stackSize -= 2;
+      int node = stack[stackSize];
+      int depth = stack[stackSize+1];
+      if (depth == path.length) {
+        String[] grown = new String[path.length*2];
+        System.arraycopy(path, 0, grown, 0, path.length);
+        path = grown;
+      }
+      // The ancestors are already in the path, since each subtree is finished before its siblings
+      path[depth] = tree.getLabel(node);
+      if (tree.getAlertLevel(node) == alertLevel) {
+        String[] nodePath = new String[depth+1];
+        System.arraycopy(path, 0, nodePath, 0, depth+1);
+        paths.addElement(nodePath);
+      }
+      if (tree.getDescendantCount(node, alertLevel) > 0) {
+        // Pushed last to first so they are visited in order
+        int first = tree.getFirstChild(node);
+        for (int child=first+tree.getChildCount(node)-1; child >= first; child--) {
+          if (stackSize+2 > stack.length) {
+            int[] grown = new int[stack.length*2];
+            System.arraycopy(stack, 0, grown, 0, stackSize);
+            stack = grown;
+          }
+          stack[stackSize] = child;
+          stack[stackSize+1] = depth+1;
+          stackSize += 2;
+        }
+      }
+    }
+  }
+
+  /**
+   * Retrieves in the background the details of the nodes of a new tree at
+   * {@link AlertLevel#HIGH} or above that are not already cached.  Replaces
+   * any prefetch not yet done for a previous tree.
+   */
+  void prefetch(NodeTree tree) {
+    Vector paths = new Vector();
+    findPrefetch(tree, AlertLevel.CRITICAL, paths);
+    findPrefetch(tree, AlertLevel.HIGH, paths);
+    synchronized (entries) {
+      if (stopped) {
+        return;
+      }
+      prefetchQueue.removeAllElements();
+      for (int c=0, len=paths.size(); c<len; c++) {
+        String[] nodePath = (String[])paths.elementAt(c);
+        if (getFresh(getKey(nodePath)) == null) {
+          prefetchQueue.addElement(nodePath);
+        }
+      }
+      if (prefetching || prefetchQueue.isEmpty()) {
+        return;
+      }
+      prefetching = true;
+    }
+    Thread prefetchThread = new Thread(
+      new Runnable() {
+        public void run() {
+          while (true) {
+            String[] nodePath;
+            synchronized (entries) {
+              if (stopped || prefetchQueue.isEmpty()) {
+                prefetching = false;
+                return;
+              }
+              nodePath = (String[])prefetchQueue.elementAt(0);
+              prefetchQueue.removeElementAt(0);
+            }
+            try {
+              get(nodePath);
+            } catch (IOException err) {
+              // The next tree will try again
+              if (DEBUG) {
+                System.out.println("DetailCache: Prefetch failed: "+err.toString());
+              }
+              synchronized (entries) {
+                prefetchQueue.removeAllElements();
+              }
+            }
+          }
+        }
+      }
+    );
+    prefetchThread.setPriority(Thread.MIN_PRIORITY);
+    prefetchThread.start();
+  }
+
+  /**
+   * Allows prefetching again after {@link #stop()}.
+   */
+  void start() {
+    synchronized (entries) {
+      stopped = false;
+    }
+  }
+
+  /**
+   * Stops prefetching.  Details may still be requested.
+   */
+  void stop() {
+    synchronized (entries) {
+      stopped = true;
+      prefetchQueue.removeAllElements();
+    }
+  }
+}
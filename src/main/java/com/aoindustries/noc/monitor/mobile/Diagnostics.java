@@ -0,0 +1,359 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+/**
+ * Records where the time of each update cycle went, along with its size and
+ * the state of the device at its end.  The most recent cycles are kept in a
+ * fixed-size ring of arrays, and recording only stores primitives into them,
+ * so it allocates nothing and does not disturb what it measures.
+ * <p>
+ * A cycle is one poll, or one message of a session.  The phases are:
+ * </p>
+ * <ol>
+ *   <li>{@link #CONNECT} - opening a new connection</li>
+ *   <li>{@link #LOGIN} - sending the request until the first byte of the
+ *       response, which includes any TLS handshake and the time on the server</li>
+ *   <li>{@link #TRANSFER} - blocked reading the rest of the response from the network</li>
+ *   <li>{@link #DECODE} - inflating and parsing the response, which are done
+ *       together as the response streams in</li>
+ *   <li>{@link #STORE} - storing the record, in the background</li>
+ *   <li>{@link #DISPLAY} - building and showing the view</li>
+ * </ol>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class Diagnostics {
+
+  static final int CONNECT = 0;
+  static final int LOGIN = 1;
+  static final int TRANSFER = 2;
+  static final int DECODE = 3;
+  static final int STORE = 4;
+  static final int DISPLAY = 5;
+
+  private static final int NUM_PHASES = DISPLAY+1;
+
+  private static final String[] PHASE_LABELS = {"Connect", "Login", "Transfer", "Decode", "Store", "Display"};
+
+  /**
+   * The result of a cycle.
+   */
+  static final byte FAILED = 0;
+  static final byte FULL = 1;
+  static final byte DELTA = 2;
+  static final byte NOT_MODIFIED = 3;
+  static final byte LEGACY = 4;
+
+  private static final String[] RESULT_LABELS = {"failed", "full", "delta", "not modified", "legacy"};
+
+  /**
+   * The number of cycles kept.
+   */
+  static final int SIZE = 32;
+
+  /**
+   * The number of recent cycles in the report.
+   */
+  private static final int REPORT_CYCLES = 10;
+
+  /**
+   * No cycle, ignored when recording.
+   */
+  static final long NO_CYCLE = -1;
+
+  private final long[] startTimes = new long[SIZE];
+  private final boolean[] sessions = new boolean[SIZE];
+  private final boolean[] reused = new boolean[SIZE];
+  private final boolean[] ended = new boolean[SIZE];
+  private final byte[] results = new byte[SIZE];
+  private final int[] phaseTimes = new int[SIZE*NUM_PHASES];
+  private final int[] bytes = new int[SIZE];
+  private final int[] nodes = new int[SIZE];
+  private final long[] freeMemory = new long[SIZE];
+  private final long[] totalMemory = new long[SIZE];
+  private final int[] threads = new int[SIZE];
+
+  /**
+   * The number of the next cycle.  Cycle <code>n</code> is in slot
+   * <code>n % SIZE</code> until replaced by cycle <code>n + SIZE</code>.
+   */
+  private long nextCycle;
+
+  /**
+   * The most recent cycle ended successfully.
+   */
+  private long lastCycle = NO_CYCLE;
+
+  /**
+   * Starts a cycle.
+   *
+   * @param  session  <code>true</code> for a message of a session or
+   *                  <code>false</code> for a poll
+   *
+   * @return  the cycle number used for the rest of the recording
+   */
+  synchronized long startCycle(boolean session) {
+    long cycle = nextCycle++;
+    int slot = (int)(cycle % SIZE);
+    startTimes[slot] = System.currentTimeMillis();
+    sessions[slot] = session;
+    reused[slot] = false;
+    ended[slot] = false;
+    results[slot] = FAILED;
+    for (int c=slot*NUM_PHASES, end=c+NUM_PHASES; c<end; c++) phaseTimes[c] = 0;
+    bytes[slot] = 0;
+    nodes[slot] = 0;
+    return cycle;
+  }
+
+  /**
+   * Gets the slot of a cycle or <code>-1</code> when it is
+   * {@link #NO_CYCLE} or has already been replaced.
+   */
+  private int getSlot(long cycle) {
+    if (cycle == NO_CYCLE || cycle >= nextCycle || cycle<nextCycle-SIZE) {
+      return -1;
+    }
+    return (int)(cycle % SIZE);
+  }
+
+  /**
+   * Adds time to a phase of a cycle.  Time is added, so a phase repeated on
+   * retry is counted in full.
+   */
+  synchronized void addTime(long cycle, int phase, long millis) {
+    int slot = getSlot(cycle);
+    if (slot != -1 && millis>0) {
+      phaseTimes[slot*NUM_PHASES+phase] += (int)millis;
+    }
+  }
+
+  /**
+   * Adds to the number of bytes received during a cycle, before inflating.
+   */
+  synchronized void addBytes(long cycle, long count) {
+    int slot = getSlot(cycle);
+    if (slot != -1) {
+      bytes[slot] += (int)count;
+    }
+  }
+
+  /**
+   * Indicates a cycle used a connection kept open from a previous poll.
+   */
+  synchronized void setReused(long cycle) {
+    int slot = getSlot(cycle);
+    if (slot != -1) {
+      reused[slot] = true;
+    }
+  }
+
+  /**
+   * Sets the type of response received during a cycle.
+   */
+  synchronized void setResult(long cycle, byte result) {
+    int slot = getSlot(cycle);
+    if (slot != -1) {
+      results[slot] = result;
+    }
+  }
+
+  /**
+   * Ends a cycle, sampling the memory and threads.  Ending a cycle more than
+   * once has no effect.
+   *
+   * @param  numNodes  the size of the resulting tree or <code>-1</code> when
+   *                   the cycle failed
+   */
+  synchronized void endCycle(long cycle, int numNodes) {
+    int slot = getSlot(cycle);
+    if (slot != -1 && !ended[slot]) {
+      ended[slot] = true;
+      if (numNodes == -1) {
+        results[slot] = FAILED;
+      } else {
+        nodes[slot] = numNodes;
+        if (cycle>lastCycle) {
+          lastCycle = cycle;
+        }
+      }
+      Runtime runtime = Runtime.getRuntime();
+      freeMemory[slot] = runtime.freeMemory();
+      totalMemory[slot] = runtime.totalMemory();
+      threads[slot] = Thread.activeCount();
+    }
+  }
+
+  /**
+   * Gets the most recent cycle that ended successfully or {@link #NO_CYCLE}
+   * for none.  The background work following a cycle, such as storing and
+   * displaying, is added to this cycle.
+   */
+  synchronized long getLastCycle() {
+    return lastCycle;
+  }
+
+  /**
+   * Appends a number of bytes, in kilobytes once large.
+   */
+  private static void appendBytes(StringBuffer sb, long count) {
+    if (count<10*1024) {
+      sb.append(count).append(" B");
+    } else {
+      sb.append((count + 512) / 1024).append(" KB");
+    }
+  }
+
+  /**
+   * Gets a value at a percentile of the first <code>len</code> values, sorting
+   * the values in-place.
+   */
+  private static int getPercentile(int[] values, int len, int percentile) {
+    // Insertion sort, since there are few values
+    for (int c=1; c<len; c++) {
+      int value = values[c];
+      int d = c-1;
+      while (d >= 0 && values[d]>value) {
+        values[d+1] = values[d];
+        d--;
+      }
+      values[d+1] = value;
+    }
+    return values[(len-1) * percentile / 100];
+  }
+
+  /**
+   * Appends the median, 90th percentile and maximum of some values.
+   */
+  private static void appendPercentiles(StringBuffer sb, String label, int[] values, int len, String units) {
+    sb
+      .append(label)
+      .append(": ").append(getPercentile(values, len, 50))
+      .append(" / ").append(getPercentile(values, len, 90))
+      .append(" / ").append(values[len-1])
+      .append(units)
+      .append('\n');
+  }
+
+  /**
+   * Gets the median, 90th percentile and maximum of each phase, the total
+   * time to update, and the bytes received, over the successful cycles kept.
+   */
+  synchronized String getPercentiles() {
+    int[] values = new int[SIZE];
+    long first = nextCycle>SIZE ? nextCycle-SIZE : 0;
+    StringBuffer sb = new StringBuffer();
+    int len = 0;
+    for (long cycle=first; cycle<nextCycle; cycle++) {
+      int slot = (int)(cycle % SIZE);
+      if (ended[slot] && results[slot] != FAILED) {
+        len++;
+      }
+    }
+    sb.append(len).append(" cycles, 50% / 90% / max\n");
+    if (len == 0) {
+      return sb.toString();
+    }
+    for (int phase=-1; phase<NUM_PHASES; phase++) {
+      int i = 0;
+      for (long cycle=first; cycle<nextCycle; cycle++) {
+        int slot = (int)(cycle % SIZE);
+        if (ended[slot] && results[slot] != FAILED) {
+          int value;
+          if (phase == -1) {
+            // The total until the tree is available
+            int offset = slot*NUM_PHASES;
+            value = phaseTimes[offset+CONNECT] + phaseTimes[offset+LOGIN] + phaseTimes[offset+TRANSFER] + phaseTimes[offset+DECODE];
+          } else {
+            value = phaseTimes[slot*NUM_PHASES+phase];
+          }
+          values[i++] = value;
+        }
+      }
+      appendPercentiles(sb, phase == -1 ? "Update" : PHASE_LABELS[phase], values, len, " ms");
+    }
+    int i = 0;
+    for (long cycle=first; cycle<nextCycle; cycle++) {
+      int slot = (int)(cycle % SIZE);
+      if (ended[slot] && results[slot] != FAILED) {
+        values[i++] = bytes[slot];
+      }
+    }
+    appendPercentiles(sb, "Bytes", values, len, " B");
+    return sb.toString();
+  }
+
+  /**
+   * Gets the most recent cycles, newest first.
+   */
+  synchronized String getRecentCycles() {
+    StringBuffer sb = new StringBuffer();
+    long now = System.currentTimeMillis();
+    long last = nextCycle-REPORT_CYCLES;
+    if (last<nextCycle-SIZE) {
+      last = nextCycle-SIZE;
+    }
+    if (last<0) {
+      last = 0;
+    }
+    for (long cycle=nextCycle-1; cycle >= last; cycle--) {
+      int slot = (int)(cycle % SIZE);
+      sb.append((now-startTimes[slot]) / 1000).append(" s ago, ");
+      if (!ended[slot]) {
+        sb.append("running");
+      } else {
+        sb.append(RESULT_LABELS[results[slot]]);
+      }
+      if (sessions[slot]) {
+        sb.append(", session");
+      } else if (reused[slot]) {
+        sb.append(", reused");
+      }
+      sb.append('\n');
+      int offset = slot*NUM_PHASES;
+      for (int phase=0; phase<NUM_PHASES; phase++) {
+        int time = phaseTimes[offset+phase];
+        if (time>0) {
+          sb.append(' ').append(PHASE_LABELS[phase]).append(' ').append(time).append(" ms");
+        }
+      }
+      if (ended[slot]) {
+        sb.append("\n ");
+        appendBytes(sb, bytes[slot]);
+        if (nodes[slot]>0) {
+          sb.append(", ").append(nodes[slot]).append(" nodes");
+        }
+        sb.append(", heap ");
+        appendBytes(sb, totalMemory[slot]-freeMemory[slot]);
+        sb.append(" of ");
+        appendBytes(sb, totalMemory[slot]);
+        sb.append(", ").append(threads[slot]).append(" threads");
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * The pending result of a task run by a {@link DownloadWorker}.  The caller
+ * waits for the result with a time-out.  Canceling closes the connection the
+ * task registered, which aborts a read blocked on the network.
+ *
+ * @author  AO Industries, Inc.
+ */
+class DownloadFuture {
+
+  private final DownloadWorker.Task task;
+
+  private boolean done;
+  private boolean canceled;
+  private Object result;
+  private IOException ioException;
+  private RuntimeException runtimeException;
+  private ServerConnection conn;
+
+  DownloadFuture(DownloadWorker.Task task) {
+    this.task = task;
+  }
+
+  /**
+   * Runs the task on the current thread, storing its result.
+   */
+  void run() {
+    try {
+      Object newResult = task.run(this);
+      synchronized (this) {
+        result = newResult;
+        done = true;
+        notifyAll();
+      }
+    } catch (IOException err) {
+      synchronized (this) {
+        ioException = err;
+        done = true;
+        notifyAll();
+      }
+    } catch (RuntimeException err) {
+      synchronized (this) {
+        runtimeException = err;
+        done = true;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Registers the connection used by the task, so it may be closed on cancel.
+   *
+   * @throws  InterruptedIOException  if already canceled, the connection is closed
+   */
+  void setConnection(ServerConnection conn) throws InterruptedIOException {
+    synchronized (this) {
+      if (!canceled) {
+        this.conn = conn;
+        return;
+      }
+    }
+    conn.close();
+    throw new InterruptedIOException("Download canceled");
+  }
+
+  synchronized boolean isCanceled() {
+    return canceled;
+  }
+
+  synchronized boolean isDone() {
+    return done;
+  }
+
+  /**
+   * Cancels the task, closing its connection if it has one.
+   */
+  void cancel() {
+    ServerConnection closeConn;
+    synchronized (this) {
+      if (done || canceled) {
+        return;
+      }
+      canceled = true;
+      closeConn = conn;
+      conn = null;
+      notifyAll();
+    }
+    if (closeConn != null) {
+      closeConn.close();
+    }
+  }
+
+  /**
+   * Waits for the result.  When the time-out is reached the task is canceled.
+   *
+   * @throws  InterruptedIOException  on time-out or cancel
+   */
+  Object get(long timeout) throws IOException {
+    final long waitUntil = System.currentTimeMillis() + timeout;
+    synchronized (this) {
+      while (!done && !canceled) {
+        long waitLeft = waitUntil - System.currentTimeMillis();
+        // Done waiting, or system time reset
+        if (waitLeft <= 0 || waitLeft>timeout) {
+          break;
+        }
+        try {
+          wait(waitLeft);
+        } catch (InterruptedException err) {
+          break;
+        }
+      }
+      if (done) {
+        if (ioException != null) {
+          throw ioException;
+        }
+        if (runtimeException != null) {
+          throw runtimeException;
+        }
+        return result;
+      }
+    }
+    cancel();
+    throw new InterruptedIOException("Time-out waiting for download");
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.IOException;
+import java.util.Vector;
+
+/**
+ * Runs downloads, one at a time, on a single long-lived background thread.
+ * <p>
+ * When a canceled download is still blocked, the next submit abandons that
+ * thread and starts another in its place.  At most one thread is abandoned
+ * at a time, so threads do not pile-up when the network is bad.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+class DownloadWorker implements Runnable {
+
+  private static final boolean DEBUG = false;
+
+  /**
+   * A task run by the worker.
+   */
+  interface Task {
+
+    /**
+     * Performs the download.  Any connection should be registered with
+     * {@link DownloadFuture#setConnection(ServerConnection)} as soon as opened.
+     */
+    Object run(DownloadFuture future) throws IOException;
+  }
+
+  /**
+   * The futures waiting to run.  Also the lock for all fields.
+   */
+  private final Vector queue = new Vector();
+
+  private Thread thread;
+  private DownloadFuture current;
+  private Thread abandoned;
+
+  /**
+   * Queues a task to be run.
+   *
+   * @throws  IOException  when the previous canceled download is still blocked
+   *                       and another thread has already been abandoned
+   */
+  DownloadFuture submit(Task task) throws IOException {
+    DownloadFuture future = new DownloadFuture(task);
+    synchronized (queue) {
+      if (current != null && current.isCanceled()) {
+        if (abandoned != null && abandoned.isAlive()) {
+          throw new IOException("Previous downloads are still blocked after being canceled");
+        }
+        if (DEBUG) {
+          System.out.println("DownloadWorker: Abandoning blocked thread");
+        }
+        abandoned = thread;
+        thread = null;
+        current = null;
+      }
+      queue.addElement(future);
+      if (thread == null) {
+        thread = new Thread(this);
+        thread.setPriority(Thread.NORM_PRIORITY-1);
+        thread.start();
+      }
+      queue.notifyAll();
+    }
+    return future;
+  }
+
+  /**
+   * Stops the worker, canceling all downloads.
+   */
+  void stop() {
+    DownloadFuture cancelCurrent;
+    Vector cancelQueued;
+    synchronized (queue) {
+      thread = null;
+      cancelCurrent = current;
+      current = null;
+      cancelQueued = new Vector(queue.size());
+      for (int c=0, len=queue.size(); c<len; c++) cancelQueued.addElement(queue.elementAt(c));
+      queue.removeAllElements();
+      queue.notifyAll();
+    }
+    if (cancelCurrent != null) {
+      cancelCurrent.cancel();
+    }
+    for (int c=0, len=cancelQueued.size(); c<len; c++) ((DownloadFuture)cancelQueued.elementAt(c)).cancel();
+  }
+
+  public void run() {
+    final Thread currentThread = Thread.currentThread();
+    while (true) {
+      DownloadFuture future;
+      synchronized (queue) {
+        while (true) {
+          if (currentThread != thread) {
+            return;
+          }
+          if (!queue.isEmpty()) {
+            future = (DownloadFuture)queue.elementAt(0);
+            queue.removeElementAt(0);
+            if (!future.isCanceled()) {
+              break;
+            }
+          } else {
+            try {
+              queue.wait();
+            } catch (InterruptedException err) {
+              return;
+            }
+          }
+        }
+        current = future;
+      }
+      future.run();
+      synchronized (queue) {
+        if (current == future) {
+          current = null;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,447 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * An immutable node tree stored in parallel arrays instead of one object per
+ * node.
+ * <p>
+ * Labels and alert messages are indexes into a pool of distinct strings.
+ * </p>
+ * <p>
+ * The highest alert level of the children, the number of descendants at
+ * each alert level, and the alert hash of each subtree are computed once when
+ * the tree is built, so filtering by alert level does not need to scan below
+ * each node, and comparing trees skips the subtrees that are unchanged.
+ * </p>
+ * <p>
+ * Children are also indexed by label, in a single open-addressing hash table
+ * for the whole tree, which finds a child without scanning its siblings.  The
+ * same index verifies that labels are unique per parent.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class FlatNodeTree implements NodeTree {
+
+  /**
+   * The alert message index of nodes without an alert message.
+   */
+  private static final int NO_ALERT_MESSAGE = -1;
+
+  /**
+   * The number of alert levels, from {@link AlertLevel#NONE} through {@link AlertLevel#UNKNOWN}.
+   */
+  private static final int NUM_ALERT_LEVELS = AlertLevel.UNKNOWN+1;
+
+  private final String[] strings;
+  private final int[] labelIndex;
+  private final byte[] alertLevel;
+  private final int[] alertMessageIndex;
+  private final boolean[] allowsChildren;
+  private final int[] parent;
+  private final int[] firstChild;
+  private final int[] childCount;
+  private final byte[] maxChildAlertLevel;
+  /** The number of descendants at each alert level, {@link #NUM_ALERT_LEVELS} per node. */
+  private final int[] descendantCounts;
+  private final int[] alertHash;
+  /**
+   * The children by parent and label, as node index plus one, zero when empty.
+   * The length is a power of two.
+   */
+  private final int[] childIndex;
+
+  /**
+   * @throws  IOException  when a label is used by more than one child of the same parent
+   */
+  private FlatNodeTree(
+    String[] strings,
+    int[] labelIndex,
+    byte[] alertLevel,
+    int[] alertMessageIndex,
+    boolean[] allowsChildren,
+    int[] parent,
+    int[] firstChild,
+    int[] childCount
+  ) throws IOException {
+    this.strings = strings;
+    this.labelIndex = labelIndex;
+    this.alertLevel = alertLevel;
+    this.alertMessageIndex = alertMessageIndex;
+    this.allowsChildren = allowsChildren;
+    this.parent = parent;
+    this.firstChild = firstChild;
+    this.childCount = childCount;
+    // Children always follow their parent, so work backwards to visit children first
+    int size = labelIndex.length;
+    byte[] newMaxChildAlertLevel = new byte[size];
+    int[] newDescendantCounts = new int[size*NUM_ALERT_LEVELS];
+    for (int node=size-1; node>0; node--) {
+      int parentNode = parent[node];
+      byte level = alertLevel[node];
+      if (level>newMaxChildAlertLevel[parentNode]) {
+        newMaxChildAlertLevel[parentNode] = level;
+      }
+      int nodeOffset = node*NUM_ALERT_LEVELS;
+      int parentOffset = parentNode*NUM_ALERT_LEVELS;
+      newDescendantCounts[parentOffset+level]++;
+      for (int c=0; c<NUM_ALERT_LEVELS; c++) newDescendantCounts[parentOffset+c] += newDescendantCounts[nodeOffset+c];
+    }
+    this.maxChildAlertLevel = newMaxChildAlertLevel;
+    this.descendantCounts = newDescendantCounts;
+    // Each hash starts as the sum from the children, which are all complete before their parent
+    int[] stringHashes = new int[strings.length];
+    for (int c=0; c<strings.length; c++) stringHashes[c] = strings[c].hashCode();
+    int[] newAlertHash = new int[size];
+    for (int node=size-1; node >= 0; node--) {
+      int hash = AlertTransition.getAlertHash(stringHashes[labelIndex[node]], alertLevel[node], newAlertHash[node]);
+      newAlertHash[node] = hash;
+      if (node>0) {
+        newAlertHash[parent[node]] += AlertTransition.mixChildHash(hash);
+      }
+    }
+    this.alertHash = newAlertHash;
+    // Keep the index at most half full
+    int tableSize = 2;
+    while (tableSize<size*2) {
+      tableSize <<= 1;
+    }
+    int[] newChildIndex = new int[tableSize];
+    int mask = tableSize-1;
+    for (int node=1; node<size; node++) {
+      int parentNode = parent[node];
+      String label = strings[labelIndex[node]];
+      int slot = hash(parentNode, label) & mask;
+      while (true) {
+        int existing = newChildIndex[slot];
+        if (existing == 0) {
+          newChildIndex[slot] = node+1;
+          break;
+        }
+        existing--;
+        if (parent[existing] == parentNode && strings[labelIndex[existing]].equals(label)) {
+          throw new IOException("Label already used by sibling: "+label);
+        }
+        slot = (slot+1) & mask;
+      }
+    }
+    this.childIndex = newChildIndex;
+  }
+
+  private static int hash(int parentNode, String label) {
+    int h = label.hashCode() + parentNode * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+  public int getSize() {
+    return labelIndex.length;
+  }
+
+  /**
+   * Gets the distinct strings used by the labels and alert messages.
+   */
+  String[] getStrings() {
+    return strings;
+  }
+
+  /**
+   * Gets the index into {@link #getStrings()} of a node label.
+   */
+  int getLabelIndex(int node) {
+    return labelIndex[node];
+  }
+
+  public String getLabel(int node) {
+    return strings[labelIndex[node]];
+  }
+
+  public byte getAlertLevel(int node) {
+    return alertLevel[node];
+  }
+
+  /**
+   * Gets the index into {@link #getStrings()} of a node alert message or
+   * <code>-1</code> for none.
+   */
+  int getAlertMessageIndex(int node) {
+    return alertMessageIndex[node];
+  }
+
+  public String getAlertMessage(int node) {
+    int index = alertMessageIndex[node];
+    return index == NO_ALERT_MESSAGE ? null : strings[index];
+  }
+
+  public boolean getAllowsChildren(int node) {
+    return allowsChildren[node];
+  }
+
+  public int getParent(int node) {
+    return parent[node];
+  }
+
+  public int getFirstChild(int node) {
+    return firstChild[node];
+  }
+
+  public int getChildCount(int node) {
+    return childCount[node];
+  }
+
+  public int getChild(int node, String label) {
+    int mask = childIndex.length-1;
+    int slot = hash(node, label) & mask;
+    while (true) {
+      int child = childIndex[slot];
+      if (child == 0) {
+        return -1;
+      }
+      child--;
+      if (parent[child] == node && strings[labelIndex[child]].equals(label)) {
+        return child;
+      }
+      slot = (slot+1) & mask;
+    }
+  }
+
+  public byte getMaxChildAlertLevel(int node) {
+    return maxChildAlertLevel[node];
+  }
+
+  public byte getMaxDescendantAlertLevel(int node) {
+    int offset = node*NUM_ALERT_LEVELS;
+    for (int c=NUM_ALERT_LEVELS-1; c>AlertLevel.NONE; c--) {
+      if (descendantCounts[offset+c] != 0) {
+        return (byte)c;
+      }
+    }
+    return AlertLevel.NONE;
+  }
+
+  public int getDescendantCount(int node, byte alertLevel) {
+    return descendantCounts[node*NUM_ALERT_LEVELS+alertLevel];
+  }
+
+  public int getDescendantCountAtLeast(int node, byte alertLevel) {
+    int offset = node*NUM_ALERT_LEVELS;
+    int count = 0;
+    for (int c=alertLevel; c<NUM_ALERT_LEVELS; c++) count += descendantCounts[offset+c];
+    return count;
+  }
+
+  public int getAlertHash(int node) {
+    return alertHash[node];
+  }
+
+  /**
+   * Builds a tree from the events of a {@link NodeTreeReader}.  Nodes are
+   * recorded in the order read and arranged breadth-first by {@link #build()}.
+   * A tree may be built before all nodes have been read, containing the nodes
+   * read so far.
+   */
+  static class Builder implements NodeTreeReader.Handler {
+
+    private final Hashtable stringIndexes = new Hashtable();
+    private final Vector strings = new Vector();
+
+    // By the order read, which is pre-order
+    private int size;
+    private int[] labelIndex = new int[64];
+    private byte[] alertLevel = new byte[64];
+    private int[] alertMessageIndex = new int[64];
+    private boolean[] allowsChildren = new boolean[64];
+    private int[] childCount = new int[64];
+    /** One past the last node of the subtree or <code>-1</code> until the node has ended. */
+    private int[] subtreeEnd = new int[64];
+
+    /** The node being read at each depth. */
+    private int[] stack = new int[16];
+
+    private int getStringIndex(String str) {
+      Integer index = (Integer)stringIndexes.get(str);
+      if (index == null) {
+        index = new Integer(strings.size());
+        stringIndexes.put(str, index);
+        strings.addElement(str);
+      }
+      return index.intValue();
+    }
+
+    private static int[] grow(int[] array, int newLength) {
+      int[] newArray = new int[newLength];
+      System.arraycopy(array, 0, newArray, 0, array.length);
+      return newArray;
+    }
+
+    public void startNode(int depth, String label, byte alertLevel, String alertMessage, boolean allowsChildren, int numChildren) throws IOException {
+      if (size == 0 ? depth != 0 : (depth<1 || depth>stack.length || stack[depth-1] == -1)) {
+        throw new IOException("Unexpected depth: "+depth);
+      }
+      if (alertLevel<AlertLevel.NONE || alertLevel>AlertLevel.UNKNOWN) {
+        throw new IOException("Unexpected alert level: "+alertLevel);
+      }
+      if (size == labelIndex.length) {
+        int newLength = size*2;
+        this.labelIndex = grow(this.labelIndex, newLength);
+        byte[] newAlertLevel = new byte[newLength];
+        System.arraycopy(this.alertLevel, 0, newAlertLevel, 0, size);
+        this.alertLevel = newAlertLevel;
+        this.alertMessageIndex = grow(this.alertMessageIndex, newLength);
+        boolean[] newAllowsChildren = new boolean[newLength];
+        System.arraycopy(this.allowsChildren, 0, newAllowsChildren, 0, size);
+        this.allowsChildren = newAllowsChildren;
+        this.childCount = grow(this.childCount, newLength);
+        this.subtreeEnd = grow(this.subtreeEnd, newLength);
+      }
+      int node = size++;
+      this.labelIndex[node] = getStringIndex(label);
+      this.alertLevel[node] = alertLevel;
+      this.alertMessageIndex[node] = alertMessage == null ? NO_ALERT_MESSAGE : getStringIndex(alertMessage);
+      this.allowsChildren[node] = allowsChildren;
+      this.childCount[node] = 0;
+      this.subtreeEnd[node] = -1;
+      if (depth>0) {
+        this.childCount[stack[depth-1]]++;
+      }
+      if (depth == stack.length) {
+        stack = grow(stack, depth*2);
+      }
+      stack[depth] = node;
+      if (depth+1<stack.length) {
+        stack[depth+1] = -1;
+      }
+    }
+
+    public void endNode(int depth) throws IOException {
+      subtreeEnd[stack[depth]] = size;
+    }
+
+    /**
+     * Gets the number of nodes read so far.
+     */
+    int getSize() {
+      return size;
+    }
+
+    /**
+     * Builds the tree of the nodes read so far or <code>null</code> if none.
+     *
+     * @throws  IOException  when a label is used by more than one child of the same parent
+     */
+    FlatNodeTree build() throws IOException {
+      if (size == 0) {
+        return null;
+      }
+      String[] newStrings = new String[strings.size()];
+      strings.copyInto(newStrings);
+      int[] newLabelIndex = new int[size];
+      byte[] newAlertLevel = new byte[size];
+      int[] newAlertMessageIndex = new int[size];
+      boolean[] newAllowsChildren = new boolean[size];
+      int[] newParent = new int[size];
+      int[] newFirstChild = new int[size];
+      int[] newChildCount = new int[size];
+      // The node, in the order read, at each breadth-first position
+      int[] order = new int[size];
+      order[0] = 0;
+      newParent[0] = -1;
+      int tail = 1;
+      for (int head=0; head<tail; head++) {
+        int node = order[head];
+        newLabelIndex[head] = labelIndex[node];
+        newAlertLevel[head] = alertLevel[node];
+        newAlertMessageIndex[head] = alertMessageIndex[node];
+        newAllowsChildren[head] = allowsChildren[node];
+        int numChildren = childCount[node];
+        newFirstChild[head] = tail;
+        newChildCount[head] = numChildren;
+        int child = node+1;
+        for (int c=0; c<numChildren; c++) {
+          order[tail] = child;
+          newParent[tail] = head;
+          tail++;
+          int end = subtreeEnd[child];
+          // Subtrees still being read continue to the end
+          child = end == -1 ? size : end;
+        }
+      }
+      return new FlatNodeTree(
+        newStrings,
+        newLabelIndex,
+        newAlertLevel,
+        newAlertMessageIndex,
+        newAllowsChildren,
+        newParent,
+        newFirstChild,
+        newChildCount
+      );
+    }
+  }
+
+  /**
+   * Builds a tree from a tree of {@link Node}.
+   */
+  static FlatNodeTree valueOf(Node root) throws IOException {
+    Builder builder = new Builder();
+    // The children being visited and the index of the next child, by depth
+    Vector childrenStack = new Vector();
+    Vector indexStack = new Vector();
+    Node node = root;
+    while (true) {
+      int depth = childrenStack.size();
+      Vector children = node.getChildren();
+      int numChildren = children == null ? 0 : children.size();
+      builder.startNode(depth, node.getLabel(), node.getAlertLevel(), node.getAlertMessage(), node.getAllowsChildren(), numChildren);
+      if (numChildren>0) {
+        childrenStack.addElement(children);
+        indexStack.addElement(new int[] {1});
+        node = (Node)children.elementAt(0);
+      } else {
+        builder.endNode(depth);
+        // Move to the next sibling of the nearest parent that has one
+        while (true) {
+          if (depth == 0) {
+            return builder.build();
+          }
+          int parentDepth = depth-1;
+          Vector siblings = (Vector)childrenStack.elementAt(parentDepth);
+          int[] index = (int[])indexStack.elementAt(parentDepth);
+          if (index[0]<siblings.size()) {
+            node = (Node)siblings.elementAt(index[0]++);
+            break;
+          }
+          childrenStack.removeElementAt(parentDepth);
+          indexStack.removeElementAt(parentDepth);
+          builder.endNode(parentDepth);
+          depth = parentDepth;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,685 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a raw deflate or gzip stream, replacing the gzip decoder that could
+ * not be tuned.  The window, input buffer and Huffman tables are allocated once
+ * and reused: {@link #close()} returns the instance for the next connection.
+ * <p>
+ * Codes of up to {@link #FAST_BITS} bits, which is nearly every literal and
+ * length, are decoded with a single table lookup.  Longer codes fall back to a
+ * canonical decode one bit at a time.
+ * </p>
+ * <p>
+ * Decoded bytes are returned as soon as the buffered input runs out, so a
+ * session may read everything the server has flushed without blocking for more.
+ * </p>
+ *
+ * @see  DeflaterOutputStream
+ *
+ * @author  AO Industries, Inc.
+ */
+class InflaterInputStream extends InputStream {
+
+  private static final int WINDOW_SIZE = 32768;
+  private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+
+  private static final int BUFFER_SIZE = 4096;
+
+  /**
+   * The number of bits looked up at once.
+   */
+  private static final int FAST_BITS = 9;
+  private static final int FAST_MASK = (1 << FAST_BITS) - 1;
+
+  private static final int MAX_BITS = 15;
+
+  private static final short[] LENGTH_BASE = {
+    3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+    35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258
+  };
+
+  private static final byte[] LENGTH_EXTRA = {
+    0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+    3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0
+  };
+
+  private static final short[] DISTANCE_BASE = {
+    1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+    257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+    8193, 12289, 16385, 24577
+  };
+
+  private static final byte[] DISTANCE_EXTRA = {
+    0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+    7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13
+  };
+
+  /**
+   * The order code length code lengths are sent in.
+   */
+  private static final byte[] CODE_LENGTH_ORDER = {
+    16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15
+  };
+
+  /**
+   * A canonical Huffman code along with its lookup table.
+   */
+  private static class Huffman {
+
+    /**
+     * The number of codes of each length.
+     */
+    private final short[] count = new short[MAX_BITS+1];
+
+    /**
+     * The symbols ordered by code.
+     */
+    private final short[] symbol;
+
+    /**
+     * The length in the high bits and symbol in the low bits, indexed by the
+     * next {@link #FAST_BITS} bits of input, or zero when the code is longer.
+     */
+    private final int[] fast = new int[1 << FAST_BITS];
+
+    /**
+     * Scratch space for building.
+     */
+    private final short[] offset = new short[MAX_BITS+1];
+    private final int[] next = new int[MAX_BITS+1];
+
+    private Huffman(int maxSymbols) {
+      symbol = new short[maxSymbols];
+    }
+
+    /**
+     * Builds the code from the code length of each symbol.
+     */
+    private void build(byte[] lengths, int off, int len) throws IOException {
+      short[] count = this.count;
+      for (int i=0; i<=MAX_BITS; i++) count[i] = 0;
+      for (int i=0; i<len; i++) count[lengths[off+i]]++;
+      count[0] = 0;
+      int left = 1;
+      for (int i=1; i<=MAX_BITS; i++) {
+        left = (left << 1) - count[i];
+        if (left<0) {
+          throw new IOException("Over-subscribed Huffman code");
+        }
+      }
+      // The first index and first code of each length
+      short[] offset = this.offset;
+      int[] next = this.next;
+      offset[1] = 0;
+      for (int i=1; i<MAX_BITS; i++) offset[i+1] = (short)(offset[i] + count[i]);
+      int code = 0;
+      for (int i=1; i<=MAX_BITS; i++) {
+        next[i] = code;
+        code = (code + count[i]) << 1;
+      }
+      int[] fast = this.fast;
+      for (int i=0; i<fast.length; i++) fast[i] = 0;
+      for (int i=0; i<len; i++) {
+        int length = lengths[off+i];
+        if (length != 0) {
+          symbol[offset[length]++] = (short)i;
+          if (length <= FAST_BITS) {
+            // Codes are sent most significant bit first, so reverse for lookup
+            int entry = (length << 16) | i;
+            for (int j=reverse(next[length], length); j<fast.length; j+=(1 << length)) fast[j] = entry;
+          }
+          next[length]++;
+        }
+      }
+    }
+
+    private static int reverse(int code, int length) {
+      int reversed = 0;
+      for (int i=0; i<length; i++) {
+        reversed = (reversed << 1) | (code & 1);
+        code >>>= 1;
+      }
+      return reversed;
+    }
+  }
+
+  private static final Object fixedLock = new Object();
+  private static Huffman fixedLiteral;
+  private static Huffman fixedDistance;
+
+  /**
+   * Gets the fixed codes, building them on first use.
+   */
+  private static Huffman[] getFixed() throws IOException {
+    synchronized (fixedLock) {
+      if (fixedLiteral == null) {
+        byte[] lengths = new byte[288];
+        for (int i=0; i<144; i++) lengths[i] = 8;
+        for (int i=144; i<256; i++) lengths[i] = 9;
+        for (int i=256; i<280; i++) lengths[i] = 7;
+        for (int i=280; i<288; i++) lengths[i] = 8;
+        Huffman literal = new Huffman(288);
+        literal.build(lengths, 0, 288);
+        for (int i=0; i<30; i++) lengths[i] = 5;
+        Huffman distance = new Huffman(30);
+        distance.build(lengths, 0, 30);
+        fixedLiteral = literal;
+        fixedDistance = distance;
+      }
+      return new Huffman[] {fixedLiteral, fixedDistance};
+    }
+  }
+
+  private static final Object poolLock = new Object();
+
+  /**
+   * The instance returned by the last {@link #close()}, if any.
+   */
+  private static InflaterInputStream pool;
+
+  /**
+   * Gets an inflater for the provided stream, reusing the last closed
+   * instance when available.
+   *
+   * @param  gzip        <code>true</code> to read the gzip header and trailer
+   * @param  magicRead   <code>true</code> when the first byte of the gzip header has already been read
+   * @param  dictionary  the bytes preceding the stream or <code>null</code> for none
+   */
+  static InflaterInputStream getInstance(InputStream in, boolean gzip, boolean magicRead, byte[] dictionary) throws IOException {
+    InflaterInputStream inflater;
+    synchronized (poolLock) {
+      inflater = pool;
+      pool = null;
+    }
+    if (inflater == null) {
+      inflater = new InflaterInputStream();
+    }
+    inflater.reset(in, gzip, magicRead, dictionary);
+    return inflater;
+  }
+
+  private static final int
+    STATE_HEADER = 0,
+    STATE_STORED = 1,
+    STATE_HUFFMAN = 2,
+    STATE_TRAILER = 3,
+    STATE_EOF = 4;
+
+  private final byte[] window = new byte[WINDOW_SIZE];
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private final byte[] lengths = new byte[288 + 32];
+  private final Huffman codeLengthCode = new Huffman(19);
+  private final Huffman literalCode = new Huffman(288);
+  private final Huffman distanceCode = new Huffman(32);
+  private final byte[] single = new byte[1];
+
+  private InputStream in;
+  private boolean gzip;
+  private int bufferPos;
+  private int bufferLen;
+  private int bitBuffer;
+  private int bitCount;
+  private int windowPos;
+  /**
+   * The number of valid bytes in the window, up to its size.
+   */
+  private int windowFilled;
+  private int state;
+  private boolean lastBlock;
+  private Huffman literal;
+  private Huffman distance;
+  private int storedLeft;
+  private int copyLeft;
+  private int copyDistance;
+  private int crc;
+  private int size;
+
+  private InflaterInputStream() {
+  }
+
+  private void reset(InputStream in, boolean gzip, boolean magicRead, byte[] dictionary) throws IOException {
+    this.in = in;
+    this.gzip = gzip;
+    bufferPos = 0;
+    bufferLen = 0;
+    bitBuffer = 0;
+    bitCount = 0;
+    windowPos = 0;
+    windowFilled = 0;
+    state = STATE_HEADER;
+    lastBlock = false;
+    storedLeft = 0;
+    copyLeft = 0;
+    crc = 0;
+    size = 0;
+    if (dictionary != null) {
+      int len = dictionary.length;
+      if (len>WINDOW_SIZE) {
+        len = WINDOW_SIZE;
+      }
+      System.arraycopy(dictionary, dictionary.length - len, window, 0, len);
+      windowPos = len & WINDOW_MASK;
+      windowFilled = len;
+    }
+    if (gzip) {
+      readHeader(magicRead);
+    }
+  }
+
+  /**
+   * Reads the next chunk of input into the buffer, blocking as needed.
+   */
+  private void fillBuffer() throws IOException {
+    int len;
+    do {
+      len = in.read(buffer, 0, BUFFER_SIZE);
+      if (len == -1) {
+        throw new EOFException("Unexpected end of deflate stream");
+      }
+    } while (len == 0);
+    bufferPos = 0;
+    bufferLen = len;
+  }
+
+  /**
+   * Moves buffered input into the bit buffer without blocking.
+   */
+  private void topUp() {
+    while (bitCount <= 24 && bufferPos < bufferLen) {
+      bitBuffer |= (buffer[bufferPos++] & 0xff) << bitCount;
+      bitCount += 8;
+    }
+  }
+
+  /**
+   * Ensures at least the given number of bits, up to 24, are in the bit buffer.
+   */
+  private void need(int bits) throws IOException {
+    while (bitCount < bits) {
+      if (bufferPos == bufferLen) {
+        fillBuffer();
+      }
+      bitBuffer |= (buffer[bufferPos++] & 0xff) << bitCount;
+      bitCount += 8;
+    }
+  }
+
+  private int bits(int bits) throws IOException {
+    need(bits);
+    int value = bitBuffer & ((1 << bits) - 1);
+    bitBuffer >>>= bits;
+    bitCount -= bits;
+    return value;
+  }
+
+  private void alignToByte() {
+    int drop = bitCount & 7;
+    bitBuffer >>>= drop;
+    bitCount -= drop;
+  }
+
+  private int readByte() throws IOException {
+    return bits(8);
+  }
+
+  private void readHeader(boolean magicRead) throws IOException {
+    if (!magicRead && readByte() != 0x1f) {
+      throw new IOException("Not in gzip format");
+    }
+    if (readByte() != 0x8b) {
+      throw new IOException("Not in gzip format");
+    }
+    if (readByte() != 8) {
+      throw new IOException("Unsupported compression method");
+    }
+    int flags = readByte();
+    // Modification time, extra flags and operating system
+    for (int i=0; i<6; i++) readByte();
+    if ((flags & 4) != 0) {
+      int len = readByte() | (readByte() << 8);
+      for (int i=0; i<len; i++) readByte();
+    }
+    if ((flags & 8) != 0) {
+      while (readByte() != 0) {
+        // Skip file name
+      }
+    }
+    if ((flags & 16) != 0) {
+      while (readByte() != 0) {
+        // Skip comment
+      }
+    }
+    if ((flags & 2) != 0) {
+      readByte();
+      readByte();
+    }
+  }
+
+  private int readIntLE() throws IOException {
+    return readByte() | (readByte() << 8) | (readByte() << 16) | (readByte() << 24);
+  }
+
+  private void readTrailer() throws IOException {
+    if (gzip) {
+      alignToByte();
+      if (readIntLE() != crc) {
+        throw new IOException("Corrupt gzip stream: CRC mismatch");
+      }
+      if (readIntLE() != size) {
+        throw new IOException("Corrupt gzip stream: size mismatch");
+      }
+    }
+  }
+
+  /**
+   * Decodes one symbol.
+   *
+   * @param  mayBlock  when <code>false</code>, returns <code>-1</code> instead
+   *                   of blocking when the buffered input does not hold the
+   *                   whole code
+   */
+  private int decode(Huffman h, boolean mayBlock) throws IOException {
+    topUp();
+    if (bitCount >= FAST_BITS) {
+      int entry = h.fast[bitBuffer & FAST_MASK];
+      if (entry != 0) {
+        int len = entry >>> 16;
+        bitBuffer >>>= len;
+        bitCount -= len;
+        return entry & 0xffff;
+      }
+    }
+    int code = 0;
+    int first = 0;
+    int index = 0;
+    short[] count = h.count;
+    for (int len=1; len<=MAX_BITS; len++) {
+      if (bitCount < len) {
+        if (!mayBlock) {
+          return -1;
+        }
+        need(len);
+      }
+      code |= (bitBuffer >>> (len-1)) & 1;
+      int c = count[len];
+      if (code - first < c) {
+        bitBuffer >>>= len;
+        bitCount -= len;
+        return h.symbol[index + code - first];
+      }
+      index += c;
+      first = (first + c) << 1;
+      code <<= 1;
+    }
+    throw new IOException("Invalid Huffman code");
+  }
+
+  private void readDynamic() throws IOException {
+    int numLiteral = bits(5) + 257;
+    int numDistance = bits(5) + 1;
+    int numCodeLength = bits(4) + 4;
+    if (numLiteral>286 || numDistance>30) {
+      throw new IOException("Too many length or distance codes");
+    }
+    byte[] lengths = this.lengths;
+    for (int i=0; i<19; i++) lengths[i] = 0;
+    for (int i=0; i<numCodeLength; i++) lengths[CODE_LENGTH_ORDER[i]] = (byte)bits(3);
+    codeLengthCode.build(lengths, 0, 19);
+    int total = numLiteral + numDistance;
+    int i = 0;
+    while (i<total) {
+      int sym = decode(codeLengthCode, true);
+      if (sym<16) {
+        lengths[i++] = (byte)sym;
+      } else {
+        byte value = 0;
+        int repeat;
+        if (sym == 16) {
+          if (i == 0) {
+            throw new IOException("Repeat with no previous length");
+          }
+          value = lengths[i-1];
+          repeat = 3 + bits(2);
+        } else if (sym == 17) {
+          repeat = 3 + bits(3);
+        } else {
+          repeat = 11 + bits(7);
+        }
+        if (i + repeat > total) {
+          throw new IOException("Too many code lengths");
+        }
+        while (repeat-- > 0) lengths[i++] = value;
+      }
+    }
+    if (lengths[256] == 0) {
+      throw new IOException("Missing end of block code");
+    }
+    literalCode.build(lengths, 0, numLiteral);
+    distanceCode.build(lengths, numLiteral, numDistance);
+    literal = literalCode;
+    distance = distanceCode;
+  }
+
+  /**
+   * Reads the next block header.
+   */
+  private void readBlockHeader() throws IOException {
+    lastBlock = bits(1) != 0;
+    int type = bits(2);
+    if (type == 0) {
+      alignToByte();
+      int len = bits(16);
+      int nlen = bits(16);
+      if ((len ^ 0xffff) != nlen) {
+        throw new IOException("Stored block length mismatch");
+      }
+      storedLeft = len;
+      state = STATE_STORED;
+    } else if (type == 1) {
+      Huffman[] fixed = getFixed();
+      literal = fixed[0];
+      distance = fixed[1];
+      state = STATE_HUFFMAN;
+    } else if (type == 2) {
+      readDynamic();
+      state = STATE_HUFFMAN;
+    } else {
+      throw new IOException("Invalid block type");
+    }
+  }
+
+  private void endBlock() {
+    state = lastBlock ? STATE_TRAILER : STATE_HEADER;
+  }
+
+  /**
+   * Decodes up to <code>len</code> bytes, both into the window and the
+   * provided array.
+   *
+   * @return  the number of bytes decoded, only zero at the end of the stream
+   */
+  private int inflate(byte[] b, int off, int len) throws IOException {
+    byte[] window = this.window;
+    int n = 0;
+    while (n<len) {
+      if (copyLeft>0) {
+        int count = copyLeft;
+        if (count > len - n) {
+          count = len - n;
+        }
+        int from = (windowPos - copyDistance) & WINDOW_MASK;
+        if (
+          copyDistance >= count
+          && from + count <= WINDOW_SIZE
+          && windowPos + count <= WINDOW_SIZE
+        ) {
+          System.arraycopy(window, from, window, windowPos, count);
+          System.arraycopy(window, windowPos, b, off + n, count);
+          n += count;
+          windowPos = (windowPos + count) & WINDOW_MASK;
+        } else {
+          for (int i=0; i<count; i++) {
+            byte value = window[from];
+            window[windowPos] = value;
+            b[off + n++] = value;
+            from = (from + 1) & WINDOW_MASK;
+            windowPos = (windowPos + 1) & WINDOW_MASK;
+          }
+        }
+        copyLeft -= count;
+        windowFilled += count;
+        continue;
+      }
+      if (state == STATE_HUFFMAN) {
+        int sym = decode(literal, n == 0);
+        if (sym < 0) {
+          // Return what has been decoded instead of blocking
+          return n;
+        }
+        if (sym < 256) {
+          window[windowPos] = (byte)sym;
+          windowPos = (windowPos + 1) & WINDOW_MASK;
+          windowFilled++;
+          b[off + n++] = (byte)sym;
+        } else if (sym == 256) {
+          endBlock();
+        } else {
+          sym -= 257;
+          if (sym >= 29) {
+            throw new IOException("Invalid length code");
+          }
+          int length = LENGTH_BASE[sym] + bits(LENGTH_EXTRA[sym]);
+          int distSym = decode(distance, true);
+          if (distSym >= 30) {
+            throw new IOException("Invalid distance code");
+          }
+          int dist = DISTANCE_BASE[distSym] + bits(DISTANCE_EXTRA[distSym]);
+          if (dist > windowFilled) {
+            throw new IOException("Distance too far back");
+          }
+          copyLeft = length;
+          copyDistance = dist;
+        }
+      } else if (state == STATE_STORED) {
+        if (storedLeft == 0) {
+          endBlock();
+        } else if (bitCount >= 8) {
+          // Whole bytes left in the bit buffer after the header
+          byte value = (byte)bits(8);
+          window[windowPos] = value;
+          windowPos = (windowPos + 1) & WINDOW_MASK;
+          windowFilled++;
+          b[off + n++] = value;
+          storedLeft--;
+        } else if (bufferPos < bufferLen) {
+          int count = storedLeft;
+          if (count > len - n) {
+            count = len - n;
+          }
+          if (count > bufferLen - bufferPos) {
+            count = bufferLen - bufferPos;
+          }
+          if (count > WINDOW_SIZE - windowPos) {
+            count = WINDOW_SIZE - windowPos;
+          }
+          System.arraycopy(buffer, bufferPos, window, windowPos, count);
+          System.arraycopy(buffer, bufferPos, b, off + n, count);
+          bufferPos += count;
+          windowPos = (windowPos + count) & WINDOW_MASK;
+          windowFilled += count;
+          n += count;
+          storedLeft -= count;
+        } else if (n > 0) {
+          return n;
+        } else {
+          fillBuffer();
+        }
+      } else if (state == STATE_HEADER) {
+        if (n > 0) {
+          topUp();
+          if (bitCount < 3) {
+            return n;
+          }
+        }
+        readBlockHeader();
+      } else if (state == STATE_TRAILER) {
+        if (n > 0) {
+          return n;
+        }
+        readTrailer();
+        state = STATE_EOF;
+      } else {
+        return n;
+      }
+    }
+    return n;
+  }
+
+  public int read() throws IOException {
+    return read(single, 0, 1) == -1 ? -1 : (single[0] & 0xff);
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (in == null) {
+      throw new IOException("Stream closed");
+    }
+    if (len == 0) {
+      return 0;
+    }
+    int n = inflate(b, off, len);
+    if (windowFilled > WINDOW_SIZE) {
+      windowFilled = WINDOW_SIZE;
+    }
+    if (n == 0) {
+      return -1;
+    }
+    if (gzip) {
+      crc = Crc32.update(crc, b, off, n);
+      size += n;
+    }
+    return n;
+  }
+
+  /**
+   * Closes the underlying stream and makes this instance available for reuse.
+   * It must not be used after closing.
+   */
+  public void close() throws IOException {
+    InputStream closing = in;
+    if (closing != null) {
+      in = null;
+      synchronized (poolLock) {
+        pool = this;
+      }
+      closing.close();
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.util.Vector;
+
+/**
+ * Delivers events to one {@link UpdaterListener} on its own thread, so a slow
+ * listener does not hold up the {@link Updater} or the other listeners.
+ * <p>
+ * The thread is started when there are events to deliver and ends when there
+ * are none.  Only the most recent snapshot is delivered: snapshots that
+ * arrive while the listener is busy replace each other.  Every alert and
+ * every set of transitions is delivered, in order, before any snapshot waiting
+ * with them.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class ListenerDispatcher implements Runnable {
+
+  private final UpdaterListener listener;
+
+  private final Object lock = new Object();
+  private NodeSnapshot pendingSnapshot;
+  private boolean hasPendingSnapshot;
+  private final Vector pendingAlerts = new Vector();
+  private final Vector pendingTransitions = new Vector();
+  private boolean dispatching;
+  private boolean closed;
+
+  ListenerDispatcher(UpdaterListener listener) {
+    this.listener = listener;
+  }
+
+  UpdaterListener getListener() {
+    return listener;
+  }
+
+  void nodesUpdated(NodeSnapshot snapshot) {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      pendingSnapshot = snapshot;
+      hasPendingSnapshot = true;
+    }
+    dispatch();
+  }
+
+  void alertTransitions(AlertTransition[] transitions) {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      pendingTransitions.addElement(transitions);
+    }
+    dispatch();
+  }
+
+  void alert(Exception err) {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      pendingAlerts.addElement(err);
+    }
+    dispatch();
+  }
+
+  /**
+   * Discards any events not yet delivered and delivers no more.
+   */
+  void close() {
+    synchronized (lock) {
+      closed = true;
+      pendingSnapshot = null;
+      hasPendingSnapshot = false;
+      pendingAlerts.removeAllElements();
+      pendingTransitions.removeAllElements();
+    }
+  }
+
+  private void dispatch() {
+    synchronized (lock) {
+      if (dispatching) {
+        return;
+      }
+      dispatching = true;
+    }
+    Thread thread = new Thread(this);
+    thread.start();
+  }
+
+  public void run() {
+    while (true) {
+      Exception err = null;
+      AlertTransition[] transitions = null;
+      NodeSnapshot snapshot = null;
+      synchronized (lock) {
+        if (!pendingAlerts.isEmpty()) {
+          err = (Exception)pendingAlerts.elementAt(0);
+          pendingAlerts.removeElementAt(0);
+        } else if (!pendingTransitions.isEmpty()) {
+          transitions = (AlertTransition[])pendingTransitions.elementAt(0);
+          pendingTransitions.removeElementAt(0);
+        } else if (hasPendingSnapshot) {
+          snapshot = pendingSnapshot;
+          pendingSnapshot = null;
+          hasPendingSnapshot = false;
+        } else {
+          dispatching = false;
+          return;
+        }
+      }
+      if (err != null) {
+        try {
+          listener.alert(err);
+        } catch (Exception err2) {
+          err2.printStackTrace();
+        }
+      } else if (transitions != null) {
+        try {
+          listener.alertTransitions(transitions);
+        } catch (Exception err2) {
+          try {
+            listener.alert(err2);
+          } catch (Exception err3) {
+            err3.printStackTrace();
+          }
+        }
+      } else {
+        try {
+          listener.nodesUpdated(snapshot);
+        } catch (Exception err2) {
+          try {
+            listener.alert(err2);
+          } catch (Exception err3) {
+            err3.printStackTrace();
+          }
+        }
+      }
+    }
+  }
+}
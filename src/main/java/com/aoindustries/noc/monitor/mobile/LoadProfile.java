@@ -0,0 +1,126 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import javax.microedition.midlet.MIDlet;
+
+/**
+ * The tree, churn and network shaping of the {@link LocalServer}.  The defaults
+ * are a small tree changed every fifteen seconds over an unshaped network.
+ * Each may be overridden by an application property, named by the constants
+ * ending in <code>_PROPERTY</code>.
+ *
+ * @author  AO Industries, Inc.
+ */
+final class LoadProfile {
+
+  static final String DATA_CENTERS_PROPERTY = "NOC-Local-Data-Centers";
+  static final String HOSTS_PROPERTY = "NOC-Local-Hosts-Per-Data-Center";
+  static final String MONITORS_PROPERTY = "NOC-Local-Monitors-Per-Host";
+  static final String GROUP_DEPTH_PROPERTY = "NOC-Local-Group-Depth";
+  static final String GROUP_SIZE_PROPERTY = "NOC-Local-Group-Size";
+  static final String CHURN_INTERVAL_PROPERTY = "NOC-Local-Churn-Interval";
+  static final String CHANGES_PROPERTY = "NOC-Local-Changes-Per-Interval";
+  static final String LATENCY_PROPERTY = "NOC-Local-Latency";
+  static final String BANDWIDTH_PROPERTY = "NOC-Local-Bytes-Per-Second";
+
+  /**
+   * Reads any of the properties provided to the MIDlet, using the defaults
+   * for the rest.
+   */
+  static LoadProfile fromAppProperties(MIDlet midlet) {
+    LoadProfile profile = new LoadProfile();
+    profile.dataCenters = getInt(midlet, DATA_CENTERS_PROPERTY, profile.dataCenters);
+    profile.hostsPerDataCenter = getInt(midlet, HOSTS_PROPERTY, profile.hostsPerDataCenter);
+    profile.monitorsPerHost = getInt(midlet, MONITORS_PROPERTY, profile.monitorsPerHost);
+    profile.groupDepth = getInt(midlet, GROUP_DEPTH_PROPERTY, profile.groupDepth);
+    profile.groupSize = getInt(midlet, GROUP_SIZE_PROPERTY, profile.groupSize);
+    profile.churnInterval = getInt(midlet, CHURN_INTERVAL_PROPERTY, (int)profile.churnInterval);
+    profile.changesPerInterval = getInt(midlet, CHANGES_PROPERTY, profile.changesPerInterval);
+    profile.latency = getInt(midlet, LATENCY_PROPERTY, (int)profile.latency);
+    profile.bytesPerSecond = getInt(midlet, BANDWIDTH_PROPERTY, profile.bytesPerSecond);
+    return profile;
+  }
+
+  private static int getInt(MIDlet midlet, String name, int defaultValue) {
+    String value = midlet.getAppProperty(name);
+    return value == null ? defaultValue : Integer.parseInt(value.trim());
+  }
+
+  private int dataCenters = 3;
+  private int hostsPerDataCenter = 20;
+  private int monitorsPerHost = 10;
+  private int groupDepth = 0;
+  private int groupSize = 4;
+  private long churnInterval = 15L * 1000;
+  private int changesPerInterval = 5;
+  private long latency = 0;
+  private int bytesPerSecond = 0;
+
+  /**
+   * Creates a new tree for this profile.
+   */
+  SyntheticTree newTree(long seed) {
+    return new SyntheticTree(seed, dataCenters, hostsPerDataCenter, monitorsPerHost, groupDepth, groupSize);
+  }
+
+  /**
+   * Gets the number of milliseconds between changes to the tree.
+   */
+  long getChurnInterval() {
+    return churnInterval;
+  }
+
+  /**
+   * Gets the number of random changes made each interval.
+   */
+  int getChangesPerInterval() {
+    return changesPerInterval;
+  }
+
+  /**
+   * Gets the milliseconds added before each response.
+   */
+  long getLatency() {
+    return latency;
+  }
+
+  /**
+   * Gets the bandwidth of responses, or <code>0</code> for no limit.
+   */
+  int getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  public String toString() {
+    return
+      dataCenters+" data centers of "+hostsPerDataCenter+" hosts"
+      + (groupDepth>0 ? " in "+groupDepth+" levels of "+groupSize+" groups" : "")
+      + ", "+monitorsPerHost+" monitors per host, "
+      + changesPerInterval+" changes every "+churnInterval+" ms, "
+      + latency+" ms latency, "
+      + (bytesPerSecond>0 ? bytesPerSecond+" bytes/s" : "unlimited bandwidth");
+  }
+}
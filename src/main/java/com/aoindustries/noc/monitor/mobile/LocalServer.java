@@ -0,0 +1,477 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.Vector;
+import javax.microedition.io.Connector;
+import javax.microedition.io.ServerSocketConnection;
+import javax.microedition.io.StreamConnection;
+
+/**
+ * A stand-in for the noc-monitor-mobile-server, run within the same device or
+ * emulator, that serves a {@link SyntheticTree}.  This allows the network path
+ * of {@link Updater} to be exercised offline.  It listens on plain sockets
+ * instead of SSL.
+ * <p>
+ * The tree is changed at a regular interval, and the recent versions are kept
+ * so deltas may be sent.  Sessions are sent each new version as it is created.
+ * The size of the tree, its rate of change, and the latency and bandwidth of
+ * responses are set by a {@link LoadProfile}.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class LocalServer implements Runnable {
+
+  private static final boolean DEBUG = false;
+
+  /**
+   * The port that will be listened on.
+   */
+  static final int PORT = 4585;
+
+  /**
+   * The number of past versions kept for deltas.
+   */
+  private static final int HISTORY_SIZE = 16;
+
+  private static LocalServer instance;
+
+  /**
+   * Starts the server with the default profile if not already running.
+   *
+   * @see  #start(com.aoindustries.noc.monitor.mobile.LoadProfile)
+   */
+  static void start() throws IOException {
+    start(new LoadProfile());
+  }
+
+  /**
+   * Starts the server if not already running.  The server is listening
+   * upon return.  When already running, the profile it was started with
+   * remains in effect.
+   */
+  static void start(final LoadProfile profile) throws IOException {
+    synchronized (LocalServer.class) {
+      if (instance == null) {
+        final LocalServer newInstance = new LocalServer(
+          (ServerSocketConnection)Connector.open("socket://:"+PORT),
+          profile
+        );
+        newInstance.nextVersion();
+        new Thread(newInstance).start();
+        new Thread(
+          new Runnable() {
+            public void run() {
+              try {
+                while (true) {
+                  Thread.sleep(profile.getChurnInterval());
+                  newInstance.nextVersion();
+                }
+              } catch (InterruptedException err) {
+                // Restore the interrupted status
+                Thread.currentThread().interrupt();
+              }
+            }
+          }
+        ).start();
+        instance = newInstance;
+      }
+    }
+  }
+
+  private final ServerSocketConnection serverConn;
+  private final LoadProfile profile;
+  private final SyntheticTree tree;
+
+  /**
+   * The recent versions, by Long version.  Notified when a new version is added.
+   */
+  private final Hashtable history = new Hashtable();
+  private final Vector historyOrder = new Vector();
+  private long currentVersion;
+  private Node currentRoot;
+  private int currentHash;
+
+  private LocalServer(ServerSocketConnection serverConn, LoadProfile profile) {
+    this.serverConn = serverConn;
+    this.profile = profile;
+    this.tree = profile.newTree(System.currentTimeMillis());
+  }
+
+  public void run() {
+    try {
+      while (true) {
+        final StreamConnection conn = serverConn.acceptAndOpen();
+        new Thread(
+          new Runnable() {
+            public void run() {
+              try {
+                try {
+                  handle(conn);
+                } finally {
+                  conn.close();
+                }
+              } catch (IOException err) {
+                err.printStackTrace();
+              }
+            }
+          }
+        ).start();
+      }
+    } catch (IOException err) {
+      err.printStackTrace();
+    }
+  }
+
+  /**
+   * Makes changes to the tree and remembers the new version.
+   */
+  private void nextVersion() {
+    synchronized (history) {
+      tree.churn(profile.getChangesPerInterval());
+      currentVersion = tree.getVersion();
+      currentRoot = tree.toNode();
+      try {
+        currentHash = NodeSnapshot.getContentHash(FlatNodeTree.valueOf(currentRoot));
+      } catch (IOException err) {
+        throw new RuntimeException(err.toString());
+      }
+      Long version = new Long(currentVersion);
+      history.put(version, currentRoot);
+      historyOrder.addElement(version);
+      while (historyOrder.size()>HISTORY_SIZE) {
+        history.remove(historyOrder.elementAt(0));
+        historyOrder.removeElementAt(0);
+      }
+      history.notifyAll();
+    }
+  }
+
+  private void handle(StreamConnection conn) throws IOException {
+    DataInputStream in = conn.openDataInputStream();
+    try {
+      String username = in.readUTF();
+      String password = in.readUTF();
+      short protocolVersion = in.readShort();
+      OutputStream rawOut = new ShapedOutputStream(
+        conn.openOutputStream(),
+        profile.getLatency(),
+        profile.getBytesPerSecond()
+      );
+      DataOutputStream out;
+      if (protocolVersion == Protocol.VERSION) {
+        Codec codec = Codec.readCodecs(in);
+        if (DEBUG) {
+          System.out.println("LocalServer: Using codec "+codec);
+        }
+        rawOut.write(codec.getId());
+        out = new DataOutputStream(codec.getOutputStream(rawOut));
+      } else {
+        // Behave like a server from before the protocol was versioned
+        out = new DataOutputStream(Codec.findCodec(Codec.GZIP).getOutputStream(rawOut));
+      }
+      try {
+        if (!username.equals(Authentication.USERNAME) || !password.equals(Authentication.PASSWORD)) {
+          out.writeByte(Protocol.LOGIN_FAILED);
+        } else if (protocolVersion != Protocol.VERSION) {
+          // Behave like a server from before the protocol was versioned
+          Node root;
+          synchronized (history) {
+            root = currentRoot;
+          }
+          out.writeByte(Protocol.LOGIN_LEGACY);
+          NodeSnapshot.writeNodeTree(out, root);
+        } else {
+          out.writeByte(Protocol.LOGIN_OK);
+          byte request = in.readByte();
+          if (request == Protocol.REQUEST_SNAPSHOT) {
+            long baseVersion = in.readLong();
+            writeSnapshot(out, baseVersion, in.readInt());
+          } else if (request == Protocol.REQUEST_KEEP_ALIVE || request == Protocol.REQUEST_DETAIL) {
+            // Answer each request until the client closes the connection
+            while (true) {
+              if (request == Protocol.REQUEST_DETAIL) {
+                writeDetail(in, out);
+              } else {
+                long baseVersion = in.readLong();
+                writeSnapshot(out, baseVersion, in.readInt());
+              }
+              out.flush();
+              int next = in.read();
+              if (next == -1) {
+                break;
+              }
+              if (next != Protocol.REQUEST_SNAPSHOT && next != Protocol.REQUEST_DETAIL) {
+                throw new IOException("Unexpected request: "+next);
+              }
+              if (DEBUG) {
+                System.out.println("LocalServer: Request on kept connection");
+              }
+              request = (byte)next;
+            }
+          } else if (request == Protocol.REQUEST_SESSION) {
+            long baseVersion = in.readLong();
+            runSession(in, out, baseVersion, in.readInt());
+          } else {
+            throw new IOException("Unexpected request: "+request);
+          }
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes the current version, as not modified when the client has the same
+   * content, or as a delta when the base version is still known.
+   */
+  private void writeSnapshot(DataOutputStream out, long baseVersion, int baseHash) throws IOException {
+    long version;
+    Node root;
+    Node baseRoot;
+    int hash;
+    synchronized (history) {
+      version = currentVersion;
+      root = currentRoot;
+      baseRoot = baseVersion == Protocol.NO_VERSION ? null : (Node)history.get(new Long(baseVersion));
+      hash = currentHash;
+    }
+    if (baseVersion != Protocol.NO_VERSION && baseHash == hash) {
+      writeNotModified(out, version);
+    } else {
+      writeSnapshot(out, baseVersion, baseRoot, version, root);
+    }
+  }
+
+  /**
+   * Reads the path of a detail request and writes the details of the node in
+   * the current version.
+   */
+  private void writeDetail(DataInputStream in, DataOutputStream out) throws IOException {
+    int depth = in.readUnsignedByte();
+    String[] path = new String[depth];
+    for (int c=0; c<depth; c++) path[c] = in.readUTF();
+    Node node;
+    synchronized (history) {
+      node = depth == 0 || !currentRoot.getLabel().equals(path[0]) ? null : currentRoot;
+    }
+    for (int c=1; c<depth && node != null; c++) {
+      Node found = null;
+      Vector children = node.getChildren();
+      for (int d=0, len=children == null ? 0 : children.size(); d<len; d++) {
+        Node child = (Node)children.elementAt(d);
+        if (child.getLabel().equals(path[c])) {
+          found = child;
+          break;
+        }
+      }
+      node = found;
+    }
+    if (node == null) {
+      if (DEBUG) {
+        System.out.println("LocalServer: No detail for path of "+depth+" labels");
+      }
+      out.writeByte(Protocol.RESPONSE_NO_DETAIL);
+    } else {
+      if (DEBUG) {
+        System.out.println("LocalServer: Sending detail for "+node.getLabel());
+      }
+      out.writeByte(Protocol.RESPONSE_DETAIL);
+      NodeDetail.write(out, makeDetail(node, System.currentTimeMillis()));
+    }
+  }
+
+  /**
+   * Makes up the details of a node from its current state, with the same
+   * history each time for the same node.
+   */
+  private static NodeDetail makeDetail(Node node, long now) {
+    Random random = new Random(node.getLabel().hashCode());
+    Vector children = node.getChildren();
+    String[][] rows = {
+      {"Alert Level", AlertLevel.getDisplay(node.getAlertLevel())},
+      {"Alert Message", node.getAlertMessage()},
+      {"Children", Integer.toString(children == null ? 0 : children.size())},
+      {"Response Time", (10 + random.nextInt(490))+" ms"}
+    };
+    int historySize = 5;
+    long[] historyTimes = new long[historySize];
+    byte[] historyAlertLevels = new byte[historySize];
+    String[] historyMessages = new String[historySize];
+    for (int h=0; h<historySize; h++) {
+      historyTimes[h] = now - (historySize-h) * 15L * 60 * 1000;
+      historyAlertLevels[h] = (byte)random.nextInt(AlertLevel.CRITICAL+1);
+      historyMessages[h] = historyAlertLevels[h] == AlertLevel.NONE ? null : "Synthetic history "+h;
+    }
+    return new NodeDetail(
+      now - random.nextInt(60 * 1000),
+      new String[] {"Attribute", "Value"},
+      rows,
+      historyTimes,
+      historyAlertLevels,
+      historyMessages
+    );
+  }
+
+  private static void writeNotModified(DataOutputStream out, long version) throws IOException {
+    if (DEBUG) {
+      System.out.println("LocalServer: Sending not modified for version "+version);
+    }
+    out.writeByte(Protocol.RESPONSE_NOT_MODIFIED);
+    out.writeLong(version);
+  }
+
+  /**
+   * Writes a delta when the base tree is provided, or the full tree otherwise.
+   */
+  private static void writeSnapshot(DataOutputStream out, long baseVersion, Node baseRoot, long version, Node root) throws IOException {
+    if (baseRoot != null) {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      DataOutputStream deltaOut = new DataOutputStream(bout);
+      if (NodeDelta.write(deltaOut, baseRoot, root)) {
+        deltaOut.flush();
+        if (DEBUG) {
+          System.out.println("LocalServer: Sending delta from "+baseVersion+" to "+version+" of "+bout.size()+" bytes");
+        }
+        out.writeByte(Protocol.RESPONSE_DELTA);
+        out.writeLong(baseVersion);
+        out.writeLong(version);
+        out.write(bout.toByteArray());
+        return;
+      }
+    }
+    if (DEBUG) {
+      System.out.println("LocalServer: Sending full tree version "+version);
+    }
+    out.writeByte(Protocol.RESPONSE_FULL);
+    out.writeLong(version);
+    CompactNodeTree.write(out, FlatNodeTree.valueOf(root));
+  }
+
+  /**
+   * Sends each new version until the client goes away.  A heartbeat is sent
+   * when idle and in reply to each heartbeat from the client.
+   */
+  private void runSession(final DataInputStream in, DataOutputStream out, long baseVersion, int baseHash) throws IOException {
+    final boolean[] heartbeatRequested = new boolean[1];
+    final long[] lastReceived = {System.currentTimeMillis()};
+    final boolean[] closed = new boolean[1];
+    // Reads heartbeats from the client
+    new Thread(
+      new Runnable() {
+        public void run() {
+          try {
+            while (true) {
+              byte message = in.readByte();
+              if (message != Protocol.HEARTBEAT) {
+                throw new IOException("Unexpected message: "+message);
+              }
+              synchronized (history) {
+                lastReceived[0] = System.currentTimeMillis();
+                heartbeatRequested[0] = true;
+                history.notifyAll();
+              }
+            }
+          } catch (IOException err) {
+            synchronized (history) {
+              closed[0] = true;
+              history.notifyAll();
+            }
+          }
+        }
+      }
+    ).start();
+    long sentVersion;
+    Node sentRoot;
+    Node baseRoot;
+    int hash;
+    synchronized (history) {
+      sentVersion = currentVersion;
+      sentRoot = currentRoot;
+      baseRoot = baseVersion == Protocol.NO_VERSION ? null : (Node)history.get(new Long(baseVersion));
+      hash = currentHash;
+    }
+    if (baseVersion != Protocol.NO_VERSION && baseHash == hash) {
+      writeNotModified(out, sentVersion);
+    } else {
+      writeSnapshot(out, baseVersion, baseRoot, sentVersion, sentRoot);
+    }
+    out.flush();
+    while (true) {
+      long version;
+      Node root;
+      boolean heartbeat;
+      synchronized (history) {
+        long waitUntil = System.currentTimeMillis() + Protocol.HEARTBEAT_INTERVAL;
+        while (
+          !closed[0]
+          && currentVersion == sentVersion
+          && !heartbeatRequested[0]
+        ) {
+          long waitLeft = waitUntil - System.currentTimeMillis();
+          if (waitLeft <= 0) {
+            break;
+          }
+          try {
+            history.wait(waitLeft);
+          } catch (InterruptedException err) {
+            throw new IOException(err.toString());
+          }
+        }
+        if (closed[0] || System.currentTimeMillis() - lastReceived[0] > Protocol.HEARTBEAT_TIMEOUT) {
+          if (DEBUG) {
+            System.out.println("LocalServer: Session ended");
+          }
+          return;
+        }
+        version = currentVersion;
+        root = currentRoot;
+        heartbeat = heartbeatRequested[0];
+        heartbeatRequested[0] = false;
+      }
+      if (version != sentVersion) {
+        writeSnapshot(out, sentVersion, sentRoot, version, root);
+        sentVersion = version;
+        sentRoot = root;
+      } else {
+        if (DEBUG) {
+          System.out.println("LocalServer: Sending heartbeat"+(heartbeat ? " in reply" : ""));
+        }
+        out.writeByte(Protocol.HEARTBEAT);
+      }
+      out.flush();
+    }
+  }
+}
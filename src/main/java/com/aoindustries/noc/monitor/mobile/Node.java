@@ -1,6 +1,6 @@
 /*
  * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
- * Copyright (C) 2009, 2020, 2022  AO Industries, Inc.
+ * Copyright (C) 2009, 2020, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,10 +23,16 @@
 
 package com.aoindustries.noc.monitor.mobile;
 
+import java.util.Hashtable;
 import java.util.Vector;
 
 /**
  * Represents one node in the systems tree.
+ * <p>
+ * Trees of nodes are used where a tree is built or compared, such as by the
+ * {@link LocalServer} and when finding a {@link NodeDelta}.  Snapshots keep
+ * their tree as a {@link FlatNodeTree}.
+ * </p>
  *
  * @author  AO Industries, Inc.
  */
@@ -40,6 +46,10 @@ public class Node {
   private String alertMessage;
   private boolean allowsChildren;
   private Vector children;
+  /**
+   * The children by label.
+   */
+  private Hashtable childrenByLabel;
 
   /**
    * Creates the new node.  If <code>parent</code> is non-null, this is added to the list
@@ -60,14 +70,13 @@ public class Node {
       synchronized (parent) {
         if (parent.children == null) {
           parent.children = new Vector();
-        } else if (ASSERT) {
-          // Make sure label not already used by a sibling
-          for (int c=0, len=parent.children.size(); c<len; c++) {
-            Node sibling = (Node)parent.children.elementAt(c);
-            if (sibling.label.equals(label)) {
-              throw new RuntimeException("Assertion: label already used by sibling: "+label);
-            }
-          }
+          parent.childrenByLabel = new Hashtable();
+        }
+        Object sibling = parent.childrenByLabel.put(label, this);
+        if (ASSERT && sibling != null) {
+          // Label already used by a sibling
+          parent.childrenByLabel.put(label, sibling);
+          throw new RuntimeException("Assertion: label already used by sibling: "+label);
         }
         parent.children.addElement(this);
       }
@@ -112,6 +121,13 @@ public class Node {
     return allowsChildren;
   }
 
+  /**
+   * Gets the child with the given label or <code>null</code> if not found.
+   */
+  synchronized Node getChild(String label) {
+    return childrenByLabel == null ? null : (Node)childrenByLabel.get(label);
+  }
+
   /**
    * Gets the children of this node or <code>null</code> if has none.
    */
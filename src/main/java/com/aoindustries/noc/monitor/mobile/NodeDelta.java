@@ -0,0 +1,432 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * The set of changes that transforms the node tree of one version into the
+ * node tree of a later version.  Each change is addressed by its label path,
+ * starting with the label of the root node.
+ * <p>
+ * Removed nodes take their entire subtree with them.  Added nodes are given
+ * their index within the children of the new parent, and are sent parents
+ * before children.  Changed nodes keep their children.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class NodeDelta {
+
+  /** Make no instances. */
+  private NodeDelta() {
+    throw new AssertionError();
+  }
+
+  /**
+   * The type of each change.
+   */
+  static final byte
+    ADDED = 1,
+    REMOVED = 2,
+    CHANGED = 3;
+
+  /**
+   * Thrown when a delta does not match the tree it is being applied to.
+   * The caller should fall back to a full download.
+   */
+  static class MismatchException extends IOException {
+
+    MismatchException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * One change as sent on the wire.
+   */
+  private static class Change {
+
+    private final byte type;
+    private final String[] path;
+    private final int index;
+    private final byte alertLevel;
+    private final String alertMessage;
+    private final boolean allowsChildren;
+
+    private Change(byte type, String[] path, int index, byte alertLevel, String alertMessage, boolean allowsChildren) {
+      this.type = type;
+      this.path = path;
+      this.index = index;
+      this.alertLevel = alertLevel;
+      this.alertMessage = alertMessage;
+      this.allowsChildren = allowsChildren;
+    }
+
+    private Change(byte type, String[] path, int index, Node node) {
+      this(type, path, index, node.getAlertLevel(), node.getAlertMessage(), node.getAllowsChildren());
+    }
+  }
+
+  /**
+   * The changes organized as a tree by label path, so they may be applied in
+   * a single pass over the old tree.
+   */
+  private static class Patch {
+
+    private final String label;
+    /** The change type or <code>0</code> when only a container for changes below. */
+    private byte type;
+    private int index;
+    private byte alertLevel;
+    private String alertMessage;
+    private boolean allowsChildren;
+    /** The changes to existing children, by label. */
+    private Hashtable children;
+    /** The added children, by label. */
+    private Hashtable addedByLabel;
+    /** The added children, ordered by index. */
+    private Vector added;
+
+    private Patch(String label) {
+      this.label = label;
+    }
+
+    private void set(Change change) {
+      type = change.type;
+      index = change.index;
+      alertLevel = change.alertLevel;
+      alertMessage = change.alertMessage;
+      allowsChildren = change.allowsChildren;
+    }
+
+    /**
+     * Gets the patch for a child that is on the path to another change.
+     * An added child takes precedence over an existing child of the same label,
+     * since the existing child must have been removed.
+     */
+    private Patch getChild(String childLabel) {
+      if (addedByLabel != null) {
+        Patch child = (Patch)addedByLabel.get(childLabel);
+        if (child != null) {
+          return child;
+        }
+      }
+      return getExisting(childLabel);
+    }
+
+    /**
+     * Gets the patch for an existing child, ignoring any added child of the same label.
+     */
+    private Patch getExisting(String childLabel) {
+      if (children == null) {
+        children = new Hashtable();
+      }
+      Patch child = (Patch)children.get(childLabel);
+      if (child == null) {
+        child = new Patch(childLabel);
+        children.put(childLabel, child);
+      }
+      return child;
+    }
+
+    private void addAdded(Patch child) throws IOException {
+      if (addedByLabel == null) {
+        addedByLabel = new Hashtable();
+        added = new Vector();
+      }
+      if (addedByLabel.put(child.label, child) != null) {
+        throw new MismatchException("Node added twice: "+child.label);
+      }
+      // Keep ordered by index, normally appended at the end
+      int pos = added.size();
+      while (pos>0 && ((Patch)added.elementAt(pos-1)).index>child.index) {
+        pos--;
+      }
+      added.insertElementAt(child, pos);
+    }
+  }
+
+  /**
+   * Reads the changes from the stream and applies them to a copy of the old tree.
+   * The old tree is not modified.
+   *
+   * @return  the new tree
+   *
+   * @throws  MismatchException  if the changes do not apply to the old tree
+   */
+  static FlatNodeTree readAndApply(SnapshotInput in, NodeTree oldTree) throws IOException {
+    String rootLabel = oldTree.getLabel(0);
+    Patch root = new Patch(rootLabel);
+    int numChanges = in.readVarInt();
+    for (int c=0; c<numChanges; c++) {
+      byte type = in.readByte();
+      int pathLen = in.readVarInt();
+      if (pathLen<1) {
+        throw new IOException("Invalid path length: "+pathLen);
+      }
+      String[] path = new String[pathLen];
+      for (int d=0; d<pathLen; d++) path[d] = in.readUTF();
+      Change change;
+      if (type == ADDED) {
+        int index = in.readVarInt();
+        byte alertLevel = in.readByte();
+        String alertMessage = in.readBoolean()?in.readUTF():null;
+        change = new Change(type, path, index, alertLevel, alertMessage, in.readBoolean());
+      } else if (type == CHANGED) {
+        byte alertLevel = in.readByte();
+        String alertMessage = in.readBoolean()?in.readUTF():null;
+        change = new Change(type, path, 0, alertLevel, alertMessage, in.readBoolean());
+      } else if (type == REMOVED) {
+        change = new Change(type, path, 0, AlertLevel.NONE, null, false);
+      } else {
+        throw new IOException("Unexpected change type: "+type);
+      }
+      if (!path[0].equals(rootLabel)) {
+        throw new MismatchException("Root label mismatch: "+path[0]);
+      }
+      Patch parent = root;
+      for (int d=1; d<pathLen-1; d++) parent = parent.getChild(path[d]);
+      if (pathLen == 1) {
+        if (type != CHANGED || root.type != 0) {
+          throw new MismatchException("Unexpected change to root node");
+        }
+        root.set(change);
+      } else if (type == ADDED) {
+        Patch patch = new Patch(path[pathLen-1]);
+        patch.set(change);
+        parent.addAdded(patch);
+      } else {
+        Patch patch = parent.getExisting(path[pathLen-1]);
+        if (patch.type != 0) {
+          throw new MismatchException("Node changed twice: "+patch.label);
+        }
+        patch.set(change);
+      }
+    }
+    int[] applied = new int[1];
+    FlatNodeTree.Builder builder = new FlatNodeTree.Builder();
+    copy(builder, 0, oldTree, 0, root, applied);
+    if (applied[0] != numChanges) {
+      throw new MismatchException("Only "+applied[0]+" of "+numChanges+" changes applied");
+    }
+    try {
+      return builder.build();
+    } catch (MismatchException err) {
+      throw err;
+    } catch (IOException err) {
+      // Changes left a duplicate label
+      throw new MismatchException(err.getMessage());
+    }
+  }
+
+  /**
+   * Copies an old node, along with its children, applying any changes.
+   */
+  private static void copy(FlatNodeTree.Builder builder, int depth, NodeTree oldTree, int oldNode, Patch patch, int[] applied) throws IOException {
+    int oldFirst = oldTree.getFirstChild(oldNode);
+    int oldLen = oldTree.getChildCount(oldNode);
+    Hashtable childPatches = patch == null ? null : patch.children;
+    Vector added = patch == null ? null : patch.added;
+    int addedLen = added == null ? 0 : added.size();
+    // Count the new children
+    int numChildren = oldLen + addedLen;
+    if (childPatches != null) {
+      for (int c=0; c<oldLen; c++) {
+        Patch childPatch = (Patch)childPatches.get(oldTree.getLabel(oldFirst+c));
+        if (childPatch != null && childPatch.type == REMOVED) {
+          numChildren--;
+        }
+      }
+    }
+    if (patch != null && patch.type == CHANGED) {
+      builder.startNode(depth, oldTree.getLabel(oldNode), patch.alertLevel, patch.alertMessage, patch.allowsChildren, numChildren);
+      applied[0]++;
+    } else {
+      builder.startNode(depth, oldTree.getLabel(oldNode), oldTree.getAlertLevel(oldNode), oldTree.getAlertMessage(oldNode), oldTree.getAllowsChildren(oldNode), numChildren);
+    }
+    int oldIndex = 0;
+    int addedIndex = 0;
+    int newIndex = 0;
+    while (true) {
+      if (addedIndex<addedLen) {
+        Patch addedPatch = (Patch)added.elementAt(addedIndex);
+        if (addedPatch.index == newIndex) {
+          create(builder, depth+1, addedPatch, applied);
+          addedIndex++;
+          newIndex++;
+          continue;
+        }
+      }
+      if (oldIndex >= oldLen) {
+        break;
+      }
+      int oldChild = oldFirst + oldIndex++;
+      Patch childPatch = childPatches == null ? null : (Patch)childPatches.get(oldTree.getLabel(oldChild));
+      if (childPatch != null && childPatch.type == REMOVED) {
+        applied[0]++;
+      } else {
+        copy(builder, depth+1, oldTree, oldChild, childPatch, applied);
+        newIndex++;
+      }
+    }
+    if (addedIndex<addedLen) {
+      throw new MismatchException("Added index out of range: "+((Patch)added.elementAt(addedIndex)).index);
+    }
+    builder.endNode(depth);
+  }
+
+  /**
+   * Creates an added node, along with any added children.
+   */
+  private static void create(FlatNodeTree.Builder builder, int depth, Patch patch, int[] applied) throws IOException {
+    Vector added = patch.added;
+    int addedLen = added == null ? 0 : added.size();
+    builder.startNode(depth, patch.label, patch.alertLevel, patch.alertMessage, patch.allowsChildren, addedLen);
+    applied[0]++;
+    for (int c=0; c<addedLen; c++) {
+      Patch addedPatch = (Patch)added.elementAt(c);
+      if (addedPatch.index != c) {
+        throw new MismatchException("Added index out of range: "+addedPatch.index);
+      }
+      create(builder, depth+1, addedPatch, applied);
+    }
+    builder.endNode(depth);
+  }
+
+  /**
+   * Finds the changes between two trees and writes them to the stream.
+   *
+   * @return  <code>false</code> when the root labels differ and nothing was written,
+   *          the caller must send a full tree instead.
+   */
+  static boolean write(DataOutputStream out, Node oldRoot, Node newRoot) throws IOException {
+    if (!oldRoot.getLabel().equals(newRoot.getLabel())) {
+      return false;
+    }
+    Vector changes = new Vector();
+    diff(changes, new String[] {newRoot.getLabel()}, oldRoot, newRoot);
+    int numChanges = changes.size();
+    CompactNodeTree.writeVarInt(out, numChanges);
+    for (int c=0; c<numChanges; c++) {
+      Change change = (Change)changes.elementAt(c);
+      out.writeByte(change.type);
+      String[] path = change.path;
+      CompactNodeTree.writeVarInt(out, path.length);
+      for (int d=0; d<path.length; d++) out.writeUTF(path[d]);
+      if (change.type == ADDED) {
+        CompactNodeTree.writeVarInt(out, change.index);
+      }
+      if (change.type != REMOVED) {
+        out.writeByte(change.alertLevel);
+        if (change.alertMessage != null) {
+          out.writeBoolean(true);
+          out.writeUTF(change.alertMessage);
+        } else {
+          out.writeBoolean(false);
+        }
+        out.writeBoolean(change.allowsChildren);
+      }
+    }
+    return true;
+  }
+
+  private static String[] append(String[] path, String label) {
+    int len = path.length;
+    String[] newPath = new String[len+1];
+    System.arraycopy(path, 0, newPath, 0, len);
+    newPath[len] = label;
+    return newPath;
+  }
+
+  private static boolean equals(String s1, String s2) {
+    return s1 == null ? s2 == null : s1.equals(s2);
+  }
+
+  /**
+   * Finds the changes between two nodes of the same label path.
+   * Existing children that changed their relative order are sent as removed
+   * and added again.
+   */
+  private static void diff(Vector changes, String[] path, Node oldNode, Node newNode) {
+    if (
+      oldNode.getAlertLevel() != newNode.getAlertLevel()
+      || !equals(oldNode.getAlertMessage(), newNode.getAlertMessage())
+      || oldNode.getAllowsChildren() != newNode.getAllowsChildren()
+    ) {
+      changes.addElement(new Change(CHANGED, path, 0, newNode));
+    }
+    Vector oldChildren = oldNode.getChildren();
+    Vector newChildren = newNode.getChildren();
+    int oldLen = oldChildren == null ? 0 : oldChildren.size();
+    int newLen = newChildren == null ? 0 : newChildren.size();
+    Hashtable oldIndexes = new Hashtable();
+    for (int c=0; c<oldLen; c++) {
+      oldIndexes.put(((Node)oldChildren.elementAt(c)).getLabel(), new Integer(c));
+    }
+    // Keep the children that are still in increasing order
+    Node[] kept = new Node[newLen];
+    boolean[] oldKept = new boolean[oldLen];
+    int lastOldIndex = -1;
+    for (int c=0; c<newLen; c++) {
+      Integer oldIndex = (Integer)oldIndexes.get(((Node)newChildren.elementAt(c)).getLabel());
+      if (oldIndex != null && oldIndex.intValue()>lastOldIndex) {
+        lastOldIndex = oldIndex.intValue();
+        kept[c] = (Node)oldChildren.elementAt(lastOldIndex);
+        oldKept[lastOldIndex] = true;
+      }
+    }
+    for (int c=0; c<oldLen; c++) {
+      if (!oldKept[c]) {
+        changes.addElement(new Change(REMOVED, append(path, ((Node)oldChildren.elementAt(c)).getLabel()), 0, AlertLevel.NONE, null, false));
+      }
+    }
+    for (int c=0; c<newLen; c++) {
+      Node newChild = (Node)newChildren.elementAt(c);
+      String[] childPath = append(path, newChild.getLabel());
+      if (kept[c] != null) {
+        diff(changes, childPath, kept[c], newChild);
+      } else {
+        addAll(changes, childPath, c, newChild);
+      }
+    }
+  }
+
+  /**
+   * Adds a node and all its children, parents before children.
+   */
+  private static void addAll(Vector changes, String[] path, int index, Node node) {
+    changes.addElement(new Change(ADDED, path, index, node));
+    Vector children = node.getChildren();
+    if (children != null) {
+      for (int c=0, len=children.size(); c<len; c++) {
+        Node child = (Node)children.elementAt(c);
+        addAll(changes, append(path, child.getLabel()), c, child);
+      }
+    }
+  }
+}
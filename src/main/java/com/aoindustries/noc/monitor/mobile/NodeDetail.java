@@ -0,0 +1,208 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The details of one node, retrieved on demand: the time of its last check, a
+ * table of its current values, and the history of its alert level.
+ * <p>
+ * The details are sent as the time of the last check, the column names, the
+ * rows with a flag before each possibly <code>null</code> value, then the
+ * history entries, each with its time, alert level and optional message.
+ * Counts are variable length integers.
+ * </p>
+ *
+ * @see  DetailCache
+ *
+ * @author  AO Industries, Inc.
+ */
+final class NodeDetail {
+
+  /**
+   * The time of the last check when unknown.
+   */
+  static final long NO_CHECK_TIME = -1;
+
+  /**
+   * The estimated bytes used by each object and array, beyond its contents.
+   */
+  private static final int OBJECT_OVERHEAD = 16;
+
+  private static String readNullUTF(SnapshotInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeNullUTF(DataOutputStream out, String str) throws IOException {
+    out.writeBoolean(str != null);
+    if (str != null) {
+      out.writeUTF(str);
+    }
+  }
+
+  /**
+   * Reads the details in the format of {@link #write(java.io.DataOutputStream, com.aoindustries.noc.monitor.mobile.NodeDetail)}.
+   */
+  static NodeDetail read(SnapshotInput in) throws IOException {
+    long lastCheckTime = in.readLong();
+    int numColumns = in.readVarInt();
+    String[] columns = new String[numColumns];
+    for (int c=0; c<numColumns; c++) columns[c] = in.readUTF();
+    int numRows = in.readVarInt();
+    String[][] rows = new String[numRows][];
+    for (int r=0; r<numRows; r++) {
+      String[] row = new String[numColumns];
+      for (int c=0; c<numColumns; c++) row[c] = readNullUTF(in);
+      rows[r] = row;
+    }
+    int historySize = in.readVarInt();
+    long[] historyTimes = new long[historySize];
+    byte[] historyAlertLevels = new byte[historySize];
+    String[] historyMessages = new String[historySize];
+    for (int h=0; h<historySize; h++) {
+      historyTimes[h] = in.readLong();
+      byte alertLevel = in.readByte();
+      if (alertLevel<AlertLevel.NONE || alertLevel>AlertLevel.UNKNOWN) {
+        throw new IOException("Unexpected value for alertLevel: "+alertLevel);
+      }
+      historyAlertLevels[h] = alertLevel;
+      historyMessages[h] = readNullUTF(in);
+    }
+    return new NodeDetail(lastCheckTime, columns, rows, historyTimes, historyAlertLevels, historyMessages);
+  }
+
+  /**
+   * Writes the details, as sent by the server.
+   */
+  static void write(DataOutputStream out, NodeDetail detail) throws IOException {
+    out.writeLong(detail.lastCheckTime);
+    int numColumns = detail.columns.length;
+    CompactNodeTree.writeVarInt(out, numColumns);
+    for (int c=0; c<numColumns; c++) out.writeUTF(detail.columns[c]);
+    CompactNodeTree.writeVarInt(out, detail.rows.length);
+    for (int r=0; r<detail.rows.length; r++) {
+      String[] row = detail.rows[r];
+      for (int c=0; c<numColumns; c++) writeNullUTF(out, row[c]);
+    }
+    int historySize = detail.historyTimes.length;
+    CompactNodeTree.writeVarInt(out, historySize);
+    for (int h=0; h<historySize; h++) {
+      out.writeLong(detail.historyTimes[h]);
+      out.writeByte(detail.historyAlertLevels[h]);
+      writeNullUTF(out, detail.historyMessages[h]);
+    }
+  }
+
+  private static int getSize(String str) {
+    return str == null ? 0 : OBJECT_OVERHEAD + str.length()*2;
+  }
+
+  private final long lastCheckTime;
+  private final String[] columns;
+  private final String[][] rows;
+  private final long[] historyTimes;
+  private final byte[] historyAlertLevels;
+  private final String[] historyMessages;
+  private final int size;
+
+  /**
+   * The arrays are used directly, not copied.  Each row has one value per column.
+   */
+  NodeDetail(long lastCheckTime, String[] columns, String[][] rows, long[] historyTimes, byte[] historyAlertLevels, String[] historyMessages) {
+    this.lastCheckTime = lastCheckTime;
+    this.columns = columns;
+    this.rows = rows;
+    this.historyTimes = historyTimes;
+    this.historyAlertLevels = historyAlertLevels;
+    this.historyMessages = historyMessages;
+    int newSize = OBJECT_OVERHEAD * 7 + columns.length*4 + rows.length*4 + historyTimes.length*(8+1+4);
+    for (int c=0; c<columns.length; c++) newSize += getSize(columns[c]);
+    for (int r=0; r<rows.length; r++) {
+      String[] row = rows[r];
+      newSize += OBJECT_OVERHEAD + row.length*4;
+      for (int c=0; c<row.length; c++) newSize += getSize(row[c]);
+    }
+    for (int h=0; h<historyMessages.length; h++) newSize += getSize(historyMessages[h]);
+    this.size = newSize;
+  }
+
+  /**
+   * Gets the time of the last check or {@link #NO_CHECK_TIME} when unknown.
+   */
+  long getLastCheckTime() {
+    return lastCheckTime;
+  }
+
+  int getColumnCount() {
+    return columns.length;
+  }
+
+  String getColumn(int column) {
+    return columns[column];
+  }
+
+  int getRowCount() {
+    return rows.length;
+  }
+
+  /**
+   * Gets a value of the table or <code>null</code> for none.
+   */
+  String getValue(int row, int column) {
+    return rows[row][column];
+  }
+
+  /**
+   * Gets the number of history entries, oldest first.
+   */
+  int getHistorySize() {
+    return historyTimes.length;
+  }
+
+  long getHistoryTime(int entry) {
+    return historyTimes[entry];
+  }
+
+  byte getHistoryAlertLevel(int entry) {
+    return historyAlertLevels[entry];
+  }
+
+  /**
+   * Gets the message of a history entry or <code>null</code> for none.
+   */
+  String getHistoryMessage(int entry) {
+    return historyMessages[entry];
+  }
+
+  /**
+   * Gets the estimated number of bytes of memory used, for limiting the size
+   * of the cache.
+   */
+  int getSize() {
+    return size;
+  }
+}
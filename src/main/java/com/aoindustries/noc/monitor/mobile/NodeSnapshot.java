@@ -1,6 +1,6 @@
 /*
  * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
- * Copyright (C) 2008, 2009, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2008, 2009, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -29,12 +29,23 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.Vector;
+import javax.microedition.rms.InvalidRecordIDException;
 import javax.microedition.rms.RecordStore;
 import javax.microedition.rms.RecordStoreException;
 import javax.microedition.rms.RecordStoreNotFoundException;
 
 /**
- * Contains a root node and timestamp.
+ * Contains a node tree, the server version of the tree, and timestamp.
+ * <p>
+ * The most recent snapshot is kept in a record store so the last known state
+ * may be shown immediately at start-up.  Record <code>1</code> is a header with
+ * the format version, the number of chunks, the length, and a CRC-32 of the
+ * data.  The data follows in chunks, starting at record <code>2</code>, so the
+ * size of the tree is not limited by the maximum size of a record.  The header
+ * is written last, and a record that does not match its checksum is discarded.
+ * The tree is stored as a {@link RecordNodeTree}, so the last known state is
+ * shown without decoding the whole tree first.
+ * </p>
  *
  * @author  AO Industries, Inc.
  */
@@ -42,7 +53,7 @@ public class NodeSnapshot {
 
   private static final boolean DEBUG = false;
 
-  private static final boolean USE_RECORD_STORE = false;
+  private static final boolean USE_RECORD_STORE = true;
 
   private static final String RECORD_NAME = "NodeSnapshot.cache";
 
@@ -50,42 +61,84 @@ public class NodeSnapshot {
    * Each time the record store format is changed in an incompatible way,
    * this should be incremented.
    */
-  private static final short RECORD_STORE_FORMAT_VERSION = 1;
+  private static final short RECORD_STORE_FORMAT_VERSION = 6;
 
   /**
-   * Reads a node tree from the provided DataInputStream.
+   * Where the tree starts in the data of the record, after the version, time
+   * and content hash.
    */
-  static Node readNodeTree(DataInputStream in, Node parent) throws IOException {
-    Node node = new Node(
-      parent,
-      in.readUTF(),
-      in.readByte(),
-      in.readBoolean()?in.readUTF():null,
-      in.readBoolean()
-    );
-    int numChildren = in.readShort();
-    for (int c=0; c<numChildren; c++) readNodeTree(in, node);
-    return node;
-  }
+  static final int RECORD_TREE_OFFSET = 20;
 
-  private static void writeNodeTree(DataOutputStream out, Node node) throws IOException {
-    out.writeUTF(node.getLabel());
-    out.writeByte(node.getAlertLevel());
-    String alertMessage = node.getAlertMessage();
-    if (alertMessage != null) {
-      out.writeBoolean(true);
-      out.writeUTF(alertMessage);
-    } else {
-      out.writeBoolean(false);
-    }
-    out.writeBoolean(node.getAllowsChildren());
-    Vector children = node.getChildren();
-    int numChildren = children == null ? 0 : children.size();
-    if (numChildren>Short.MAX_VALUE) {
-      throw new IOException("Too many children for current protocol: "+numChildren);
+  /**
+   * The record that contains the header.
+   */
+  private static final int HEADER_RECORD_ID = 1;
+
+  /**
+   * The maximum number of bytes stored per record.
+   */
+  private static final int CHUNK_SIZE = 8192;
+
+  /**
+   * Writes a node tree, in the format used before {@link CompactNodeTree},
+   * to the provided DataOutputStream.  This does not recurse.
+   *
+   * @see  NodeTreeReader#read(SnapshotInput, NodeTreeReader.Handler)
+   */
+  static void writeNodeTree(DataOutputStream out, Node node) throws IOException {
+    // The children being written and the index of the next child, by depth
+    Vector[] childrenStack = new Vector[16];
+    int[] indexStack = new int[16];
+    int depth = 0;
+    while (true) {
+      out.writeUTF(node.getLabel());
+      out.writeByte(node.getAlertLevel());
+      String alertMessage = node.getAlertMessage();
+      if (alertMessage != null) {
+        out.writeBoolean(true);
+        out.writeUTF(alertMessage);
+      } else {
+        out.writeBoolean(false);
+      }
+      out.writeBoolean(node.getAllowsChildren());
+      Vector children = node.getChildren();
+      int numChildren = children == null ? 0 : children.size();
+      if (numChildren>Short.MAX_VALUE) {
+        throw new IOException("Too many children for current protocol: "+numChildren);
+      }
+      out.writeShort(numChildren);
+      if (numChildren>0) {
+        if (depth == childrenStack.length) {
+          Vector[] newChildrenStack = new Vector[depth*2];
+          System.arraycopy(childrenStack, 0, newChildrenStack, 0, depth);
+          childrenStack = newChildrenStack;
+          int[] newIndexStack = new int[depth*2];
+          System.arraycopy(indexStack, 0, newIndexStack, 0, depth);
+          indexStack = newIndexStack;
+        }
+        childrenStack[depth] = children;
+        indexStack[depth] = 1;
+        depth++;
+        node = (Node)children.elementAt(0);
+      } else {
+        // Move to the next sibling of the nearest parent that has one
+        while (true) {
+          if (depth == 0) {
+            return;
+          }
+          int parentDepth = depth-1;
+          Vector siblings = childrenStack[parentDepth];
+          int index = indexStack[parentDepth];
+          if (index<siblings.size()) {
+            indexStack[parentDepth] = index+1;
+            node = (Node)siblings.elementAt(index);
+            break;
+          }
+          childrenStack[parentDepth] = null;
+          depth = parentDepth;
+        }
+      }
     }
-    out.writeShort(numChildren);
-    for (int c=0;c<numChildren;c++) writeNodeTree(out, (Node)children.elementAt(c));
   }
 
   private static final Object recordLock = new Object();
@@ -97,50 +150,14 @@ public class NodeSnapshot {
   private static int lastRecordVersion = 0;
 
   /**
-   * Stores the provided node tree to the record.
+   * Stores the provided node tree to the record.  This may take some time and
+   * should not be called on a thread that updates the display.
    */
   static void storeRecord(NodeSnapshot snapshot) throws IOException, RecordStoreException {
     synchronized (recordLock) {
       if (USE_RECORD_STORE) {
-        // Convert to a byte[]
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        try {
-          DataOutputStream out = new DataOutputStream(bout);
-          try {
-            out.writeShort(RECORD_STORE_FORMAT_VERSION);
-            writeNodeTree(out, snapshot.rootNode);
-            out.writeLong(snapshot.time);
-          } finally {
-            out.close();
-          }
-        } finally {
-          bout.close();
-        }
-        byte[] newBytes = bout.toByteArray();
-
-        // Store to the record
-        RecordStore recordStore = RecordStore.openRecordStore(RECORD_NAME, true, RecordStore.AUTHMODE_PRIVATE, true);
-        try {
-          if (recordStore.getNumRecords() == 0) {
-            if (DEBUG) {
-              System.out.println("Adding record "+RECORD_NAME+"#1 of "+newBytes.length+" bytes");
-            }
-            int id = recordStore.addRecord(newBytes, 0, newBytes.length);
-            if (id != 1) {
-              recordStore.deleteRecord(id);
-              throw new RecordStoreException("Unexpected first ID: "+id);
-            }
-          } else {
-            if (DEBUG) {
-              System.out.println("Setting record "+RECORD_NAME+"#1 of "+newBytes.length+" bytes");
-            }
-            recordStore.setRecord(1, newBytes, 0, newBytes.length);
-          }
-          lastRecord = snapshot;
-          lastRecordVersion = recordStore.getVersion();
-        } finally {
-          recordStore.closeRecordStore();
-        }
+        lastRecordVersion = writeRecords(RECORD_NAME, toRecordBytes(snapshot));
+        lastRecord = snapshot;
       } else {
         lastRecord = snapshot;
         lastRecordVersion++;
@@ -148,6 +165,167 @@ public class NodeSnapshot {
     }
   }
 
+  /**
+   * Converts a snapshot to the bytes stored in the record.
+   */
+  static byte[] toRecordBytes(NodeSnapshot snapshot) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    try {
+      DataOutputStream out = new DataOutputStream(bout);
+      try {
+        out.writeLong(snapshot.version);
+        out.writeLong(snapshot.time);
+        out.writeInt(snapshot.getContentHash());
+        RecordNodeTree.write(out, snapshot.tree);
+      } finally {
+        out.close();
+      }
+    } finally {
+      bout.close();
+    }
+    return bout.toByteArray();
+  }
+
+  /**
+   * Writes the data to the provided record store, starting over when its
+   * records are not as expected.
+   *
+   * @return  the version of the record store after writing
+   */
+  static int writeRecords(String recordName, byte[] data) throws IOException, RecordStoreException {
+    try {
+      return writeChunks(recordName, data);
+    } catch (InvalidRecordIDException err) {
+      // Records not as expected, start over
+      if (DEBUG) {
+        System.out.println("Recreating record store "+recordName+": "+err.toString());
+      }
+      RecordStore.deleteRecordStore(recordName);
+      return writeChunks(recordName, data);
+    }
+  }
+
+  /**
+   * Writes the data in chunks, then the header.  Records no longer needed are
+   * emptied, but not deleted, so the chunks keep consecutive IDs.
+   *
+   * @return  the version of the record store after writing
+   */
+  private static int writeChunks(String recordName, byte[] data) throws IOException, RecordStoreException {
+    int numChunks = (data.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    RecordStore recordStore = RecordStore.openRecordStore(recordName, true, RecordStore.AUTHMODE_PRIVATE, true);
+    try {
+      if (recordStore.getNumRecords() == 0) {
+        int id = recordStore.addRecord(null, 0, 0);
+        if (id != HEADER_RECORD_ID) {
+          throw new InvalidRecordIDException("Unexpected first ID: "+id);
+        }
+      }
+      int nextRecordId = recordStore.getNextRecordID();
+      for (int c=0; c<numChunks; c++) {
+        int id = HEADER_RECORD_ID+1+c;
+        int off = c*CHUNK_SIZE;
+        int len = Math.min(CHUNK_SIZE, data.length-off);
+        if (id<nextRecordId) {
+          recordStore.setRecord(id, data, off, len);
+        } else {
+          int newId = recordStore.addRecord(data, off, len);
+          if (newId != id) {
+            throw new InvalidRecordIDException("Unexpected chunk ID: "+newId+" != "+id);
+          }
+          nextRecordId = newId+1;
+        }
+      }
+      // Header last, so an interrupted write fails the checksum
+      ByteArrayOutputStream headerBout = new ByteArrayOutputStream();
+      DataOutputStream headerOut = new DataOutputStream(headerBout);
+      headerOut.writeShort(RECORD_STORE_FORMAT_VERSION);
+      headerOut.writeInt(numChunks);
+      headerOut.writeInt(data.length);
+      headerOut.writeInt(Crc32.update(0, data, 0, data.length));
+      headerOut.close();
+      byte[] header = headerBout.toByteArray();
+      recordStore.setRecord(HEADER_RECORD_ID, header, 0, header.length);
+      if (DEBUG) {
+        System.out.println("Stored record "+recordName+" of "+data.length+" bytes in "+numChunks+" chunks");
+      }
+      // Free the space of unused chunks
+      for (int id=HEADER_RECORD_ID+1+numChunks; id<nextRecordId; id++) {
+        if (recordStore.getRecordSize(id)>0) {
+          recordStore.setRecord(id, null, 0, 0);
+        }
+      }
+      return recordStore.getVersion();
+    } finally {
+      recordStore.closeRecordStore();
+    }
+  }
+
+  /**
+   * Reads the data from the provided record store.
+   *
+   * @return  the data or <code>null</code> if there is no valid record
+   */
+  static byte[] readRecords(String recordName) throws IOException, RecordStoreException {
+    try {
+      RecordStore recordStore = RecordStore.openRecordStore(recordName, false, RecordStore.AUTHMODE_PRIVATE, false);
+      try {
+        return readRecords(recordStore);
+      } catch (InvalidRecordIDException err) {
+        return null;
+      } finally {
+        recordStore.closeRecordStore();
+      }
+    } catch (RecordStoreNotFoundException err) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the data from the chunks, verifying the checksum.
+   *
+   * @return  the data or <code>null</code> if there is no valid record
+   */
+  private static byte[] readRecords(RecordStore recordStore) throws IOException, RecordStoreException {
+    if (recordStore.getNumRecords() == 0) {
+      return null;
+    }
+    byte[] header = recordStore.getRecord(HEADER_RECORD_ID);
+    if (header == null) {
+      return null;
+    }
+    DataInputStream headerIn = new DataInputStream(new ByteArrayInputStream(header));
+    if (headerIn.readShort() != RECORD_STORE_FORMAT_VERSION) {
+      return null;
+    }
+    int numChunks = headerIn.readInt();
+    int length = headerIn.readInt();
+    int crc = headerIn.readInt();
+    if (numChunks<0 || length<0 || numChunks != (length + CHUNK_SIZE - 1) / CHUNK_SIZE) {
+      return null;
+    }
+    byte[] data = new byte[length];
+    for (int c=0; c<numChunks; c++) {
+      int id = HEADER_RECORD_ID+1+c;
+      int off = c*CHUNK_SIZE;
+      int len = Math.min(CHUNK_SIZE, length-off);
+      if (recordStore.getRecordSize(id) != len) {
+        return null;
+      }
+      recordStore.getRecord(id, data, off);
+    }
+    if (Crc32.update(0, data, 0, length) != crc) {
+      if (DEBUG) {
+        System.out.println("Checksum mismatch in record "+recordStore.getName());
+      }
+      return null;
+    }
+    if (DEBUG) {
+      System.out.println("Got previous record "+recordStore.getName()+" of "+length+" bytes in "+numChunks+" chunks");
+    }
+    return data;
+  }
+
   /**
    * Gets the most recent record or <code>null</code> if unavailable.
    */
@@ -164,29 +342,32 @@ public class NodeSnapshot {
               return lastRecord;
             }
 
-            if (recordStore.getNumRecords() == 0) {
+            byte[] oldBytes;
+            try {
+              oldBytes = readRecords(recordStore);
+            } catch (InvalidRecordIDException err) {
+              oldBytes = null;
+            }
+            if (oldBytes == null) {
               lastRecord = null;
               lastRecordVersion = -1;
               return null;
             }
-            byte[] oldBytes = recordStore.getRecord(1);
-            if (DEBUG) {
-              System.out.println("Got previous record "+RECORD_NAME+"#1 of "+oldBytes.length+" bytes");
-            }
             DataInputStream in = new DataInputStream(new ByteArrayInputStream(oldBytes));
+            long version;
+            long time;
+            int contentHash;
             try {
-              int recordStoreFormatVersion = in.readShort();
-              if (recordStoreFormatVersion == RECORD_STORE_FORMAT_VERSION) {
-                lastRecordVersion = recordStoreVersion;
-                lastRecord = new NodeSnapshot(readNodeTree(in, null), in.readLong());
-              } else {
-                lastRecord = null;
-                lastRecordVersion = -1;
-              }
-              return lastRecord;
+              version = in.readLong();
+              time = in.readLong();
+              contentHash = in.readInt();
             } finally {
               in.close();
             }
+            // The tree is decoded from the record as it is used
+            lastRecord = new NodeSnapshot(new RecordNodeTree(oldBytes, RECORD_TREE_OFFSET), version, time, contentHash);
+            lastRecordVersion = recordStoreVersion;
+            return lastRecord;
           } finally {
             recordStore.closeRecordStore();
           }
@@ -201,16 +382,83 @@ public class NodeSnapshot {
     }
   }
 
-  private final Node rootNode;
+  /**
+   * Computes a hash of the content of a tree.  Trees with the same nodes in
+   * the same order have the same hash, regardless of how they are stored.
+   * The server computes the same hash to tell whether the client is current.
+   */
+  static int getContentHash(NodeTree tree) {
+    int hash = 1;
+    for (int node=0, size=tree.getSize(); node<size; node++) {
+      hash = hash*31 + tree.getLabel(node).hashCode();
+      hash = hash*31 + tree.getAlertLevel(node);
+      String alertMessage = tree.getAlertMessage(node);
+      hash = hash*31 + (alertMessage == null ? 0 : (alertMessage.hashCode() + 1));
+      hash = hash*31 + (tree.getAllowsChildren(node) ? 1 : 0);
+      hash = hash*31 + tree.getChildCount(node);
+    }
+    return hash;
+  }
+
+  private final NodeTree tree;
+  private final long version;
   private final long time;
+  private final boolean complete;
+
+  private boolean contentHashComputed;
+  private int contentHash;
 
-  NodeSnapshot(Node rootNode, long time) {
-    this.rootNode = rootNode;
+  NodeSnapshot(NodeTree tree, long version, long time) {
+    this(tree, version, time, true);
+  }
+
+  /**
+   * @param  complete  <code>false</code> when the tree is still being read and
+   *                   will continue to grow
+   */
+  NodeSnapshot(NodeTree tree, long version, long time, boolean complete) {
+    this.tree = tree;
+    this.version = version;
     this.time = time;
+    this.complete = complete;
   }
 
-  Node getRootNode() {
-    return rootNode;
+  /**
+   * Creates a complete snapshot of a tree whose content hash is already known,
+   * such as when it is the same tree as a previous snapshot.
+   */
+  NodeSnapshot(NodeTree tree, long version, long time, int contentHash) {
+    this(tree, version, time, true);
+    this.contentHash = contentHash;
+    this.contentHashComputed = true;
+  }
+
+  /**
+   * Gets the node tree, with the root at index <code>0</code>.
+   */
+  NodeTree getTree() {
+    return tree;
+  }
+
+  /**
+   * Gets the content hash of the tree, computed once.
+   *
+   * @see  #getContentHash(NodeTree)
+   */
+  synchronized int getContentHash() {
+    if (!contentHashComputed) {
+      contentHash = getContentHash(tree);
+      contentHashComputed = true;
+    }
+    return contentHash;
+  }
+
+  /**
+   * Gets the server-assigned version of this tree or {@link Protocol#NO_VERSION}
+   * when the server did not provide one.
+   */
+  long getVersion() {
+    return version;
   }
 
   /**
@@ -219,4 +467,13 @@ public class NodeSnapshot {
   long getTime() {
     return time;
   }
+
+  /**
+   * Indicates the whole tree has been read.  An incomplete snapshot is provided
+   * to listeners while a large tree is downloading, so the top levels may be
+   * shown early.  Nodes not yet read are simply missing.
+   */
+  boolean isComplete() {
+    return complete;
+  }
 }
@@ -0,0 +1,119 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+/**
+ * A read-only node tree.  Nodes are identified by index, with the root at
+ * index <code>0</code>.  Nodes are in breadth-first order, so the children of
+ * each node are contiguous: the children of a node are <code>firstChild</code>
+ * through <code>firstChild+childCount-1</code>.
+ *
+ * @see  FlatNodeTree
+ * @see  RecordNodeTree
+ *
+ * @author  AO Industries, Inc.
+ */
+interface NodeTree {
+
+  /**
+   * Gets the number of nodes.
+   */
+  int getSize();
+
+  /**
+   * Gets the unique-per-parent label for a node.
+   */
+  String getLabel(int node);
+
+  /**
+   * Gets the alert level for a node.
+   *
+   * @see  AlertLevel
+   */
+  byte getAlertLevel(int node);
+
+  /**
+   * Gets the most recent alert message for a node or <code>null</code> for none.
+   */
+  String getAlertMessage(int node);
+
+  /**
+   * Indicates a node may have children.
+   */
+  boolean getAllowsChildren(int node);
+
+  /**
+   * Gets the parent of a node or <code>-1</code> for the root.
+   */
+  int getParent(int node);
+
+  /**
+   * Gets the index of the first child of a node.  Only meaningful when
+   * {@link #getChildCount(int)} is non-zero.
+   */
+  int getFirstChild(int node);
+
+  /**
+   * Gets the number of children of a node.
+   */
+  int getChildCount(int node);
+
+  /**
+   * Finds the child of a node by label.
+   *
+   * @return  the child or <code>-1</code> if not found
+   */
+  int getChild(int node, String label);
+
+  /**
+   * Gets the highest alert level of the children of a node or
+   * {@link AlertLevel#NONE} when it has no children.
+   */
+  byte getMaxChildAlertLevel(int node);
+
+  /**
+   * Gets the highest alert level of all descendants of a node or
+   * {@link AlertLevel#NONE} when it has no children.
+   */
+  byte getMaxDescendantAlertLevel(int node);
+
+  /**
+   * Gets the number of descendants of a node at the given alert level.
+   */
+  int getDescendantCount(int node, byte alertLevel);
+
+  /**
+   * Gets the number of descendants of a node at or above the given alert level.
+   */
+  int getDescendantCountAtLeast(int node, byte alertLevel);
+
+  /**
+   * Gets a hash of the labels and alert levels of a node and all of its
+   * descendants.  Subtrees with the same hash almost certainly have the same
+   * nodes at the same alert levels, so comparing trees can skip them.
+   *
+   * @see  AlertTransition#getAlertHash(int, byte, int)
+   */
+  int getAlertHash(int node);
+}
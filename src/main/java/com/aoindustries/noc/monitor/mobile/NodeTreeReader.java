@@ -0,0 +1,107 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.IOException;
+
+/**
+ * Reads a node tree as a stream of events, calling a {@link Handler} as each
+ * node arrives instead of returning only once the whole tree has been read.
+ * <p>
+ * The tree is read without recursion, keeping the number of children left at
+ * each depth in an array, so deep trees cannot overflow the small stack of a
+ * device.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class NodeTreeReader {
+
+  /** Make no instances. */
+  private NodeTreeReader() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Receives the nodes of a tree, in pre-order, as they are read.
+   */
+  interface Handler {
+
+    /**
+     * Called when a node has been read, before any of its children.
+     *
+     * @param  depth        the depth of the node, <code>0</code> for the root
+     * @param  numChildren  the number of children that will follow
+     */
+    void startNode(int depth, String label, byte alertLevel, String alertMessage, boolean allowsChildren, int numChildren) throws IOException;
+
+    /**
+     * Called once all the children of a node have been read.
+     */
+    void endNode(int depth) throws IOException;
+  }
+
+  /**
+   * Reads one tree from the provided input, returning once the
+   * root node has ended.
+   */
+  static void read(SnapshotInput in, Handler handler) throws IOException {
+    // The number of children still to be read, by depth of their parent
+    int[] remaining = new int[16];
+    int depth = 0;
+    while (true) {
+      String label = in.readUTF();
+      byte alertLevel = in.readByte();
+      String alertMessage = in.readBoolean()?in.readUTF():null;
+      boolean allowsChildren = in.readBoolean();
+      int numChildren = in.readShort();
+      if (numChildren<0) {
+        throw new IOException("Invalid number of children: "+numChildren);
+      }
+      handler.startNode(depth, label, alertLevel, alertMessage, allowsChildren, numChildren);
+      if (numChildren>0) {
+        if (depth == remaining.length) {
+          int[] newRemaining = new int[depth*2];
+          System.arraycopy(remaining, 0, newRemaining, 0, depth);
+          remaining = newRemaining;
+        }
+        remaining[depth++] = numChildren;
+      } else {
+        handler.endNode(depth);
+        // End each parent that has no more children
+        while (true) {
+          if (depth == 0) {
+            return;
+          }
+          int parentDepth = depth-1;
+          if (--remaining[parentDepth]>0) {
+            break;
+          }
+          handler.endNode(parentDepth);
+          depth = parentDepth;
+        }
+      }
+    }
+  }
+}
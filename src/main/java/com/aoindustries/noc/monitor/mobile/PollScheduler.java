@@ -0,0 +1,238 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.util.Random;
+
+/**
+ * Decides how long to wait between polls.
+ * <p>
+ * Polls are frequent while any node is at {@link AlertLevel#HIGH} or above,
+ * and for a while after the tree last changed.  When nothing changes, the
+ * interval doubles after each poll up to a maximum.  After an error, the
+ * delay doubles with each consecutive failure.  Every delay is varied at
+ * random so many clients do not poll in step.
+ * </p>
+ * <p>
+ * A budget limits the number of polls started in any hour, to bound the
+ * battery and data used.  The budget is spread over the hour by keeping polls
+ * at least an hour divided by the budget apart, so it is not used in a burst
+ * and then followed by a long stall while alerts are high.  Polls requested
+ * by the user are not delayed by the budget, but are counted against it.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class PollScheduler {
+
+  private static final boolean DEBUG = false;
+
+  /**
+   * The interval while any node is at a high alert level.
+   */
+  private static final long URGENT_INTERVAL = 30L * 1000;
+
+  /**
+   * The interval while the tree has recently changed.
+   */
+  private static final long CHANGED_INTERVAL = 60L * 1000;
+
+  /**
+   * How long after a change the tree is considered recently changed.
+   */
+  private static final long CHANGED_DURATION = 10L * 60 * 1000;
+
+  /**
+   * The interval when nothing is happening, before backing off.
+   */
+  private static final long QUIET_INTERVAL = 5L * 60 * 1000;
+
+  /**
+   * The longest interval when nothing is happening.
+   */
+  private static final long MAX_QUIET_INTERVAL = 30L * 60 * 1000;
+
+  /**
+   * The delay after the first error.
+   */
+  private static final long ERROR_DELAY = 60L * 1000;
+
+  /**
+   * The longest delay after repeated errors.
+   */
+  private static final long MAX_ERROR_DELAY = 30L * 60 * 1000;
+
+  /**
+   * The maximum random variation of each delay, in percent.
+   */
+  private static final int JITTER_PERCENT = 20;
+
+  private static final long HOUR = 60L * 60 * 1000;
+
+  /**
+   * The default maximum number of polls started per hour, which allows
+   * polling at the {@link #URGENT_INTERVAL} for the whole hour.
+   */
+  static final int DEFAULT_MAX_POLLS_PER_HOUR = (int)(HOUR / URGENT_INTERVAL);
+
+  private final Random random = new Random(System.currentTimeMillis());
+
+  /**
+   * The start times of recent polls, used as a ring.
+   */
+  private long[] pollTimes = new long[DEFAULT_MAX_POLLS_PER_HOUR];
+  private int numPollTimes;
+  private int nextPollTime;
+
+  private int quietPolls;
+  private int failures;
+  private boolean urgent;
+  private long lastChangeTime;
+  private boolean changed;
+
+  /**
+   * Sets the maximum number of polls started per hour.
+   *
+   * @param  maxPollsPerHour  the budget or <code>0</code> for no limit
+   */
+  synchronized void setMaxPollsPerHour(int maxPollsPerHour) {
+    if (maxPollsPerHour<0) {
+      throw new IllegalArgumentException("maxPollsPerHour<0: "+maxPollsPerHour);
+    }
+    pollTimes = new long[maxPollsPerHour];
+    numPollTimes = 0;
+    nextPollTime = 0;
+  }
+
+  /**
+   * Records the start of a poll.
+   */
+  synchronized void pollStarted(long time) {
+    int len = pollTimes.length;
+    if (len>0) {
+      pollTimes[nextPollTime] = time;
+      nextPollTime = (nextPollTime+1) % len;
+      if (numPollTimes<len) {
+        numPollTimes++;
+      }
+    }
+  }
+
+  /**
+   * Records a successful poll, noting whether the tree changed and whether
+   * any node is at a high alert level.  When the server does not provide
+   * versions, the content of the trees is compared.
+   */
+  synchronized void pollSucceeded(long time, NodeSnapshot oldSnapshot, NodeSnapshot newSnapshot) {
+    failures = 0;
+    NodeTree tree = newSnapshot.getTree();
+    urgent =
+      tree.getAlertLevel(0) >= AlertLevel.HIGH
+      || tree.getMaxDescendantAlertLevel(0) >= AlertLevel.HIGH;
+    boolean unchanged;
+    if (oldSnapshot == null) {
+      unchanged = false;
+    } else if (tree == oldSnapshot.getTree()) {
+      // Not modified
+      unchanged = true;
+    } else {
+      long newVersion = newSnapshot.getVersion();
+      long oldVersion = oldSnapshot.getVersion();
+      if (newVersion != Protocol.NO_VERSION && oldVersion != Protocol.NO_VERSION) {
+        unchanged = newVersion == oldVersion;
+      } else {
+        unchanged = newSnapshot.getContentHash() == oldSnapshot.getContentHash();
+      }
+    }
+    if (oldSnapshot == null) {
+      // Unknown whether changed
+      quietPolls = 0;
+    } else if (!unchanged) {
+      changed = true;
+      lastChangeTime = time;
+      quietPolls = 0;
+    } else if (urgent || (changed && time-lastChangeTime<CHANGED_DURATION)) {
+      quietPolls = 0;
+    } else if ((QUIET_INTERVAL << quietPolls)<MAX_QUIET_INTERVAL) {
+      quietPolls++;
+    }
+  }
+
+  /**
+   * Records a failed poll or connection.
+   */
+  synchronized void pollFailed() {
+    if (failures == 0 || (ERROR_DELAY << (failures-1))<MAX_ERROR_DELAY) {
+      failures++;
+    }
+  }
+
+  /**
+   * Records a connection that was established, ending the backoff from errors.
+   */
+  synchronized void connected() {
+    failures = 0;
+  }
+
+  /**
+   * Gets the number of milliseconds to wait before the next poll.
+   */
+  synchronized long getDelay(long time) {
+    long delay;
+    if (failures>0) {
+      delay = Math.min(ERROR_DELAY << (failures-1), MAX_ERROR_DELAY);
+    } else if (urgent) {
+      delay = URGENT_INTERVAL;
+    } else if (changed && time-lastChangeTime<CHANGED_DURATION) {
+      delay = CHANGED_INTERVAL;
+    } else {
+      delay = Math.min(QUIET_INTERVAL << quietPolls, MAX_QUIET_INTERVAL);
+    }
+    // Jitter
+    delay += delay * (random.nextInt(JITTER_PERCENT*2+1) - JITTER_PERCENT) / 100;
+    // Budget
+    int len = pollTimes.length;
+    if (numPollTimes>0) {
+      // Spread over the hour
+      long gapDelay = pollTimes[(nextPollTime+len-1) % len] + HOUR/len - time;
+      if (gapDelay>delay) {
+        delay = gapDelay;
+      }
+    }
+    if (len>0 && numPollTimes == len) {
+      // The oldest poll is the next to be replaced
+      long budgetDelay = pollTimes[nextPollTime] + HOUR - time;
+      if (budgetDelay>delay) {
+        if (DEBUG) {
+          System.out.println("PollScheduler: Budget used, delaying "+budgetDelay+" ms instead of "+delay+" ms");
+        }
+        delay = budgetDelay;
+      }
+    }
+    if (DEBUG) {
+      System.out.println("PollScheduler: failures="+failures+" urgent="+urgent+" quietPolls="+quietPolls+" delay="+delay);
+    }
+    return delay;
+  }
+}
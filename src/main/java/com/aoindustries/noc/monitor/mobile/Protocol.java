@@ -0,0 +1,122 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+/**
+ * Constants used in the protocol spoken with the noc-monitor-mobile-server.
+ * <p>
+ * The client writes the username and password, as it always has, followed by
+ * the protocol version, the supported {@link Codec codecs} and a request.  The
+ * server answers with the chosen codec and a compressed stream beginning with
+ * one of the login bytes.  A server that does not understand the protocol
+ * version answers with a gzip stream of {@link #LOGIN_LEGACY} followed by a
+ * full node tree, just as before this protocol was versioned.
+ * </p>
+ * <p>
+ * Full trees are sent in the {@link CompactNodeTree} format, and deltas use
+ * variable length integers for counts and indexes.
+ * </p>
+ * <p>
+ * Each snapshot request is followed by the version and content hash of the
+ * client's snapshot.  When the server's tree has the same content hash, it
+ * answers with {@link #RESPONSE_NOT_MODIFIED} and its current version instead
+ * of a tree.
+ * </p>
+ * <p>
+ * A {@link #REQUEST_DETAIL} is followed by the number of labels in the path of
+ * the node, as a byte, and the labels from the root.  It is answered with
+ * {@link #RESPONSE_DETAIL} and the {@link NodeDetail}, or
+ * {@link #RESPONSE_NO_DETAIL} when the node is not found.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class Protocol {
+
+  /** Make no instances. */
+  private Protocol() {
+    throw new AssertionError();
+  }
+
+  /**
+   * The current protocol version sent by the client after the password.
+   */
+  static final short VERSION = 7;
+
+  /**
+   * The version sent when the client has no previous snapshot.
+   */
+  static final long NO_VERSION = -1;
+
+  /**
+   * The first byte of the response.
+   */
+  static final byte
+    LOGIN_FAILED = 0,
+    LOGIN_LEGACY = 1,
+    LOGIN_OK = 2;
+
+  /**
+   * The requests.  {@link #REQUEST_SESSION} keeps the connection open, with
+   * the server sending each new version as a response.
+   * {@link #REQUEST_KEEP_ALIVE} is answered like {@link #REQUEST_SNAPSHOT},
+   * then the connection is kept open for further requests.  Each is
+   * {@link #REQUEST_SNAPSHOT} or {@link #REQUEST_DETAIL}, without logging in
+   * again, and its response follows in the same compressed stream.  A
+   * connection begun with {@link #REQUEST_DETAIL} is also kept open.
+   */
+  static final byte
+    REQUEST_SNAPSHOT = 1,
+    REQUEST_SESSION = 2,
+    REQUEST_KEEP_ALIVE = 3,
+    REQUEST_DETAIL = 4;
+
+  /**
+   * The responses to {@link #REQUEST_SNAPSHOT} and the messages of a session.
+   * During a session, {@link #HEARTBEAT} is also sent by the client.
+   */
+  static final byte
+    RESPONSE_FULL = 1,
+    RESPONSE_DELTA = 2,
+    HEARTBEAT = 3,
+    RESPONSE_NOT_MODIFIED = 4;
+
+  /**
+   * The responses to {@link #REQUEST_DETAIL}.
+   */
+  static final byte
+    RESPONSE_DETAIL = 5,
+    RESPONSE_NO_DETAIL = 6;
+
+  /**
+   * The number of milliseconds between heartbeats when a session is otherwise idle.
+   */
+  static final long HEARTBEAT_INTERVAL = 60L * 1000;
+
+  /**
+   * A session is considered dead when nothing has been received for this many
+   * milliseconds.
+   */
+  static final long HEARTBEAT_TIMEOUT = 3 * HEARTBEAT_INTERVAL;
+}
@@ -0,0 +1,456 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * A node tree read directly from the bytes of a stored record, decoding only
+ * the nodes and strings that are used.  This allows the last known state to
+ * be shown at start-up without first building the whole tree.
+ * <p>
+ * The nodes are stored breadth-first with variable length fields.  They are
+ * grouped into blocks of {@link #BLOCK_SIZE} nodes, with the offset of each
+ * block and the first child of its first node kept in an index.  A node is
+ * found by decoding its block, and the most recently decoded block is kept.
+ * </p>
+ * <p>
+ * Nodes with children also store their alert hash and their number of
+ * descendants at each alert level, so the tree may be filtered and compared
+ * without visiting below each node.  This lets the tree remain the base of
+ * the first request after start-up without being decoded whole.  The alert
+ * hash of a leaf follows from its label and alert level.  There is no label
+ * index: children are found by comparing labels, indexing the children of
+ * the most recently searched parent.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class RecordNodeTree implements NodeTree {
+
+  /**
+   * The number of nodes per block of the index.
+   */
+  private static final int BLOCK_SIZE = 64;
+
+  /**
+   * The number of alert levels, from {@link AlertLevel#NONE} through {@link AlertLevel#UNKNOWN}.
+   */
+  private static final int NUM_ALERT_LEVELS = AlertLevel.UNKNOWN+1;
+
+  /**
+   * Parents with at least this many children have their children indexed
+   * by label when searched.
+   */
+  private static final int MIN_INDEXED_CHILDREN = 8;
+
+  /**
+   * The flags byte of each node.
+   */
+  private static final int
+    ALERT_LEVEL_MASK = 0x07,
+    MAX_CHILD_ALERT_LEVEL_SHIFT = 3,
+    HAS_ALERT_MESSAGE = 0x40,
+    ALLOWS_CHILDREN = 0x80;
+
+  private static int countString(Hashtable indexes, Vector strings, Vector counts, String str) {
+    Integer index = (Integer)indexes.get(str);
+    if (index == null) {
+      index = new Integer(strings.size());
+      indexes.put(str, index);
+      strings.addElement(str);
+      counts.addElement(new int[1]);
+    }
+    ((int[])counts.elementAt(index.intValue()))[0]++;
+    return index.intValue();
+  }
+
+  /**
+   * Writes a node tree in the format read by this class.
+   */
+  static void write(DataOutputStream out, NodeTree tree) throws IOException {
+    int size = tree.getSize();
+
+    // Find the distinct strings and how many times each is used
+    Hashtable indexes = new Hashtable();
+    Vector strings = new Vector();
+    Vector counts = new Vector();
+    int[] labelIndex = new int[size];
+    int[] alertMessageIndex = new int[size];
+    for (int node=0; node<size; node++) {
+      labelIndex[node] = countString(indexes, strings, counts, tree.getLabel(node));
+      String alertMessage = tree.getAlertMessage(node);
+      alertMessageIndex[node] = alertMessage == null ? -1 : countString(indexes, strings, counts, alertMessage);
+    }
+    int numStrings = strings.size();
+    int[] stringCounts = new int[numStrings];
+    for (int c=0; c<numStrings; c++) stringCounts[c] = ((int[])counts.elementAt(c))[0];
+    int[] sorted = CompactNodeTree.sortByCount(stringCounts);
+    int[] newIndexes = new int[numStrings];
+    CompactNodeTree.writeVarInt(out, numStrings);
+    for (int c=0; c<numStrings; c++) {
+      int str = sorted[c];
+      newIndexes[str] = c;
+      out.writeUTF((String)strings.elementAt(str));
+    }
+
+    // The nodes, remembering where each block starts
+    int numBlocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    int[] blockOffset = new int[numBlocks];
+    int[] blockFirstChild = new int[numBlocks];
+    ByteArrayOutputStream nodeBout = new ByteArrayOutputStream();
+    DataOutputStream nodeOut = new DataOutputStream(nodeBout);
+    int firstChild = 1;
+    for (int node=0; node<size; node++) {
+      if ((node % BLOCK_SIZE) == 0) {
+        int block = node / BLOCK_SIZE;
+        blockOffset[block] = nodeOut.size();
+        blockFirstChild[block] = firstChild;
+      }
+      CompactNodeTree.writeVarInt(nodeOut, newIndexes[labelIndex[node]]);
+      int flags = tree.getAlertLevel(node) | (tree.getMaxChildAlertLevel(node) << MAX_CHILD_ALERT_LEVEL_SHIFT);
+      if (alertMessageIndex[node] != -1) {
+        flags |= HAS_ALERT_MESSAGE;
+      }
+      if (tree.getAllowsChildren(node)) {
+        flags |= ALLOWS_CHILDREN;
+      }
+      nodeOut.writeByte(flags);
+      if (alertMessageIndex[node] != -1) {
+        CompactNodeTree.writeVarInt(nodeOut, newIndexes[alertMessageIndex[node]]);
+      }
+      int childCount = tree.getChildCount(node);
+      CompactNodeTree.writeVarInt(nodeOut, childCount);
+      if (childCount>0) {
+        nodeOut.writeInt(tree.getAlertHash(node));
+        for (byte level=AlertLevel.NONE; level<NUM_ALERT_LEVELS; level++) {
+          CompactNodeTree.writeVarInt(nodeOut, tree.getDescendantCount(node, level));
+        }
+      }
+      firstChild += childCount;
+    }
+    nodeOut.close();
+    CompactNodeTree.writeVarInt(out, size);
+    for (int c=0; c<numBlocks; c++) {
+      out.writeInt(blockOffset[c]);
+      out.writeInt(blockFirstChild[c]);
+    }
+    out.writeInt(nodeBout.size());
+    nodeBout.writeTo(out);
+  }
+
+  private final byte[] data;
+  private final int[] stringOffset;
+  private final String[] strings;
+  /**
+   * The characters of the string being decoded.
+   */
+  private char[] chars = new char[64];
+  private final int size;
+  private final int[] blockOffset;
+  private final int[] blockFirstChild;
+
+  // The most recently decoded block
+  private int decodedBlock = -1;
+  private final int[] labelIndex = new int[BLOCK_SIZE];
+  private final byte[] flags = new byte[BLOCK_SIZE];
+  private final int[] alertMessageIndex = new int[BLOCK_SIZE];
+  private final int[] childCount = new int[BLOCK_SIZE];
+  private final int[] firstChild = new int[BLOCK_SIZE];
+  /** The alert hashes of the nodes with children. */
+  private final int[] alertHash = new int[BLOCK_SIZE];
+  /** The number of descendants at each alert level, {@link #NUM_ALERT_LEVELS} per node. */
+  private final int[] descendantCounts = new int[BLOCK_SIZE*NUM_ALERT_LEVELS];
+
+  // The children of the most recently searched parent, by label
+  private int indexedParent = -1;
+  private final Hashtable childIndex = new Hashtable();
+
+  /**
+   * Only the string offsets and block index are read, the nodes and strings
+   * are decoded as used.  The data must not be modified.
+   *
+   * @param  offset  where the tree starts within the data
+   */
+  RecordNodeTree(byte[] data, int offset) throws IOException {
+    this.data = data;
+    int[] pos = {offset};
+    int numStrings = readVarInt(pos);
+    stringOffset = new int[numStrings];
+    for (int c=0; c<numStrings; c++) {
+      stringOffset[c] = pos[0];
+      pos[0] += 2 + readUnsignedShort(pos[0]);
+    }
+    strings = new String[numStrings];
+    size = readVarInt(pos);
+    if (size<1) {
+      throw new IOException("Empty tree");
+    }
+    int numBlocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    blockOffset = new int[numBlocks];
+    blockFirstChild = new int[numBlocks];
+    for (int c=0; c<numBlocks; c++) {
+      blockOffset[c] = readInt(pos[0]);
+      blockFirstChild[c] = readInt(pos[0]+4);
+      pos[0] += 8;
+    }
+    int nodesLength = readInt(pos[0]);
+    int nodesStart = pos[0] + 4;
+    if (nodesLength<0 || nodesStart+nodesLength>data.length) {
+      throw new IOException("Node data out of range");
+    }
+    for (int c=0; c<numBlocks; c++) {
+      if (blockOffset[c]<0 || blockOffset[c] >= nodesLength) {
+        throw new IOException("Block offset out of range: "+blockOffset[c]);
+      }
+      blockOffset[c] += nodesStart;
+    }
+  }
+
+  private int readUnsignedShort(int pos) throws IOException {
+    if (pos+2>data.length) {
+      throw new IOException("Unexpected end of data");
+    }
+    return ((data[pos] & 0xff) << 8) | (data[pos+1] & 0xff);
+  }
+
+  private int readInt(int pos) throws IOException {
+    if (pos+4>data.length) {
+      throw new IOException("Unexpected end of data");
+    }
+    return
+      ((data[pos] & 0xff) << 24)
+      | ((data[pos+1] & 0xff) << 16)
+      | ((data[pos+2] & 0xff) << 8)
+      | (data[pos+3] & 0xff);
+  }
+
+  /**
+   * Reads a variable length integer, advancing the position.
+   *
+   * @see  SnapshotInput#readVarInt()
+   */
+  private int readVarInt(int[] pos) {
+    int value = 0;
+    int shift = 0;
+    while (true) {
+      int b = data[pos[0]++];
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+      shift += 7;
+    }
+  }
+
+  private synchronized String getString(int index) {
+    String str = strings[index];
+    if (str == null) {
+      int offset = stringOffset[index];
+      int utfLen = ((data[offset] & 0xff) << 8) | (data[offset+1] & 0xff);
+      if (chars.length < utfLen) {
+        chars = new char[utfLen];
+      }
+      try {
+        str = new String(chars, 0, SnapshotInput.decodeUTF(data, offset + 2, utfLen, chars));
+      } catch (IOException err) {
+        throw new RuntimeException(err.toString());
+      }
+      strings[index] = str;
+    }
+    return str;
+  }
+
+  /**
+   * Decodes the block containing a node, returning the position of the node
+   * within the block.
+   */
+  private int decode(int node) {
+    if (node<0 || node >= size) {
+      throw new ArrayIndexOutOfBoundsException(node);
+    }
+    int block = node / BLOCK_SIZE;
+    if (block != decodedBlock) {
+      int[] pos = {blockOffset[block]};
+      int nextFirstChild = blockFirstChild[block];
+      for (int c=0, len=Math.min(BLOCK_SIZE, size-block*BLOCK_SIZE); c<len; c++) {
+        labelIndex[c] = readVarInt(pos);
+        byte nodeFlags = data[pos[0]++];
+        flags[c] = nodeFlags;
+        alertMessageIndex[c] = (nodeFlags & HAS_ALERT_MESSAGE) != 0 ? readVarInt(pos) : -1;
+        int numChildren = readVarInt(pos);
+        childCount[c] = numChildren;
+        firstChild[c] = nextFirstChild;
+        nextFirstChild += numChildren;
+        int countsOffset = c*NUM_ALERT_LEVELS;
+        if (numChildren>0) {
+          alertHash[c] =
+            ((data[pos[0]] & 0xff) << 24)
+            | ((data[pos[0]+1] & 0xff) << 16)
+            | ((data[pos[0]+2] & 0xff) << 8)
+            | (data[pos[0]+3] & 0xff);
+          pos[0] += 4;
+          for (int level=0; level<NUM_ALERT_LEVELS; level++) descendantCounts[countsOffset+level] = readVarInt(pos);
+        } else {
+          for (int level=0; level<NUM_ALERT_LEVELS; level++) descendantCounts[countsOffset+level] = 0;
+        }
+      }
+      decodedBlock = block;
+    }
+    return node - block*BLOCK_SIZE;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public String getLabel(int node) {
+    int index;
+    synchronized (this) {
+      index = labelIndex[decode(node)];
+    }
+    return getString(index);
+  }
+
+  public synchronized byte getAlertLevel(int node) {
+    return (byte)(flags[decode(node)] & ALERT_LEVEL_MASK);
+  }
+
+  public String getAlertMessage(int node) {
+    int index;
+    synchronized (this) {
+      index = alertMessageIndex[decode(node)];
+    }
+    return index == -1 ? null : getString(index);
+  }
+
+  public synchronized boolean getAllowsChildren(int node) {
+    return (flags[decode(node)] & ALLOWS_CHILDREN) != 0;
+  }
+
+  /**
+   * Finds the parent as the last node before this one whose first child is not
+   * after this one.
+   */
+  public synchronized int getParent(int node) {
+    if (node == 0) {
+      decode(node);
+      return -1;
+    }
+    // The last block starting at or before the node with a first child at or before the node
+    int low = 0;
+    int high = (node-1) / BLOCK_SIZE;
+    while (low<high) {
+      int mid = (low + high + 1) / 2;
+      if (blockFirstChild[mid] <= node) {
+        low = mid;
+      } else {
+        high = mid-1;
+      }
+    }
+    int start = low*BLOCK_SIZE;
+    int parent = start;
+    for (int c=start, end=Math.min(node, start+BLOCK_SIZE); c<end; c++) {
+      if (firstChild[decode(c)] <= node) {
+        parent = c;
+      }
+    }
+    return parent;
+  }
+
+  public synchronized int getFirstChild(int node) {
+    return firstChild[decode(node)];
+  }
+
+  public synchronized int getChildCount(int node) {
+    return childCount[decode(node)];
+  }
+
+  public int getChild(int node, String label) {
+    int first;
+    int len;
+    synchronized (this) {
+      int i = decode(node);
+      first = firstChild[i];
+      len = childCount[i];
+    }
+    if (len<MIN_INDEXED_CHILDREN) {
+      for (int c=first, end=first+len; c<end; c++) {
+        if (getLabel(c).equals(label)) {
+          return c;
+        }
+      }
+      return -1;
+    }
+    // Comparing trees searches the same parent for each of its children
+    synchronized (childIndex) {
+      if (indexedParent != node) {
+        childIndex.clear();
+        for (int c=first, end=first+len; c<end; c++) childIndex.put(getLabel(c), new Integer(c));
+        indexedParent = node;
+      }
+      Integer child = (Integer)childIndex.get(label);
+      return child == null ? -1 : child.intValue();
+    }
+  }
+
+  public synchronized byte getMaxChildAlertLevel(int node) {
+    return (byte)((flags[decode(node)] >> MAX_CHILD_ALERT_LEVEL_SHIFT) & ALERT_LEVEL_MASK);
+  }
+
+  public synchronized byte getMaxDescendantAlertLevel(int node) {
+    int countsOffset = decode(node)*NUM_ALERT_LEVELS;
+    for (int level=NUM_ALERT_LEVELS-1; level>AlertLevel.NONE; level--) {
+      if (descendantCounts[countsOffset+level] != 0) {
+        return (byte)level;
+      }
+    }
+    return AlertLevel.NONE;
+  }
+
+  public synchronized int getDescendantCount(int node, byte alertLevel) {
+    return descendantCounts[decode(node)*NUM_ALERT_LEVELS+alertLevel];
+  }
+
+  public synchronized int getDescendantCountAtLeast(int node, byte alertLevel) {
+    int countsOffset = decode(node)*NUM_ALERT_LEVELS;
+    int count = 0;
+    for (int level=alertLevel; level<NUM_ALERT_LEVELS; level++) count += descendantCounts[countsOffset+level];
+    return count;
+  }
+
+  public int getAlertHash(int node) {
+    synchronized (this) {
+      int i = decode(node);
+      if (childCount[i]>0) {
+        return alertHash[i];
+      }
+    }
+    return AlertTransition.getAlertHash(getLabel(node).hashCode(), getAlertLevel(node), 0);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.microedition.io.StreamConnection;
+
+/**
+ * An open connection to the server along with its streams.  It may be closed
+ * from any thread, which is how a blocked read is aborted, since closing a
+ * connection does not close the streams already opened from it.
+ * <p>
+ * The bytes read and the time spent blocked reading them are counted, so the
+ * time waiting on the network may be told apart from the time decoding.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+class ServerConnection {
+
+  private final StreamConnection conn;
+  private final DataOutputStream out;
+  private final InputStream in;
+  private boolean closed;
+
+  /**
+   * Only updated by the one thread reading at a time.
+   */
+  private long bytesRead;
+  private long readTime;
+
+  /**
+   * Counts the bytes read and the time spent reading them.
+   */
+  private class MeteredInputStream extends InputStream {
+
+    private final InputStream in;
+
+    private MeteredInputStream(InputStream in) {
+      this.in = in;
+    }
+
+    public int read() throws IOException {
+      long startTime = System.currentTimeMillis();
+      int b = in.read();
+      readTime += System.currentTimeMillis() - startTime;
+      if (b != -1) {
+        bytesRead++;
+      }
+      return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      long startTime = System.currentTimeMillis();
+      int count = in.read(b, off, len);
+      readTime += System.currentTimeMillis() - startTime;
+      if (count > 0) {
+        bytesRead += count;
+      }
+      return count;
+    }
+
+    public int available() throws IOException {
+      return in.available();
+    }
+
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  ServerConnection(StreamConnection conn) throws IOException {
+    this.conn = conn;
+    boolean success = false;
+    try {
+      this.out = conn.openDataOutputStream();
+      this.in = new MeteredInputStream(conn.openInputStream());
+      success = true;
+    } finally {
+      if (!success) {
+        conn.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the output stream.  Writes from multiple threads must synchronize on it.
+   */
+  DataOutputStream getOutputStream() {
+    return out;
+  }
+
+  /**
+   * Gets the raw input stream.
+   */
+  InputStream getInputStream() {
+    return in;
+  }
+
+  /**
+   * Gets the number of bytes read so far.
+   */
+  long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Gets the number of milliseconds spent blocked reading so far.
+   */
+  long getReadTime() {
+    return readTime;
+  }
+
+  synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Closes the streams and the connection.  Closing more than once has no effect.
+   */
+  void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    try {
+      in.close();
+    } catch (IOException err) {
+      // Closing anyway
+    }
+    try {
+      out.close();
+    } catch (IOException err) {
+      // Closing anyway
+    }
+    try {
+      conn.close();
+    } catch (IOException err) {
+      // Closing anyway
+    }
+  }
+}
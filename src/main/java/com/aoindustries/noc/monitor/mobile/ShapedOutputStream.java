@@ -0,0 +1,111 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Delays and throttles the responses of the {@link LocalServer}, so it may
+ * behave like the real server over a slow network.  The first write after each
+ * flush is delayed by the latency, and writes are then paced to the bandwidth.
+ *
+ * @author  AO Industries, Inc.
+ */
+class ShapedOutputStream extends OutputStream {
+
+  /**
+   * The most written at once when the bandwidth is limited.
+   */
+  private static final int CHUNK_SIZE = 512;
+
+  private final OutputStream out;
+  private final long latency;
+  private final int bytesPerSecond;
+  private final byte[] single = new byte[1];
+
+  /**
+   * Set once the latency has been applied to the current response.
+   */
+  private boolean delayed;
+  private long responseStart;
+  private long responseSent;
+
+  /**
+   * @param  latency         the milliseconds before each response
+   * @param  bytesPerSecond  the bandwidth or <code>0</code> for no limit
+   */
+  ShapedOutputStream(OutputStream out, long latency, int bytesPerSecond) {
+    this.out = out;
+    this.latency = latency;
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  private static void sleep(long millis) throws InterruptedIOException {
+    if (millis>0) {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException err) {
+        throw new InterruptedIOException(err.toString());
+      }
+    }
+  }
+
+  public void write(int b) throws IOException {
+    single[0] = (byte)b;
+    write(single, 0, 1);
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (!delayed) {
+      sleep(latency);
+      delayed = true;
+      responseStart = System.currentTimeMillis();
+      responseSent = 0;
+    }
+    if (bytesPerSecond <= 0) {
+      out.write(b, off, len);
+    } else {
+      while (len>0) {
+        int chunk = len < CHUNK_SIZE ? len : CHUNK_SIZE;
+        out.write(b, off, chunk);
+        off += chunk;
+        len -= chunk;
+        responseSent += chunk;
+        sleep(responseStart + responseSent * 1000 / bytesPerSecond - System.currentTimeMillis());
+      }
+    }
+  }
+
+  public void flush() throws IOException {
+    out.flush();
+    delayed = false;
+  }
+
+  public void close() throws IOException {
+    out.close();
+  }
+}
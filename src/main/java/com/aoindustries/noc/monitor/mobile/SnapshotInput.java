@@ -0,0 +1,312 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+
+/**
+ * Reads the responses from the server, in place of a
+ * <code>DataInputStream</code> that would go to the decompressor for every
+ * primitive and allocate two arrays for every string.
+ * <p>
+ * Input is read through a reusable buffer.  Strings are decoded into a
+ * reusable array of characters, then looked up in a pool of the strings
+ * already read, so labels that repeat from one snapshot to the next are not
+ * allocated again.  {@link #close()} returns the instance, along with its
+ * pool, for the next connection.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class SnapshotInput {
+
+  private static final int BUFFER_SIZE = 4096;
+
+  /**
+   * The number of slots in the string pool.  The pool is cleared once three
+   * quarters full.
+   */
+  private static final int POOL_SIZE = 2048;
+  private static final int POOL_MASK = POOL_SIZE - 1;
+  private static final int MAX_POOLED = POOL_SIZE * 3 / 4;
+
+  /**
+   * Longer strings are not pooled.
+   */
+  private static final int MAX_POOLED_LENGTH = 128;
+
+  private static final Object poolLock = new Object();
+
+  /**
+   * The instance returned by the last {@link #close()}, if any.
+   */
+  private static SnapshotInput available;
+
+  /**
+   * Gets a reader for the provided stream, reusing the last closed instance
+   * when available.
+   */
+  static SnapshotInput getInstance(InputStream in) {
+    SnapshotInput snapshotIn;
+    synchronized (poolLock) {
+      snapshotIn = available;
+      available = null;
+    }
+    if (snapshotIn == null) {
+      snapshotIn = new SnapshotInput();
+    }
+    snapshotIn.in = in;
+    snapshotIn.pos = 0;
+    snapshotIn.limit = 0;
+    return snapshotIn;
+  }
+
+  /**
+   * Decodes modified UTF-8, as written by <code>DataOutputStream.writeUTF</code>
+   * without the length, into the provided characters.
+   *
+   * @return  the number of characters
+   */
+  static int decodeUTF(byte[] bytes, int off, int utfLen, char[] chars) throws UTFDataFormatException {
+    int end = off + utfLen;
+    int count = 0;
+    while (off < end) {
+      int c = bytes[off++] & 0xff;
+      if (c < 0x80) {
+        chars[count++] = (char)c;
+      } else if ((c & 0xe0) == 0xc0) {
+        if (off >= end) {
+          throw new UTFDataFormatException();
+        }
+        int c2 = bytes[off++];
+        if ((c2 & 0xc0) != 0x80) {
+          throw new UTFDataFormatException();
+        }
+        chars[count++] = (char)(((c & 0x1f) << 6) | (c2 & 0x3f));
+      } else if ((c & 0xf0) == 0xe0) {
+        if (off + 1 >= end) {
+          throw new UTFDataFormatException();
+        }
+        int c2 = bytes[off++];
+        int c3 = bytes[off++];
+        if ((c2 & 0xc0) != 0x80 || (c3 & 0xc0) != 0x80) {
+          throw new UTFDataFormatException();
+        }
+        chars[count++] = (char)(((c & 0x0f) << 12) | ((c2 & 0x3f) << 6) | (c3 & 0x3f));
+      } else {
+        throw new UTFDataFormatException();
+      }
+    }
+    return count;
+  }
+
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private InputStream in;
+  private int pos;
+  private int limit;
+
+  /**
+   * Strings longer than the buffer are gathered here before decoding.
+   */
+  private byte[] utfBytes = new byte[256];
+  private char[] chars = new char[256];
+
+  private final String[] pool = new String[POOL_SIZE];
+  private final int[] poolHashes = new int[POOL_SIZE];
+  private int pooled;
+
+  private SnapshotInput() {
+  }
+
+  /**
+   * Refills the empty buffer with whatever input is available, blocking only
+   * when there is none.
+   */
+  private void fill() throws IOException {
+    if (in == null) {
+      throw new IOException("Stream closed");
+    }
+    int len;
+    do {
+      len = in.read(buffer, 0, BUFFER_SIZE);
+      if (len == -1) {
+        throw new EOFException();
+      }
+    } while (len == 0);
+    pos = 0;
+    limit = len;
+  }
+
+  byte readByte() throws IOException {
+    if (pos == limit) {
+      fill();
+    }
+    return buffer[pos++];
+  }
+
+  int readUnsignedByte() throws IOException {
+    if (pos == limit) {
+      fill();
+    }
+    return buffer[pos++] & 0xff;
+  }
+
+  boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  short readShort() throws IOException {
+    return (short)readUnsignedShort();
+  }
+
+  int readUnsignedShort() throws IOException {
+    if (limit - pos >= 2) {
+      byte[] buffer = this.buffer;
+      int value = ((buffer[pos] & 0xff) << 8) | (buffer[pos+1] & 0xff);
+      pos += 2;
+      return value;
+    }
+    return (readUnsignedByte() << 8) | readUnsignedByte();
+  }
+
+  int readInt() throws IOException {
+    return (readUnsignedShort() << 16) | readUnsignedShort();
+  }
+
+  long readLong() throws IOException {
+    return ((long)readInt() << 32) | (readInt() & 0xffffffffL);
+  }
+
+  /**
+   * Reads a non-negative int written by
+   * {@link CompactNodeTree#writeVarInt(java.io.DataOutputStream, int)}.
+   */
+  int readVarInt() throws IOException {
+    int value = 0;
+    for (int shift=0; shift<32; shift+=7) {
+      int b = readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        if (value<0) {
+          throw new IOException("Variable length integer out of range");
+        }
+        return value;
+      }
+    }
+    throw new IOException("Variable length integer too long");
+  }
+
+  /**
+   * Reads a string written by <code>DataOutputStream.writeUTF</code>, taking
+   * it from the pool when already read.
+   */
+  String readUTF() throws IOException {
+    int utfLen = readUnsignedShort();
+    if (chars.length < utfLen) {
+      chars = new char[utfLen];
+    }
+    int count;
+    if (limit - pos >= utfLen) {
+      // Decode straight from the buffer
+      count = decodeUTF(buffer, pos, utfLen, chars);
+      pos += utfLen;
+    } else {
+      if (utfBytes.length < utfLen) {
+        utfBytes = new byte[utfLen];
+      }
+      for (int off=0; off<utfLen; ) {
+        if (pos == limit) {
+          fill();
+        }
+        int len = limit - pos;
+        if (len > utfLen - off) {
+          len = utfLen - off;
+        }
+        System.arraycopy(buffer, pos, utfBytes, off, len);
+        pos += len;
+        off += len;
+      }
+      count = decodeUTF(utfBytes, 0, utfLen, chars);
+    }
+    return intern(chars, count);
+  }
+
+  /**
+   * Finds the string with the provided characters in the pool, adding it when
+   * not found.
+   */
+  private String intern(char[] chars, int count) {
+    if (count > MAX_POOLED_LENGTH) {
+      return new String(chars, 0, count);
+    }
+    int hash = 0;
+    for (int i=0; i<count; i++) hash = 31 * hash + chars[i];
+    String[] pool = this.pool;
+    int slot = hash & POOL_MASK;
+    while (true) {
+      String str = pool[slot];
+      if (str == null) {
+        break;
+      }
+      if (poolHashes[slot] == hash && str.length() == count) {
+        int i = 0;
+        while (i < count && str.charAt(i) == chars[i]) i++;
+        if (i == count) {
+          return str;
+        }
+      }
+      slot = (slot + 1) & POOL_MASK;
+    }
+    String str = new String(chars, 0, count);
+    if (pooled == MAX_POOLED) {
+      // Start over rather than grow
+      for (int i=0; i<POOL_SIZE; i++) pool[i] = null;
+      pooled = 0;
+      slot = hash & POOL_MASK;
+    }
+    pool[slot] = str;
+    poolHashes[slot] = hash;
+    pooled++;
+    return str;
+  }
+
+  /**
+   * Closes the underlying stream and makes this instance available for reuse.
+   * It must not be used after closing.
+   */
+  void close() throws IOException {
+    InputStream closing = in;
+    if (closing != null) {
+      in = null;
+      synchronized (poolLock) {
+        available = this;
+      }
+      closing.close();
+    }
+  }
+}
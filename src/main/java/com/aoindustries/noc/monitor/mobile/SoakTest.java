@@ -0,0 +1,269 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.IOException;
+import javax.microedition.lcdui.Display;
+import javax.microedition.lcdui.Form;
+import javax.microedition.midlet.MIDlet;
+
+/**
+ * Runs an {@link Updater} against a {@link LocalServer} for hours at a time,
+ * sampling the heap and threads each minute, so leaks and stalls may be found
+ * without the real server or network.  The server is set up by the
+ * {@link LoadProfile} application properties, and the test by the constants
+ * ending in <code>_PROPERTY</code>.
+ * <p>
+ * Each sample is written to the console and the most recent are shown.
+ * Steady growth of the heap or thread count after the first few samples
+ * indicates a leak.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public class SoakTest extends MIDlet implements Runnable {
+
+  static final String DURATION_PROPERTY = "NOC-Soak-Hours";
+  static final String POLL_INTERVAL_PROPERTY = "NOC-Soak-Poll-Seconds";
+  static final String SESSION_PROPERTY = "NOC-Soak-Session";
+
+  private static final int DEFAULT_DURATION = 24;
+  private static final int DEFAULT_POLL_INTERVAL = 30;
+
+  /**
+   * The number of milliseconds between samples.
+   */
+  private static final long SAMPLE_INTERVAL = 60L * 1000;
+
+  /**
+   * The number of samples shown on the screen.
+   */
+  private static final int SHOWN_LINES = 20;
+
+  private final Form form = new Form("Soak Test");
+  private Thread thread;
+
+  /**
+   * The statistics since the last sample, protected by the lock.
+   */
+  private final Object statsLock = new Object();
+  private long requestTime = -1;
+  private int updates;
+  private int polls;
+  private long minLatency;
+  private long maxLatency;
+  private long totalLatency;
+  private int transitions;
+  private int errors;
+
+  protected void startApp() {
+    Display.getDisplay(this).setCurrent(form);
+    synchronized (this) {
+      if (thread == null) {
+        thread = new Thread(this);
+        thread.start();
+      }
+    }
+  }
+
+  protected void pauseApp() {
+    // Keeps running
+  }
+
+  protected void destroyApp(boolean unconditional) {
+    synchronized (this) {
+      thread = null;
+      notifyAll();
+    }
+  }
+
+  private synchronized boolean isRunning() {
+    return thread == Thread.currentThread();
+  }
+
+  private int getInt(String name, int defaultValue) {
+    String value = getAppProperty(name);
+    return value == null ? defaultValue : Integer.parseInt(value.trim());
+  }
+
+  private void report(String line) {
+    System.out.println(line);
+    if (form.size() >= SHOWN_LINES) {
+      form.delete(0);
+    }
+    form.append(line+"\n");
+  }
+
+  private static long getHeapUsed() {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  public void run() {
+    long duration = getInt(DURATION_PROPERTY, DEFAULT_DURATION) * 60L * 60 * 1000;
+    long pollInterval = getInt(POLL_INTERVAL_PROPERTY, DEFAULT_POLL_INTERVAL) * 1000L;
+    boolean useSession = "true".equals(getAppProperty(SESSION_PROPERTY));
+    LoadProfile profile = LoadProfile.fromAppProperties(this);
+    report("Server: "+profile);
+    report(
+      "Running "+(duration / (60L * 60 * 1000))+" hours, "
+      + (useSession ? "using sessions" : "polling every "+(pollInterval / 1000)+" seconds")
+    );
+    try {
+      LocalServer.start(profile);
+    } catch (IOException err) {
+      report(err.toString());
+      return;
+    }
+    Updater updater = new Updater(Authentication.USERNAME, Authentication.PASSWORD, true, useSession);
+    updater.setMaxPollsPerHour(0);
+    updater.addUpdaterListener(
+      new UpdaterListener() {
+        public void nodesUpdated(NodeSnapshot snapshot) {
+          if (snapshot.isComplete()) {
+            long now = System.currentTimeMillis();
+            synchronized (statsLock) {
+              updates++;
+              if (requestTime != -1) {
+                long latency = now - requestTime;
+                requestTime = -1;
+                if (polls == 0 || latency < minLatency) {
+                  minLatency = latency;
+                }
+                if (latency > maxLatency) {
+                  maxLatency = latency;
+                }
+                totalLatency += latency;
+                polls++;
+              }
+            }
+          }
+        }
+
+        public void alertTransitions(AlertTransition[] newTransitions) {
+          synchronized (statsLock) {
+            transitions += newTransitions.length;
+          }
+        }
+
+        public void alert(Exception err) {
+          synchronized (statsLock) {
+            errors++;
+            requestTime = -1;
+          }
+          System.out.println("SoakTest: "+err.toString());
+        }
+      }
+    );
+    long startTime = System.currentTimeMillis();
+    long baseline = getHeapUsed();
+    report("Baseline heap: "+baseline+" bytes, threads: "+Thread.activeCount());
+    updater.start();
+    try {
+      long nextPoll = startTime + pollInterval;
+      long nextSample = startTime + SAMPLE_INTERVAL;
+      while (isRunning()) {
+        long now = System.currentTimeMillis();
+        if (now - startTime >= duration) {
+          break;
+        }
+        if (!useSession && now >= nextPoll) {
+          synchronized (statsLock) {
+            if (requestTime == -1) {
+              requestTime = now;
+            }
+          }
+          updater.updateNow();
+          nextPoll += pollInterval;
+          if (nextPoll <= now) {
+            nextPoll = now + pollInterval;
+          }
+        }
+        if (now >= nextSample) {
+          sample(startTime, baseline);
+          nextSample += SAMPLE_INTERVAL;
+        }
+        long wait = (useSession ? nextSample : Math.min(nextPoll, nextSample)) - System.currentTimeMillis();
+        if (wait > 0) {
+          synchronized (this) {
+            if (thread == Thread.currentThread()) {
+              try {
+                wait(wait);
+              } catch (InterruptedException err) {
+                // Restore the interrupted status
+                Thread.currentThread().interrupt();
+                break;
+              }
+            }
+          }
+        }
+      }
+    } finally {
+      updater.stop();
+    }
+    sample(startTime, baseline);
+    report("Done");
+  }
+
+  /**
+   * Reports the heap, threads and polls since the last sample.
+   */
+  private void sample(long startTime, long baseline) {
+    long heap = getHeapUsed();
+    int sampleUpdates;
+    int samplePolls;
+    long sampleMin;
+    long sampleMax;
+    long sampleTotal;
+    int sampleTransitions;
+    int sampleErrors;
+    synchronized (statsLock) {
+      sampleUpdates = updates;
+      samplePolls = polls;
+      sampleMin = minLatency;
+      sampleMax = maxLatency;
+      sampleTotal = totalLatency;
+      sampleTransitions = transitions;
+      sampleErrors = errors;
+      updates = 0;
+      polls = 0;
+      minLatency = 0;
+      maxLatency = 0;
+      totalLatency = 0;
+      transitions = 0;
+      errors = 0;
+    }
+    long minutes = (System.currentTimeMillis() - startTime) / (60L * 1000);
+    report(
+      minutes+"m heap="+heap+" ("+(heap >= baseline ? "+" : "")+(heap - baseline)+")"
+      + " threads="+Thread.activeCount()
+      + " updates="+sampleUpdates
+      + (samplePolls == 0 ? "" : " latency="+sampleMin+"/"+(sampleTotal / samplePolls)+"/"+sampleMax+"ms")
+      + " transitions="+sampleTransitions
+      + " errors="+sampleErrors
+    );
+  }
+}
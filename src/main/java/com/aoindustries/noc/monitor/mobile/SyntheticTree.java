@@ -0,0 +1,254 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * Generates a changing node tree that resembles the tree of the real server:
+ * data centers containing hosts containing monitors.  Hosts may be placed
+ * within levels of groups for deeper trees.  Labels repeat the way
+ * they do on the real server, and most monitors have an alert level of
+ * {@link AlertLevel#NONE}.
+ *
+ * @see  LocalServer
+ *
+ * @author  AO Industries, Inc.
+ */
+class SyntheticTree {
+
+  private static final String ROOT_LABEL = "Root";
+
+  private static final String[] MONITOR_LABELS = {
+    "Load Average",
+    "Disk Space",
+    "Memory",
+    "Swap Space",
+    "Ping",
+    "Hard Drives",
+    "Time",
+    "Net Devices",
+    "File Systems",
+    "RAID",
+    "Backups",
+    "HTTP",
+    "SMTP",
+    "MySQL Servers",
+    "PostgreSQL Servers"
+  };
+
+  /**
+   * One generated host and the current state of its monitors.
+   */
+  private static class Host {
+
+    private final String label;
+    private final byte[] alertLevels;
+    private final String[] alertMessages;
+
+    private Host(String label, int numMonitors) {
+      this.label = label;
+      this.alertLevels = new byte[numMonitors];
+      this.alertMessages = new String[numMonitors];
+    }
+  }
+
+  private final Random random;
+  private final int monitorsPerHost;
+  private final int groupDepth;
+  private final int groupSize;
+  private final Vector[] dataCenters;
+  private int nextHostId = 1;
+  private long version = 1;
+
+  /**
+   * Creates a tree with the hosts directly within each data center.
+   *
+   * @param  seed  the random seed, the same seed generates the same sequence of trees
+   */
+  SyntheticTree(long seed, int numDataCenters, int hostsPerDataCenter, int monitorsPerHost) {
+    this(seed, numDataCenters, hostsPerDataCenter, monitorsPerHost, 0, 2);
+  }
+
+  /**
+   * @param  seed        the random seed, the same seed generates the same sequence of trees
+   * @param  groupDepth  the number of levels of groups between each data center and its hosts
+   * @param  groupSize   the number of groups within each data center or group
+   */
+  SyntheticTree(long seed, int numDataCenters, int hostsPerDataCenter, int monitorsPerHost, int groupDepth, int groupSize) {
+    if (monitorsPerHost>MONITOR_LABELS.length) {
+      throw new IllegalArgumentException("monitorsPerHost>"+MONITOR_LABELS.length+": "+monitorsPerHost);
+    }
+    if (groupDepth<0) {
+      throw new IllegalArgumentException("groupDepth<0: "+groupDepth);
+    }
+    if (groupSize<1) {
+      throw new IllegalArgumentException("groupSize<1: "+groupSize);
+    }
+    this.random = new Random(seed);
+    this.monitorsPerHost = monitorsPerHost;
+    this.groupDepth = groupDepth;
+    this.groupSize = groupSize;
+    this.dataCenters = new Vector[numDataCenters];
+    for (int c=0; c<numDataCenters; c++) {
+      Vector hosts = new Vector(hostsPerDataCenter);
+      for (int d=0; d<hostsPerDataCenter; d++) hosts.addElement(newHost(c));
+      dataCenters[c] = hosts;
+    }
+  }
+
+  private Host newHost(int dataCenter) {
+    Host host = new Host("host"+(nextHostId++)+".dc"+(dataCenter+1)+".example.com", monitorsPerHost);
+    for (int c=0; c<monitorsPerHost; c++) setRandomAlert(host, c);
+    return host;
+  }
+
+  /**
+   * Picks an alert level with the distribution typically seen on the real server.
+   */
+  private byte randomAlertLevel() {
+    int r = random.nextInt(1000);
+    if (r<850) {
+      return AlertLevel.NONE;
+    }
+    if (r<930) {
+      return AlertLevel.LOW;
+    }
+    if (r<970) {
+      return AlertLevel.MEDIUM;
+    }
+    if (r<988) {
+      return AlertLevel.HIGH;
+    }
+    if (r<996) {
+      return AlertLevel.CRITICAL;
+    }
+    return AlertLevel.UNKNOWN;
+  }
+
+  private void setRandomAlert(Host host, int monitor) {
+    byte alertLevel = randomAlertLevel();
+    host.alertLevels[monitor] = alertLevel;
+    host.alertMessages[monitor] = alertLevel == AlertLevel.NONE ? null : (MONITOR_LABELS[monitor]+" is "+AlertLevel.getDisplay(alertLevel));
+  }
+
+  /**
+   * Makes the provided number of random changes, occasionally adding or
+   * removing an entire host, and increments the version.
+   */
+  synchronized void churn(int changes) {
+    for (int c=0; c<changes; c++) {
+      int dataCenter = random.nextInt(dataCenters.length);
+      Vector hosts = dataCenters[dataCenter];
+      int r = random.nextInt(100);
+      if (r == 0 && !hosts.isEmpty()) {
+        hosts.removeElementAt(random.nextInt(hosts.size()));
+      } else if (r == 1 || hosts.isEmpty()) {
+        hosts.insertElementAt(newHost(dataCenter), random.nextInt(hosts.size()+1));
+      } else {
+        setRandomAlert((Host)hosts.elementAt(random.nextInt(hosts.size())), random.nextInt(monitorsPerHost));
+      }
+    }
+    version++;
+  }
+
+  /**
+   * Gets the version of the current tree.
+   */
+  synchronized long getVersion() {
+    return version;
+  }
+
+  /**
+   * Builds a new node tree for the current state.  Each folder has the highest
+   * alert level of its children.
+   */
+  synchronized Node toNode() {
+    // Compute levels first, since nodes are immutable
+    byte rootLevel = AlertLevel.NONE;
+    byte[] dataCenterLevels = new byte[dataCenters.length];
+    for (int c=0; c<dataCenters.length; c++) {
+      Vector hosts = dataCenters[c];
+      byte dataCenterLevel = AlertLevel.NONE;
+      for (int d=0, len=hosts.size(); d<len; d++) {
+        byte hostLevel = getHostLevel((Host)hosts.elementAt(d));
+        if (hostLevel>dataCenterLevel) {
+          dataCenterLevel = hostLevel;
+        }
+      }
+      dataCenterLevels[c] = dataCenterLevel;
+      if (dataCenterLevel>rootLevel) {
+        rootLevel = dataCenterLevel;
+      }
+    }
+    Node root = new Node(null, ROOT_LABEL, rootLevel, null, true);
+    for (int c=0; c<dataCenters.length; c++) {
+      Node dataCenterNode = new Node(root, "Data Center "+(c+1), dataCenterLevels[c], null, true);
+      Vector hosts = dataCenters[c];
+      addHosts(dataCenterNode, hosts, 0, hosts.size(), groupDepth);
+    }
+    return root;
+  }
+
+  /**
+   * Adds a range of hosts, split evenly into groups until no levels of groups
+   * are left.
+   */
+  private void addHosts(Node parent, Vector hosts, int from, int to, int depth) {
+    if (depth == 0) {
+      for (int d=from; d<to; d++) {
+        Host host = (Host)hosts.elementAt(d);
+        Node hostNode = new Node(parent, host.label, getHostLevel(host), null, true);
+        for (int e=0; e<monitorsPerHost; e++) {
+          new Node(hostNode, MONITOR_LABELS[e], host.alertLevels[e], host.alertMessages[e], false);
+        }
+      }
+    } else {
+      int hostsPerGroup = (to - from + groupSize - 1) / groupSize;
+      for (int g=0, start=from; start<to; g++, start+=hostsPerGroup) {
+        int end = Math.min(start + hostsPerGroup, to);
+        byte groupLevel = AlertLevel.NONE;
+        for (int d=start; d<end; d++) {
+          byte hostLevel = getHostLevel((Host)hosts.elementAt(d));
+          if (hostLevel>groupLevel) {
+            groupLevel = hostLevel;
+          }
+        }
+        addHosts(new Node(parent, "Group "+(g+1), groupLevel, null, true), hosts, start, end, depth-1);
+      }
+    }
+  }
+
+  private static byte getHostLevel(Host host) {
+    byte hostLevel = AlertLevel.NONE;
+    byte[] alertLevels = host.alertLevels;
+    for (int c=0; c<alertLevels.length; c++) {
+      if (alertLevels[c]>hostLevel) {
+        hostLevel = alertLevels[c];
+      }
+    }
+    return hostLevel;
+  }
+}
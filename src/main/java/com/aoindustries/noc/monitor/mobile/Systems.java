@@ -1,6 +1,6 @@
 /*
  * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
- * Copyright (C) 2009, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2009, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -32,19 +32,23 @@ import javax.microedition.lcdui.AlertType;
 import javax.microedition.lcdui.Choice;
 import javax.microedition.lcdui.ChoiceGroup;
 import javax.microedition.lcdui.Command;
+import javax.microedition.lcdui.CommandListener;
 import javax.microedition.lcdui.Display;
+import javax.microedition.lcdui.Displayable;
 import javax.microedition.lcdui.Form;
 import javax.microedition.lcdui.Image;
 import javax.microedition.lcdui.Item;
 import javax.microedition.lcdui.ItemCommandListener;
 import javax.microedition.lcdui.ItemStateListener;
 import javax.microedition.lcdui.StringItem;
+import javax.microedition.lcdui.Ticker;
 import javax.microedition.midlet.MIDlet;
 
 /**
- * Once every 5 minutes, downloads a snapshot of the entire systems state tree.
+ * Periodically downloads a snapshot of the entire systems state tree.
  * This includes only the node hierarchy, including names, alert levels, and alert messages.
- * This does not include the node details.  Node details are retrieved on demand.
+ * This does not include the node details.  Node details are retrieved on demand,
+ * through the {@link DetailCache} of the updater.
  *
  * All retrievals will be handled by a single background thread.  However, if that
  * thread times-out it will be stopped and a new thread will be created in its place.
@@ -52,27 +56,66 @@ import javax.microedition.midlet.MIDlet;
  * It will also display a status message of "retrieving" when downloading.  Has an
  * option to "Retrieve now".
  *
+ * A diagnostics screen shows where the time of the recent updates went, from
+ * the {@link Diagnostics} of the updater.
+ *
+ * When a node becomes critical, it buzzes and shows an alert listing the
+ * critical nodes.  The alert is removed once they have all recovered or gone
+ * away.
+ *
  * Possible improvements:
  *     Use record to remember last alert level filter
  *     Report warnings on all else conditions or unexpected conditions/states
  *
- * TODO: buzz when there is a new critical alert, remove alert if it does away
  * TODO: how to detect if on the phone?
  *
  * @author  AO Industries, Inc.
  */
-public class Systems extends MIDlet implements UpdaterListener, ItemStateListener, ItemCommandListener {
+public class Systems extends MIDlet implements UpdaterListener, ItemStateListener, ItemCommandListener, CommandListener, TreeCanvas.Listener {
 
   private static final boolean DEBUG = false;
 
+  /**
+   * Shows the tree on a {@link TreeCanvas} instead of the form.  The canvas
+   * only draws the rows that change and does not need paging.
+   */
+  private static final boolean USE_TREE_CANVAS = true;
+
+  /**
+   * The filter choices, by alert level.
+   */
+  private static final String[] FILTER_LABELS = {"All", "Low", "Medium", "High", "Critical"};
+
   private static final long TIME_FIELD_UPDATE_INTERVAL = 30000L;
 
+  /**
+   * The application property that limits the number of polls per hour, with
+   * <code>0</code> for no limit.
+   */
+  private static final String MAX_POLLS_PER_HOUR_PROPERTY = "NOC-Max-Polls-Per-Hour";
+
+  /**
+   * The maximum number of critical nodes listed by the critical alert.
+   */
+  private static final int MAX_CRITICAL_SHOWN = 5;
+
+  /**
+   * The maximum number of children shown at once.  Large lists are paged so
+   * the size of the tree is bounded.
+   */
+  private static final int PAGE_SIZE = 50;
+
   private Updater updater;
   private final Object updateLock = new Object();
 
   //private Form errorScreen;
 
   private transient boolean isPaused;
+
+  /**
+   * An error found before the display could be used, shown once started.
+   */
+  private Exception startupError;
   private Form form;
 
   private final Object updatedTimeFieldLock = new Object();
@@ -81,14 +124,79 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
 
   private ChoiceGroup filter;
   private ChoiceGroup tree;
-  private Vector treePaths = new Vector();
+  private TreeRows treeRows;
+  private TreeCanvas treeCanvas;
+  private String tickerText;
+  private final Command previousPageCommand = new Command("Previous Page", Command.SCREEN, 3);
+  private final Command nextPageCommand = new Command("Next Page", Command.SCREEN, 3);
+  private boolean hasPreviousPage;
+  private boolean hasNextPage;
+  private String treeLabel;
+
+  /**
+   * The index of the first visible child shown and the children on that page.
+   */
+  private int childPage;
+  private int[] pageChildren = new int[PAGE_SIZE];
   private StringItem alertMessage;
+
+  private final Command detailsCommand = new Command("Details", Command.SCREEN, 2);
+  private final Command diagnosticsCommand = new Command("Diagnostics", Command.SCREEN, 4);
+  private final Command refreshCommand = new Command("Refresh", Command.SCREEN, 1);
+  private final Command backCommand = new Command("Back", Command.BACK, 1);
+  private Form diagnosticsForm;
+  private StringItem percentilesField;
+  private StringItem recentField;
+
+  /**
+   * The details screen and the path of the node it is for.
+   */
+  private Form detailForm;
+  private String[] detailPath;
+
+  /**
+   * The transitions to critical of the nodes that are still critical, oldest
+   * first.  Also the lock for the critical alert.
+   */
+  private final Vector criticalTransitions = new Vector();
+  private Alert criticalAlert;
+
+  /**
+   * Receives the alert transitions.  Unlike the form updates, this remains
+   * registered while paused so new critical nodes still buzz in the background.
+   */
+  private final UpdaterListener transitionListener = new UpdaterListener() {
+    public void nodesUpdated(NodeSnapshot snapshot) {
+      // Only the transitions are used
+    }
+
+    public void alertTransitions(AlertTransition[] transitions) {
+      updateCriticalTransitions(transitions);
+    }
+
+    public void alert(Exception err) {
+      // Reported through the main listener while not paused
+    }
+  };
   private byte alertLevel = AlertLevel.LOW;
   private Vector path = new Vector();
 
   public Systems() {
     // TODO: No longer hard-code, prompt at start-up
     updater = new Updater(Authentication.USERNAME, Authentication.PASSWORD);
+    updater.addUpdaterListener(transitionListener);
+    String maxPollsPerHour = getAppProperty(MAX_POLLS_PER_HOUR_PROPERTY);
+    if (maxPollsPerHour == null) {
+      updater.setMaxPollsPerHour(PollScheduler.DEFAULT_MAX_POLLS_PER_HOUR);
+    } else {
+      try {
+        updater.setMaxPollsPerHour(Integer.parseInt(maxPollsPerHour.trim()));
+      } catch (IllegalArgumentException err) {
+        // Also catches NumberFormatException
+        updater.setMaxPollsPerHour(PollScheduler.DEFAULT_MAX_POLLS_PER_HOUR);
+        startupError = new IllegalArgumentException("Invalid "+MAX_POLLS_PER_HOUR_PROPERTY+": "+maxPollsPerHour);
+      }
+    }
   }
 
   protected void startApp() {
@@ -102,11 +210,9 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
 
         // Filter
         filter = new ChoiceGroup("Filter", Choice.POPUP);
-        filter.append("All", getDotAlertImage(AlertLevel.NONE));
-        filter.append("Low", getDotAlertImage(AlertLevel.LOW));
-        filter.append("Medium", getDotAlertImage(AlertLevel.MEDIUM));
-        filter.append("High", getDotAlertImage(AlertLevel.HIGH));
-        filter.append("Critical", getDotAlertImage(AlertLevel.CRITICAL));
+        for (byte level=AlertLevel.NONE; level <= AlertLevel.CRITICAL; level++) {
+          filter.append(FILTER_LABELS[level], getDotAlertImage(level));
+        }
         filter.setSelectedIndex(alertLevel, true);
         filter.setLayout(Item.LAYOUT_LEFT|Item.LAYOUT_SHRINK);
         newForm.append(filter);
@@ -117,19 +223,44 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
         updatedTimeField.addCommand(new Command("Update Now", Command.SCREEN, 2));
         updatedTimeField.setItemCommandListener(this);
         newForm.append(updatedTimeField);
+        newForm.addCommand(detailsCommand);
+        newForm.addCommand(diagnosticsCommand);
+        newForm.setCommandListener(this);
 
         tree = new ChoiceGroup(null, Choice.EXCLUSIVE);
         tree.setFitPolicy(Choice.TEXT_WRAP_OFF);
+        tree.setItemCommandListener(this);
 
         alertMessage = new StringItem(null, "");
 
         Display display = Display.getDisplay(this);
-        display.setCurrent(newForm);
+        if (USE_TREE_CANVAS) {
+          treeRows = new TreeRows(null);
+          TreeCanvas newCanvas = new TreeCanvas(this);
+          newCanvas.setTitle("Systems");
+          newCanvas.addCommand(new Command("Update Now", Command.SCREEN, 2));
+          for (int c=0; c<FILTER_LABELS.length; c++) {
+            newCanvas.addCommand(new Command(FILTER_LABELS[c], "Filter: "+FILTER_LABELS[c], Command.SCREEN, 3));
+          }
+          newCanvas.addCommand(detailsCommand);
+          newCanvas.addCommand(diagnosticsCommand);
+          newCanvas.setCommandListener(this);
+          display.setCurrent(newCanvas);
+          treeCanvas = newCanvas;
+        } else {
+          treeRows = new TreeRows(tree);
+          display.setCurrent(newForm);
+        }
         form = newForm;
       }
       updater.start();
       updater.addUpdaterListener(this);
       updateForm(updater.getNodeSnapshot());
+      if (startupError != null) {
+        Exception err = startupError;
+        startupError = null;
+        alert(err);
+      }
       synchronized (updatedTimeFieldLock) {
         if (updatedTimeFieldThread == null) {
           updatedTimeFieldThread = new Thread(
@@ -143,7 +274,15 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
                         break;
                       }
                     }
-                    updateTimeField(updater.getNodeSnapshot());
+                    // Only the event thread touches the form and canvas
+                    final NodeSnapshot snapshot = updater.getNodeSnapshot();
+                    Display.getDisplay(Systems.this).callSerially(
+                      new Runnable() {
+                        public void run() {
+                          updateTimeField(snapshot);
+                        }
+                      }
+                    );
                   } catch (Exception err) {
                     alert(err);
                   }
@@ -183,15 +322,143 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
 
   protected void destroyApp(boolean unconditional) {
     try {
+      updater.removeUpdaterListener(transitionListener);
       updater.stop();
     } catch (Exception err) {
       alert(err);
     }
   }
 
-  public void nodesUpdated(NodeSnapshot snapshot) {
+  public void nodesUpdated(final NodeSnapshot snapshot) {
+    try {
+      boolean sameTree;
+      synchronized (viewLock) {
+        sameTree = snapshot != null && lastTree == snapshot.getTree();
+      }
+      if (sameTree) {
+        // Not modified, only the time has changed
+        Display.getDisplay(this).callSerially(
+          new Runnable() {
+            public void run() {
+              updateTimeField(snapshot);
+            }
+          }
+        );
+      } else {
+        // The time to display a complete tree is added to the cycle that read it
+        updateForm(
+          snapshot,
+          snapshot != null && snapshot.isComplete()
+          ? updater.getDiagnostics().getLastCycle()
+          : Diagnostics.NO_CYCLE
+        );
+      }
+    } catch (Exception err) {
+      alert(err);
+    }
+  }
+
+  public void alertTransitions(AlertTransition[] transitions) {
+    // Received through transitionListener, even while paused
+  }
+
+  /**
+   * Tracks the nodes that are critical, buzzing when any are new.
+   */
+  private void updateCriticalTransitions(AlertTransition[] transitions) {
+    try {
+      boolean newCritical = false;
+      synchronized (criticalTransitions) {
+        for (int c=0; c<transitions.length; c++) {
+          AlertTransition transition = transitions[c];
+          byte type = transition.getType();
+          if (type == AlertTransition.CRITICAL) {
+            // Each path only once, replacing any earlier transition
+            String[] path = transition.getPath();
+            boolean found = false;
+            for (int i=criticalTransitions.size()-1; i >= 0; i--) {
+              AlertTransition critical = (AlertTransition)criticalTransitions.elementAt(i);
+              if (critical.getPath().length == path.length && critical.isWithin(path)) {
+                criticalTransitions.removeElementAt(i);
+                found = true;
+              }
+            }
+            criticalTransitions.addElement(transition);
+            if (!found) {
+              newCritical = true;
+            }
+          } else if (type == AlertTransition.RECOVERED || type == AlertTransition.DISAPPEARED) {
+            // A node that disappeared takes its descendants with it
+            String[] path = transition.getPath();
+            for (int i=criticalTransitions.size()-1; i >= 0; i--) {
+              AlertTransition critical = (AlertTransition)criticalTransitions.elementAt(i);
+              if (
+                critical.isWithin(path)
+                && (type == AlertTransition.DISAPPEARED || critical.getPath().length == path.length)
+              ) {
+                criticalTransitions.removeElementAt(i);
+              }
+            }
+          }
+        }
+      }
+      final boolean buzz = newCritical;
+      Display.getDisplay(this).callSerially(
+        new Runnable() {
+          public void run() {
+            updateCriticalAlert(buzz);
+          }
+        }
+      );
+    } catch (Exception err) {
+      alert(err);
+    }
+  }
+
+  /**
+   * Shows the critical nodes, buzzing when any are new, or removes the alert
+   * once none remain.  This must be called on the event thread.
+   */
+  private void updateCriticalAlert(boolean newCritical) {
     try {
-      updateForm(snapshot);
+      Display display = Display.getDisplay(this);
+      synchronized (criticalTransitions) {
+        int size = criticalTransitions.size();
+        if (size == 0) {
+          if (criticalAlert != null) {
+            if (display.getCurrent() == criticalAlert) {
+              display.setCurrent(getMainDisplayable());
+            }
+            criticalAlert = null;
+          }
+          return;
+        }
+        if (!newCritical && criticalAlert == null) {
+          return;
+        }
+        // Most recent first
+        StringBuffer text = new StringBuffer();
+        for (int c=size-1, end=Math.max(0, size-MAX_CRITICAL_SHOWN); c >= end; c--) {
+          text.append(((AlertTransition)criticalTransitions.elementAt(c)).getPathDisplay()).append('\n');
+        }
+        if (size>MAX_CRITICAL_SHOWN) {
+          text.append("and ").append(size-MAX_CRITICAL_SHOWN).append(" more");
+        }
+        if (criticalAlert == null) {
+          criticalAlert = new Alert("Critical", null, null, AlertType.ALARM);
+          criticalAlert.setTimeout(Alert.FOREVER);
+        }
+        criticalAlert.setString(text.toString());
+        if (newCritical) {
+          if (isPaused) {
+            resumeRequest();
+          }
+          vibrate(display);
+          if (display.getCurrent() != criticalAlert) {
+            display.setCurrent(criticalAlert, getMainDisplayable());
+          }
+        }
+      }
     } catch (Exception err) {
       alert(err);
     }
@@ -225,83 +492,223 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
     }
   }
 
-  private void updateForm(NodeSnapshot snapshot) throws IOException {
-    synchronized (updateLock) {
-      updateTimeField(snapshot);
+  /**
+   * The rows and messages to show for one snapshot.  This is built on a
+   * background thread then shown on the event thread.
+   */
+  private static class View {
+    private final NodeSnapshot snapshot;
+    private long cycle = Diagnostics.NO_CYCLE;
+    private String[] labels = new String[16];
+    private Image[] images = new Image[16];
+    private int size;
+    private int pathRows;
+    private int numVisible;
+    private int childPage;
+    private String alertMessage;
 
-      int formIndex = 2;
+    View(NodeSnapshot snapshot) {
+      this.snapshot = snapshot;
+    }
 
+    void add(String label, Image image) {
+      if (size == labels.length) {
+        String[] grownLabels = new String[size*2];
+        System.arraycopy(labels, 0, grownLabels, 0, size);
+        labels = grownLabels;
+        Image[] grownImages = new Image[size*2];
+        System.arraycopy(images, 0, grownImages, 0, size);
+        images = grownImages;
+      }
+      labels[size] = label;
+      images[size] = image;
+      size++;
+    }
+  }
+
+  private final Object viewLock = new Object();
+  private NodeSnapshot pendingSnapshot;
+  private long pendingCycle;
+  private boolean hasPendingSnapshot;
+  private boolean viewBuilding;
+  private View pendingView;
+  private boolean viewPosted;
+
+  /**
+   * The tree of the most recent snapshot given to {@link #updateForm(NodeSnapshot)}.
+   */
+  private NodeTree lastTree;
+
+  /**
+   * Updates the display for the given snapshot and the current path and
+   * filter.  The view is built on a background thread and shown on the event
+   * thread, so this returns quickly.  When updates arrive faster than they can
+   * be shown, only the most recent is shown.
+   */
+  private void updateForm(NodeSnapshot snapshot) {
+    updateForm(snapshot, Diagnostics.NO_CYCLE);
+  }
+
+  /**
+   * Updates the display, adding the time to build and show the view to the
+   * given cycle.
+   *
+   * @see  #updateForm(com.aoindustries.noc.monitor.mobile.NodeSnapshot)
+   */
+  private void updateForm(NodeSnapshot snapshot, long cycle) {
+    synchronized (viewLock) {
+      pendingSnapshot = snapshot;
+      pendingCycle = cycle;
+      hasPendingSnapshot = true;
+      lastTree = snapshot == null ? null : snapshot.getTree();
+      if (viewBuilding) {
+        return;
+      }
+      viewBuilding = true;
+    }
+    Thread viewThread = new Thread(
+      new Runnable() {
+        public void run() {
+          while (true) {
+            NodeSnapshot snapshot;
+            long cycle;
+            synchronized (viewLock) {
+              if (!hasPendingSnapshot) {
+                viewBuilding = false;
+                return;
+              }
+              snapshot = pendingSnapshot;
+              cycle = pendingCycle;
+              pendingSnapshot = null;
+              hasPendingSnapshot = false;
+            }
+            try {
+              long startTime = System.currentTimeMillis();
+              View view = buildView(snapshot);
+              view.cycle = cycle;
+              updater.getDiagnostics().addTime(cycle, Diagnostics.DISPLAY, System.currentTimeMillis() - startTime);
+              showView(view);
+            } catch (Exception err) {
+              alert(err);
+            }
+          }
+        }
+      }
+    );
+    viewThread.setPriority(Thread.NORM_PRIORITY-1);
+    viewThread.start();
+  }
+
+  /**
+   * Shows a view on the event thread, replacing any view not yet shown.
+   */
+  private void showView(View view) {
+    synchronized (viewLock) {
+      pendingView = view;
+      if (viewPosted) {
+        return;
+      }
+      viewPosted = true;
+    }
+    Display.getDisplay(this).callSerially(
+      new Runnable() {
+        public void run() {
+          View view;
+          synchronized (viewLock) {
+            view = pendingView;
+            pendingView = null;
+            viewPosted = false;
+          }
+          if (view != null) {
+            try {
+              long startTime = System.currentTimeMillis();
+              applyView(view);
+              updater.getDiagnostics().addTime(view.cycle, Diagnostics.DISPLAY, System.currentTimeMillis() - startTime);
+            } catch (Exception err) {
+              alert(err);
+            }
+          }
+        }
+      }
+    );
+  }
+
+  /**
+   * Shows a view.  This must be called on the event thread.
+   */
+  private void applyView(View view) {
+    if (DEBUG) {
+      System.out.println("Showing view with "+view.size+" rows");
+    }
+    updateTimeField(view.snapshot);
+    treeRows.begin();
+    for (int c=0; c<view.size; c++) {
+      treeRows.add(view.labels[c], view.images[c]);
+    }
+    treeRows.commit(view.pathRows);
+    if (USE_TREE_CANVAS) {
+      treeCanvas.setRows(treeRows);
+      setTicker(view.alertMessage);
+    } else if (view.snapshot == null) {
+      setPageCommands(0, 0);
+      // Remove all form items after the date field
+      while (form.size()>2) form.delete(form.size()-1);
+    } else {
+      updateFormItems(2, view.childPage, view.numVisible, view.pathRows, view.alertMessage);
+    }
+  }
+
+  /**
+   * Builds the view for a snapshot, adjusting the path to what remains in the
+   * snapshot.
+   */
+  private View buildView(NodeSnapshot snapshot) throws IOException {
+    View view = new View(snapshot);
+    synchronized (updateLock) {
       if (snapshot == null) {
-        // Remove all form items after the date field
         path.removeAllElements();
-        tree.deleteAll();
-        treePaths.removeAllElements();
-        while (form.size()>formIndex) form.delete(form.size()-1);
+        childPage = 0;
       } else {
-        int treeIndex = 0;
+        NodeTree nodes = snapshot.getTree();
         // Make sure the path is still valid, keep as much as possible
-        Vector currentChildren = new Vector(1);
-        Node currentNode = null;
-        String[] currentNodePath = null;
-        currentChildren.addElement(snapshot.getRootNode());
+        int currentNode = -1;
+        int numVisible = getVisibleChildCount(nodes, currentNode);
+        int pathRows = 0;
         for (int c=0; c<path.size(); c++) {
           if (DEBUG) {
-            System.out.println("currentChildren.size()="+currentChildren.size());
+            System.out.println("numVisible="+numVisible);
           }
           String pathLabel = (String)path.elementAt(c);
           // Look for matching child that is high enough alert level
-          Node foundChild = null;
-          for (int d=0, len2=currentChildren.size(); d<len2; d++) {
-            Node child = (Node)currentChildren.elementAt(d);
-            if (child.getLabel().equals(pathLabel)) {
-              foundChild = child;
-              break;
+          int foundChild;
+          if (currentNode == -1) {
+            foundChild = nodes.getLabel(0).equals(pathLabel) ? 0 : -1;
+          } else {
+            foundChild = nodes.getChild(currentNode, pathLabel);
+            if (foundChild != -1 && nodes.getAlertLevel(foundChild)<alertLevel) {
+              foundChild = -1;
             }
           }
-          if (foundChild != null) {
-            // Find the new children
-            Vector newChildren = foundChild.getChildren();
-            currentChildren.removeAllElements();
-            if (newChildren != null) {
-              int newLen = newChildren.size();
-              if (DEBUG) {
-                System.out.println("newChildren.size()="+newChildren.size());
-              }
-              currentChildren.ensureCapacity(newLen);
-              for (int d=0; d<newLen; d++) {
-                Node newChild = (Node)newChildren.elementAt(d);
-                if (DEBUG) {
-                  System.out.println("newChild="+newChild.getLabel()+" alertLevel="+newChild.getAlertLevel());
-                }
-                if (newChild.getAlertLevel() >= alertLevel) {
-                  currentChildren.addElement(newChild);
-                }
-              }
-            }
-            // Build the new path
-            String[] newPath = new String[treeIndex+1];
-            for (int d=0; d <= treeIndex; d++) newPath[d] = (String)path.elementAt(d);
+          if (foundChild != -1) {
+            // Count the new children
+            numVisible = getVisibleChildCount(nodes, foundChild);
             // Add to the tree
-            String label = foundChild.getLabel();
-            Image alertImage = getAlertImage(
-              foundChild.getAlertLevel(),
-              foundChild.getAllowsChildren(),
-              currentChildren.size()>1
+            view.add(
+              nodes.getLabel(foundChild),
+              getAlertImage(
+                nodes.getAlertLevel(foundChild),
+                nodes.getAllowsChildren(foundChild),
+                numVisible>1
+              )
             );
             currentNode = foundChild;
-            currentNodePath = newPath;
-            if (tree.size() <= treeIndex) {
-              tree.append(label, alertImage);
-              treePaths.addElement(newPath);
-            } else {
-              if (!tree.getString(treeIndex).equals(label) || alertImage != tree.getImage(treeIndex)) {
-                tree.set(treeIndex, label, alertImage);
-              }
-              treePaths.setElementAt(newPath, treeIndex);
-            }
-            treeIndex++;
+            pathRows++;
+          } else if (!snapshot.isComplete()) {
+            // Not yet read, keep the rest of path
+            break;
           } else {
             // Delete rest of path
+            childPage = 0;
             while (path.size()>c) {
               if (DEBUG) {
                 System.out.println("Removing not longer found path element of "+path.elementAt(path.size()-1));
@@ -313,156 +720,210 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
         }
 
         // Auto-select the first path element
-        if (path.isEmpty() && currentChildren.size() == 1) {
-          currentNode = (Node)currentChildren.elementAt(0);
-          // Find the new children
-          Vector newChildren = currentNode.getChildren();
-          currentChildren.removeAllElements();
-          if (newChildren != null) {
-            int newLen = newChildren.size();
-            if (DEBUG) {
-              System.out.println("newChildren.size()="+newChildren.size());
-            }
-            currentChildren.ensureCapacity(newLen);
-            for (int d=0; d<newLen; d++) {
-              Node newChild = (Node)newChildren.elementAt(d);
-              if (DEBUG) {
-                System.out.println("newChild="+newChild.getLabel()+" alertLevel="+newChild.getAlertLevel());
-              }
-              if (newChild.getAlertLevel() >= alertLevel) {
-                currentChildren.addElement(newChild);
-              }
-            }
-          }
-          // Build the new path
-          currentNodePath = new String[] {currentNode.getLabel()};
+        if (path.isEmpty() && numVisible == 1) {
+          getVisibleChildren(nodes, currentNode, 0, pageChildren);
+          currentNode = pageChildren[0];
+          // Count the new children
+          numVisible = getVisibleChildCount(nodes, currentNode);
           // Add to the tree
-          String label = currentNode.getLabel();
-          Image alertImage = getAlertImage(
-            currentNode.getAlertLevel(),
-            currentNode.getAllowsChildren(),
-            currentChildren.size()>1
+          view.add(
+            nodes.getLabel(currentNode),
+            getAlertImage(
+              nodes.getAlertLevel(currentNode),
+              nodes.getAllowsChildren(currentNode),
+              numVisible>1
+            )
           );
-          if (tree.size() <= treeIndex) {
-            tree.append(label, alertImage);
-            treePaths.addElement(currentNodePath);
-          } else {
-            if (!tree.getString(treeIndex).equals(label) || alertImage != tree.getImage(treeIndex)) {
-              tree.set(treeIndex, label, alertImage);
-            }
-            treePaths.setElementAt(currentNodePath, treeIndex);
-          }
-          treeIndex++;
+          pathRows++;
         }
 
-        // Children
+        // One page of children
         if (DEBUG) {
-          System.out.println("currentChildren.size()="+currentChildren.size());
-        }
-        int len = currentChildren.size();
-        // Temporarily stores children's children
-        Vector currentNewChildren = new Vector();
-        for (int c=0; c<len; c++) {
-          Node child = (Node)currentChildren.elementAt(c);
-          // Find the new children
-          Vector newChildren = child.getChildren();
-          currentNewChildren.removeAllElements();
-          if (newChildren != null) {
-            int newLen = newChildren.size();
-            if (DEBUG) {
-              System.out.println("newChildren.size()="+newChildren.size());
-            }
-            currentNewChildren.ensureCapacity(newLen);
-            for (int d=0; d<newLen; d++) {
-              Node newChild = (Node)newChildren.elementAt(d);
-              if (DEBUG) {
-                System.out.println("newChild="+newChild.getLabel()+" alertLevel="+newChild.getAlertLevel());
-              }
-              if (newChild.getAlertLevel() >= alertLevel) {
-                currentNewChildren.addElement(newChild);
-              }
-            }
-          }
-          // Build the new path
-          String label = child.getLabel();
-          String[] newPath;
-          if (currentNodePath == null) {
-            newPath = new String[1];
-            newPath[0] = label;
-          } else {
-            int cnpLen = currentNodePath.length;
-            newPath = new String[cnpLen+1];
-            System.arraycopy(currentNodePath, 0, newPath, 0, cnpLen);
-            newPath[cnpLen] = label;
-          }
-          // Add to the tree
-          Image alertImage = getAlertImage(
-            child.getAlertLevel(),
-            child.getAllowsChildren(),
-            !currentNewChildren.isEmpty()
-          );
-          if (tree.size() <= treeIndex) {
-            if (DEBUG) {
-              System.out.println("Adding child: "+label);
-            }
-            tree.append(label, alertImage);
-            treePaths.addElement(newPath);
-          } else {
-            if (!tree.getString(treeIndex).equals(label) || alertImage != tree.getImage(treeIndex)) {
-              tree.set(treeIndex, label, alertImage);
-            }
-            treePaths.setElementAt(newPath, treeIndex);
-          }
-          treeIndex++;
+          System.out.println("numVisible="+numVisible);
         }
-        while (tree.size()>treeIndex) {
-          int removeIndex = tree.size()-1;
-          if (DEBUG) {
-            System.out.println("Deleting extra tree: "+tree.getString(removeIndex));
-          }
-          tree.delete(removeIndex);
-          treePaths.removeElementAt(removeIndex);
+        if (childPage >= numVisible) {
+          childPage = numVisible == 0 ? 0 : ((numVisible-1) / PAGE_SIZE) * PAGE_SIZE;
         }
-        if (treeIndex == 0) {
-          if (form.size()>formIndex && form.get(formIndex) == tree) {
-            form.delete(formIndex);
-          }
-        } else {
-          tree.setSelectedIndex(currentNodePath.length-1, true);
-          if (form.size() <= formIndex || form.get(formIndex) != tree) {
-            form.insert(formIndex, tree);
-          }
-          formIndex++;
+        if (USE_TREE_CANVAS && pageChildren.length<numVisible) {
+          // The canvas shows all children
+          pageChildren = new int[numVisible];
+        }
+        int pageSize = getVisibleChildren(nodes, currentNode, childPage, pageChildren);
+        for (int c=0; c<pageSize; c++) {
+          int child = pageChildren[c];
+          view.add(
+            nodes.getLabel(child),
+            getAlertImage(
+              nodes.getAlertLevel(child),
+              nodes.getAllowsChildren(child),
+              nodes.getChildCount(child)>0 && nodes.getMaxChildAlertLevel(child) >= alertLevel
+            )
+          );
         }
+        view.pathRows = pathRows;
+        view.numVisible = numVisible;
+        view.childPage = childPage;
+        view.alertMessage = currentNode == -1 ? null : nodes.getAlertMessage(currentNode);
 
-        // Alert message
-        String newAlertMessage = currentNode == null ? null : currentNode.getAlertMessage();
-        if (newAlertMessage == null) {
-          if (form.size()>formIndex && form.get(formIndex) == alertMessage) {
-            form.delete(formIndex);
-          }
+        // Could add node-type-specific details ?retrieved on demand?
+      }
+    }
+    return view;
+  }
+
+  /**
+   * Shows the tree and alert message on the form, after the date field.
+   */
+  private void updateFormItems(int formIndex, int page, int numVisible, int pathRows, String newAlertMessage) {
+    setPageCommands(page, numVisible);
+    if (treeRows.size() == 0) {
+      if (form.size()>formIndex && form.get(formIndex) == tree) {
+        form.delete(formIndex);
+      }
+    } else {
+      if (pathRows>0 && tree.getSelectedIndex() != pathRows-1) {
+        tree.setSelectedIndex(pathRows-1, true);
+      }
+      if (form.size() <= formIndex || form.get(formIndex) != tree) {
+        form.insert(formIndex, tree);
+      }
+      formIndex++;
+    }
+
+    // Alert message
+    if (newAlertMessage == null) {
+      if (form.size()>formIndex && form.get(formIndex) == alertMessage) {
+        form.delete(formIndex);
+      }
+    } else {
+      if (!newAlertMessage.equals(alertMessage.getText())) {
+        alertMessage.setText(newAlertMessage);
+      }
+      if (form.size() <= formIndex || form.get(formIndex) != alertMessage) {
+        form.insert(formIndex, alertMessage);
+      }
+    }
+  }
+
+  /**
+   * Shows the alert message of the current node as the ticker of the canvas.
+   */
+  private void setTicker(String text) {
+    if (text == null ? tickerText != null : !text.equals(tickerText)) {
+      treeCanvas.setTicker(text == null ? null : new Ticker(text));
+      tickerText = text;
+    }
+  }
+
+  /**
+   * Counts the children of a node that are at least the current alert level.
+   * The root is the only child of node <code>-1</code>.
+   */
+  private int getVisibleChildCount(NodeTree nodes, int node) {
+    if (node == -1) {
+      return 1;
+    }
+    int len = nodes.getChildCount(node);
+    if (DEBUG) {
+      System.out.println("childCount="+len);
+    }
+    if (len == 0 || nodes.getMaxChildAlertLevel(node)<alertLevel) {
+      return 0;
+    }
+    int numVisible = 0;
+    int first = nodes.getFirstChild(node);
+    for (int c=first, end=first+len; c<end; c++) {
+      if (nodes.getAlertLevel(c) >= alertLevel) {
+        numVisible++;
+      }
+    }
+    return numVisible;
+  }
+
+  /**
+   * Gets the children of a node that are at least the current alert level,
+   * skipping the given number of visible children and filling at most the
+   * length of the provided array.
+   *
+   * @return  the number of children filled
+   */
+  private int getVisibleChildren(NodeTree nodes, int node, int skip, int[] children) {
+    if (node == -1) {
+      if (skip == 0) {
+        children[0] = 0;
+        return 1;
+      }
+      return 0;
+    }
+    int len = nodes.getChildCount(node);
+    if (len == 0 || nodes.getMaxChildAlertLevel(node)<alertLevel) {
+      return 0;
+    }
+    int numFilled = 0;
+    int first = nodes.getFirstChild(node);
+    for (int c=first, end=first+len; c<end && numFilled<children.length; c++) {
+      if (DEBUG) {
+        System.out.println("child="+nodes.getLabel(c)+" alertLevel="+nodes.getAlertLevel(c));
+      }
+      if (nodes.getAlertLevel(c) >= alertLevel) {
+        if (skip>0) {
+          skip--;
         } else {
-          alertMessage.setText(newAlertMessage);
-          if (form.size() <= formIndex || form.get(formIndex) != alertMessage) {
-            form.insert(formIndex, alertMessage);
-          }
-          formIndex++;
+          children[numFilled++] = c;
         }
+      }
+    }
+    return numFilled;
+  }
 
-        // Could add node-type-specific details ?retrieved on demand?
+  /**
+   * Shows the paging commands and the range of children shown, only when the
+   * visible children do not fit on one page.
+   */
+  private void setPageCommands(int page, int numVisible) {
+    boolean newHasPrevious = page>0;
+    if (newHasPrevious != hasPreviousPage) {
+      if (newHasPrevious) {
+        tree.addCommand(previousPageCommand);
+      } else {
+        tree.removeCommand(previousPageCommand);
       }
+      hasPreviousPage = newHasPrevious;
+    }
+    boolean newHasNext = page+PAGE_SIZE<numVisible;
+    if (newHasNext != hasNextPage) {
+      if (newHasNext) {
+        tree.addCommand(nextPageCommand);
+      } else {
+        tree.removeCommand(nextPageCommand);
+      }
+      hasNextPage = newHasNext;
+    }
+    String newLabel;
+    if (newHasPrevious || newHasNext) {
+      newLabel = (page+1)+"-"+Math.min(page+PAGE_SIZE, numVisible)+" of "+numVisible;
+    } else {
+      newLabel = null;
+    }
+    if (newLabel == null ? treeLabel != null : !newLabel.equals(treeLabel)) {
+      tree.setLabel(newLabel);
+      treeLabel = newLabel;
     }
   }
 
   private final StringBuffer updateTimeFieldSB = new StringBuffer();
 
   /**
-   * Updates the time field for the current time since.
+   * Updates the time field for the current time since.  This must be called
+   * on the event thread.
    */
   private void updateTimeField(NodeSnapshot snapshot) {
     synchronized (updatedTimeFieldLock) {
       if (snapshot == null) {
         updatedTimeField.setText("");
+        if (USE_TREE_CANVAS) {
+          treeCanvas.setTitle("Systems");
+        }
       } else {
         updateTimeFieldSB.setLength(0);
         long time = snapshot.getTime();
@@ -476,7 +937,11 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
         } else {
           updateTimeFieldSB.append(" (").append(minutes).append(" minutes ago)");
         }
-        updatedTimeField.setText(updateTimeFieldSB.toString());
+        String text = updateTimeFieldSB.toString();
+        updatedTimeField.setText(text);
+        if (USE_TREE_CANVAS) {
+          treeCanvas.setTitle(text);
+        }
       }
     }
   }
@@ -487,6 +952,188 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
         if ("Update Now".equals(c.getLabel())) {
           updater.updateNow();
         }
+      } else if (item == tree) {
+        synchronized (updateLock) {
+          if (c == nextPageCommand) {
+            childPage += PAGE_SIZE;
+          } else if (c == previousPageCommand) {
+            childPage = Math.max(0, childPage-PAGE_SIZE);
+          }
+          updateForm(updater.getNodeSnapshot());
+        }
+      }
+    } catch (Exception err) {
+      alert(err);
+    }
+  }
+
+  /**
+   * Shows the diagnostics screen with the current statistics.
+   */
+  private void showDiagnostics() {
+    if (diagnosticsForm == null) {
+      Form newForm = new Form("Diagnostics");
+      percentilesField = new StringItem("Percentiles", "");
+      recentField = new StringItem("Recent", "");
+      newForm.append(percentilesField);
+      newForm.append(recentField);
+      newForm.addCommand(refreshCommand);
+      newForm.addCommand(backCommand);
+      newForm.setCommandListener(this);
+      diagnosticsForm = newForm;
+    }
+    Diagnostics diagnostics = updater.getDiagnostics();
+    percentilesField.setText(diagnostics.getPercentiles());
+    recentField.setText(diagnostics.getRecentCycles());
+    Display display = Display.getDisplay(this);
+    if (display.getCurrent() != diagnosticsForm) {
+      display.setCurrent(diagnosticsForm);
+    }
+  }
+
+  /**
+   * Shows the details of the selected node, immediately when cached or
+   * otherwise once retrieved.
+   */
+  private void showDetails() {
+    final String[] newPath;
+    synchronized (updateLock) {
+      newPath = new String[path.size()];
+      path.copyInto(newPath);
+    }
+    if (newPath.length == 0) {
+      return;
+    }
+    final DetailCache detailCache = updater.getDetailCache();
+    NodeDetail cached = detailCache.getIfCached(newPath);
+    showDetailForm(newPath, cached);
+    if (cached == null) {
+      new Thread(
+        new Runnable() {
+          public void run() {
+            try {
+              final NodeDetail detail = detailCache.get(newPath);
+              Display.getDisplay(Systems.this).callSerially(
+                new Runnable() {
+                  public void run() {
+                    // Only when still showing the same node
+                    if (detailPath == newPath && Display.getDisplay(Systems.this).getCurrent() == detailForm) {
+                      showDetailForm(newPath, detail);
+                    }
+                  }
+                }
+              );
+            } catch (Exception err) {
+              alert(err);
+            }
+          }
+        }
+      ).start();
+    }
+  }
+
+  /**
+   * Shows the details screen.  This must be called on the event thread.
+   *
+   * @param  detail  the details or <code>null</code> while being retrieved
+   */
+  private void showDetailForm(String[] newPath, NodeDetail detail) {
+    Form newForm = new Form(newPath[newPath.length-1]);
+    if (detail == null) {
+      newForm.append(new StringItem(null, detailPath == newPath ? "Not found" : "Retrieving..."));
+    } else {
+      StringBuffer sb = new StringBuffer();
+      long lastCheckTime = detail.getLastCheckTime();
+      if (lastCheckTime != NodeDetail.NO_CHECK_TIME) {
+        formatTime(lastCheckTime, sb);
+        newForm.append(new StringItem("Last Check", sb.toString()));
+      }
+      // The first column labels each row
+      int numColumns = detail.getColumnCount();
+      for (int row=0, numRows=detail.getRowCount(); row<numRows; row++) {
+        sb.setLength(0);
+        for (int column=1; column<numColumns; column++) {
+          String value = detail.getValue(row, column);
+          if (value != null) {
+            if (sb.length()>0) {
+              sb.append('\n');
+            }
+            if (numColumns>2) {
+              sb.append(detail.getColumn(column)).append(": ");
+            }
+            sb.append(value);
+          }
+        }
+        newForm.append(new StringItem(detail.getValue(row, 0), sb.toString()));
+      }
+      // Most recent first
+      sb.setLength(0);
+      for (int entry=detail.getHistorySize()-1; entry >= 0; entry--) {
+        formatTime(detail.getHistoryTime(entry), sb);
+        sb.append(' ').append(AlertLevel.getDisplay(detail.getHistoryAlertLevel(entry)));
+        String message = detail.getHistoryMessage(entry);
+        if (message != null) {
+          sb.append(": ").append(message);
+        }
+        sb.append('\n');
+      }
+      if (sb.length()>0) {
+        newForm.append(new StringItem("History", sb.toString()));
+      }
+    }
+    newForm.addCommand(backCommand);
+    newForm.setCommandListener(this);
+    detailForm = newForm;
+    detailPath = newPath;
+    Display.getDisplay(this).setCurrent(newForm);
+  }
+
+  public void commandAction(Command c, Displayable d) {
+    try {
+      if (c == detailsCommand) {
+        showDetails();
+      } else if (c == diagnosticsCommand) {
+        showDiagnostics();
+      } else if (d == detailForm) {
+        if (c == backCommand) {
+          detailForm = null;
+          detailPath = null;
+          Display.getDisplay(this).setCurrent(getMainDisplayable());
+        }
+      } else if (d == diagnosticsForm) {
+        if (c == refreshCommand) {
+          showDiagnostics();
+        } else if (c == backCommand) {
+          Display.getDisplay(this).setCurrent(getMainDisplayable());
+        }
+      } else if (d == treeCanvas) {
+        String label = c.getLabel();
+        if ("Update Now".equals(label)) {
+          updater.updateNow();
+        } else {
+          for (int level=0; level<FILTER_LABELS.length; level++) {
+            if (FILTER_LABELS[level].equals(label)) {
+              filter.setSelectedIndex(level, true);
+              setAlertLevel((byte)level);
+              break;
+            }
+          }
+        }
+      }
+    } catch (Exception err) {
+      alert(err);
+    }
+  }
+
+  public void rowSelected(String[] newPath) {
+    try {
+      synchronized (updateLock) {
+        if (newPath.length != path.size()) {
+          childPage = 0;
+        }
+        path.removeAllElements();
+        for (int c=0, len=newPath.length; c<len; c++) path.addElement(newPath[c]);
+        updateForm(updater.getNodeSnapshot());
       }
     } catch (Exception err) {
       alert(err);
@@ -500,6 +1147,7 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
           System.out.println("Setting alertLevel to "+AlertLevel.getDisplay(alertLevel));
         }
         this.alertLevel = alertLevel;
+        childPage = 0;
         updateForm(updater.getNodeSnapshot());
       }
     }
@@ -511,10 +1159,13 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
         if (DEBUG) {
           System.out.println("tree changed");
         }
-        String[] newPath = (String[])treePaths.elementAt(tree.getSelectedIndex());
-        path.removeAllElements();
-        for (int c=0, len=newPath.length; c<len; c++) path.addElement(newPath[c]);
         synchronized (updateLock) {
+          String[] newPath = treeRows.getPath(tree.getSelectedIndex());
+          if (newPath.length != path.size()) {
+            childPage = 0;
+          }
+          path.removeAllElements();
+          for (int c=0, len=newPath.length; c<len; c++) path.addElement(newPath[c]);
           updateForm(updater.getNodeSnapshot());
         }
       } else if (item == filter) {
@@ -619,12 +1270,19 @@ public class Systems extends MIDlet implements UpdaterListener, ItemStateListene
       vibrate(display);
       Alert alert = new Alert("Exception", err.toString(), null, AlertType.ERROR);
       alert.setTimeout(Alert.FOREVER);
-      display.setCurrent(alert, form);
+      display.setCurrent(alert, getMainDisplayable());
     } catch (Exception err2) {
       err2.printStackTrace();
     }
   }
 
+  /**
+   * Gets the screen showing the tree.
+   */
+  private Displayable getMainDisplayable() {
+    return USE_TREE_CANVAS ? (Displayable)treeCanvas : form;
+  }
+
   /**
    * Vibrates if it is not currently Dan's school hours.
    */
@@ -0,0 +1,215 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreNotFoundException;
+
+/**
+ * Measures building, writing and reading node trees, along with the record
+ * round trip, on a {@link SyntheticTree}.  Each operation is repeated for at
+ * least {@link #MIN_DURATION} milliseconds and reports its operations per
+ * second, bytes per node and bytes allocated per snapshot.
+ * <p>
+ * The trees are generated from a fixed seed, so results are comparable across
+ * builds as long as {@link #VERSION} is the same.
+ * </p>
+ *
+ * @see  Benchmark
+ *
+ * @author  AO Industries, Inc.
+ */
+final class TreeBenchmark {
+
+  /** Make no instances. */
+  private TreeBenchmark() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Changed whenever the operations or trees change, so results of different
+   * versions are not compared.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The number of hosts in each of the three data centers, for trees of about
+   * 1k, 10k and 100k nodes.
+   */
+  static final int[] HOSTS = {21, 208, 2083};
+
+  private static final long MIN_DURATION = 2L * 1000;
+
+  /**
+   * The record store used for the round trip, separate from the snapshot
+   * stored by the {@link Updater}.
+   */
+  private static final String RECORD_NAME = "TreeBenchmark";
+
+  /**
+   * One operation being measured.
+   */
+  private interface Operation {
+
+    /**
+     * @return  the number of bytes written or read, or <code>0</code> for none
+     */
+    int run() throws Exception;
+  }
+
+  /**
+   * Runs all the operations on a tree.
+   *
+   * @param  hosts  the number of hosts in each of three data centers, with
+   *                sixteen nodes per host
+   *
+   * @return  the report, one line per operation
+   */
+  static String run(int hosts) throws Exception {
+    final SyntheticTree synthetic = new SyntheticTree(1, 3, hosts, 15);
+    final Node root = synthetic.toNode();
+    final FlatNodeTree tree = FlatNodeTree.valueOf(root);
+    final int size = tree.getSize();
+    final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bout);
+    StringBuffer report = new StringBuffer();
+    report.append(size).append(" nodes\n");
+
+    measure(report, "build nodes", size, new Operation() {
+      public int run() {
+        synthetic.toNode();
+        return 0;
+      }
+    });
+
+    measure(report, "legacy write", size, new Operation() {
+      public int run() throws Exception {
+        bout.reset();
+        NodeSnapshot.writeNodeTree(out, root);
+        out.flush();
+        return bout.size();
+      }
+    });
+    final byte[] legacy = bout.toByteArray();
+    measure(report, "legacy read", size, new Operation() {
+      public int run() throws Exception {
+        SnapshotInput in = SnapshotInput.getInstance(new ByteArrayInputStream(legacy));
+        try {
+          FlatNodeTree.Builder builder = new FlatNodeTree.Builder();
+          NodeTreeReader.read(in, builder);
+          builder.build();
+        } finally {
+          in.close();
+        }
+        return legacy.length;
+      }
+    });
+
+    measure(report, "compact write", size, new Operation() {
+      public int run() throws Exception {
+        bout.reset();
+        CompactNodeTree.write(out, tree);
+        out.flush();
+        return bout.size();
+      }
+    });
+    final byte[] compact = bout.toByteArray();
+    measure(report, "compact read", size, new Operation() {
+      public int run() throws Exception {
+        SnapshotInput in = SnapshotInput.getInstance(new ByteArrayInputStream(compact));
+        try {
+          CompactNodeTree.readTree(in);
+        } finally {
+          in.close();
+        }
+        return compact.length;
+      }
+    });
+
+    final NodeSnapshot snapshot = new NodeSnapshot(tree, synthetic.getVersion(), 0);
+    try {
+      measure(report, "record round trip", size, new Operation() {
+        public int run() throws Exception {
+          byte[] bytes = NodeSnapshot.toRecordBytes(snapshot);
+          NodeSnapshot.writeRecords(RECORD_NAME, bytes);
+          bytes = NodeSnapshot.readRecords(RECORD_NAME);
+          // Decode every node, as when the whole tree is shown
+          RecordNodeTree recordTree = new RecordNodeTree(bytes, NodeSnapshot.RECORD_TREE_OFFSET);
+          for (int node=0, len=recordTree.getSize(); node<len; node++) recordTree.getLabel(node);
+          return bytes.length;
+        }
+      });
+    } finally {
+      try {
+        RecordStore.deleteRecordStore(RECORD_NAME);
+      } catch (RecordStoreNotFoundException err) {
+        // Not created
+      }
+    }
+    return report.toString();
+  }
+
+  /**
+   * Runs the operation once to warm up, once to measure allocation, then
+   * repeatedly for at least {@link #MIN_DURATION}.
+   */
+  private static void measure(StringBuffer report, String name, int size, Operation operation) throws Exception {
+    int bytes = operation.run();
+    Runtime runtime = Runtime.getRuntime();
+    runtime.gc();
+    long free = runtime.freeMemory();
+    operation.run();
+    // Negative when collected during the run
+    long allocated = free - runtime.freeMemory();
+    int iterations = 0;
+    long start = System.currentTimeMillis();
+    long elapsed;
+    do {
+      operation.run();
+      iterations++;
+      elapsed = System.currentTimeMillis() - start;
+    } while (elapsed < MIN_DURATION);
+    report.append(name).append(": ");
+    appendTenths(report, iterations * 10000L / elapsed).append(" ops/s");
+    if (bytes > 0) {
+      report.append(", ");
+      appendTenths(report, bytes * 10L / size).append(" bytes/node");
+    }
+    report.append(", ");
+    if (allocated >= 0) {
+      report.append(allocated / 1024).append(" KiB allocated");
+    } else {
+      report.append("allocation unknown");
+    }
+    report.append('\n');
+  }
+
+  private static StringBuffer appendTenths(StringBuffer report, long tenths) {
+    return report.append(tenths / 10).append('.').append(tenths % 10);
+  }
+}
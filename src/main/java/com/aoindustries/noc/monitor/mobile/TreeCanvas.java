@@ -0,0 +1,436 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.util.Hashtable;
+import javax.microedition.lcdui.Font;
+import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.Image;
+import javax.microedition.lcdui.game.GameCanvas;
+
+/**
+ * Shows the rows of the tree on a canvas, as an alternative to the form.
+ * <p>
+ * What is drawn in each on-screen row is remembered, and only the rows that
+ * have changed are drawn and flushed.  A label with its icon is drawn once to
+ * a bitmap, which is then copied each time the row is shown.  When scrolling,
+ * the screen is shifted and only the rows scrolled into view are drawn.  Only
+ * the rows that fit on the screen are drawn, no matter how many rows there
+ * are.
+ * </p>
+ * <p>
+ * Up and down move the cursor, fire or right selects the row under the cursor,
+ * and left selects the parent of the current node.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+class TreeCanvas extends GameCanvas {
+
+  private static final boolean DEBUG = false;
+
+  /**
+   * Notified when a row is selected.
+   */
+  interface Listener {
+    /**
+     * Called on the event thread with the path of labels to the selected node.
+     */
+    void rowSelected(String[] path);
+  }
+
+  private static final int BACKGROUND = 0xffffff;
+  private static final int FOREGROUND = 0x000000;
+  private static final int CURSOR_BACKGROUND = 0x000080;
+  private static final int CURSOR_FOREGROUND = 0xffffff;
+
+  /**
+   * The indentation per level of the path, in pixels.
+   */
+  private static final int INDENT = 6;
+
+  /**
+   * The space around the icon, in pixels.
+   */
+  private static final int PADDING = 2;
+
+  /**
+   * The bitmaps are discarded when more than this many are cached.
+   */
+  private static final int MAX_BITMAPS = 64;
+
+  private final Listener listener;
+  private final Font font = Font.getDefaultFont();
+
+  // The rows, copied from the TreeRows
+  private String[] labels = new String[0];
+  private Image[] images = new Image[0];
+  private int size;
+  private int pathRows;
+
+  private int cursor;
+  private int top;
+
+  // What is currently drawn in each on-screen row
+  private Graphics graphics;
+  private int width;
+  private int height;
+  private int rowHeight;
+  private int drawnTop;
+  private String[] slotLabels;
+  private Image[] slotImages;
+  private int[] slotDepths;
+  private boolean[] slotCursors;
+
+  /**
+   * The bitmaps of drawn rows, by label.
+   */
+  private final Hashtable bitmaps = new Hashtable();
+
+  private static class RowBitmap {
+    private final Image icon;
+    private final Image bitmap;
+
+    RowBitmap(Image icon, Image bitmap) {
+      this.icon = icon;
+      this.bitmap = bitmap;
+    }
+  }
+
+  TreeCanvas(Listener listener) {
+    super(false);
+    this.listener = listener;
+  }
+
+  /**
+   * Shows the current rows.  The cursor stays on the same row when it is still
+   * present, otherwise it moves to the current node.
+   */
+  synchronized void setRows(TreeRows rows) {
+    String cursorLabel = cursor<size ? labels[cursor] : null;
+    int cursorDepth = getDepth(cursor, pathRows);
+    int newSize = rows.size();
+    int newPathRows = rows.getPathRows();
+    if (labels.length<newSize) {
+      labels = new String[newSize];
+      images = new Image[newSize];
+    }
+    for (int c=0; c<newSize; c++) {
+      labels[c] = rows.getLabel(c);
+      images[c] = rows.getImage(c);
+    }
+    for (int c=newSize; c<size; c++) {
+      labels[c] = null;
+      images[c] = null;
+    }
+    size = newSize;
+    pathRows = newPathRows;
+    cursor = -1;
+    if (cursorLabel != null) {
+      for (int c=0; c<size; c++) {
+        if (getDepth(c, pathRows) == cursorDepth && labels[c].equals(cursorLabel)) {
+          cursor = c;
+          break;
+        }
+      }
+    }
+    if (cursor == -1) {
+      cursor = pathRows>0 ? pathRows-1 : 0;
+    }
+    showCursor();
+    draw();
+  }
+
+  private static int getDepth(int row, int pathRows) {
+    return row<pathRows ? row : pathRows;
+  }
+
+  /**
+   * Scrolls so the cursor is on the screen.
+   */
+  private void showCursor() {
+    int visibleRows = getVisibleRows();
+    if (cursor<top) {
+      top = cursor;
+    } else if (visibleRows>0 && cursor >= top+visibleRows) {
+      top = cursor-visibleRows+1;
+    }
+    if (top>0 && top+visibleRows>size) {
+      top = Math.max(0, size-visibleRows);
+    }
+  }
+
+  private int getVisibleRows() {
+    if (rowHeight == 0) {
+      return 0;
+    }
+    return height / rowHeight;
+  }
+
+  /**
+   * Prepares the off-screen graphics and forgets what has been drawn when the
+   * size changes.
+   */
+  private boolean prepare() {
+    int newWidth = getWidth();
+    int newHeight = getHeight();
+    int iconHeight = 0;
+    for (int c=top, end=Math.min(size, top+8); c<end; c++) {
+      if (images[c] != null) {
+        iconHeight = Math.max(iconHeight, images[c].getHeight());
+      }
+    }
+    int newRowHeight = Math.max(font.getHeight(), iconHeight) + PADDING;
+    if (graphics == null || newWidth != width || newHeight != height || newRowHeight>rowHeight) {
+      graphics = getGraphics();
+      width = newWidth;
+      height = newHeight;
+      rowHeight = Math.max(rowHeight, newRowHeight);
+      int numSlots = (height + rowHeight - 1) / rowHeight;
+      slotLabels = new String[numSlots];
+      slotImages = new Image[numSlots];
+      slotDepths = new int[numSlots];
+      slotCursors = new boolean[numSlots];
+      bitmaps.clear();
+      graphics.setColor(BACKGROUND);
+      graphics.fillRect(0, 0, width, height);
+      graphics.setFont(font);
+      showCursor();
+      drawnTop = top;
+      flushGraphics();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Draws the rows that have changed and flushes the changed area.
+   */
+  private void draw() {
+    if (!isShown()) {
+      return;
+    }
+    boolean scrolled = !prepare() && top != drawnTop && scroll(top-drawnTop);
+    drawnTop = top;
+    int dirtyStart = -1;
+    int numDrawn = 0;
+    for (int slot=0, numSlots=slotLabels.length; slot <= numSlots; slot++) {
+      boolean changed;
+      if (slot == numSlots) {
+        changed = false;
+      } else {
+        int row = top + slot;
+        if (row<size) {
+          String label = labels[row];
+          Image image = images[row];
+          int depth = getDepth(row, pathRows);
+          boolean isCursor = row == cursor;
+          changed =
+            !label.equals(slotLabels[slot])
+            || image != slotImages[slot]
+            || depth != slotDepths[slot]
+            || isCursor != slotCursors[slot];
+          if (changed) {
+            drawRow(slot*rowHeight, label, image, depth, isCursor);
+            slotLabels[slot] = label;
+            slotImages[slot] = image;
+            slotDepths[slot] = depth;
+            slotCursors[slot] = isCursor;
+          }
+        } else {
+          changed = slotLabels[slot] != null;
+          if (changed) {
+            graphics.setColor(BACKGROUND);
+            graphics.fillRect(0, slot*rowHeight, width, rowHeight);
+            slotLabels[slot] = null;
+            slotImages[slot] = null;
+            slotCursors[slot] = false;
+          }
+        }
+      }
+      if (changed) {
+        numDrawn++;
+        if (dirtyStart == -1) {
+          dirtyStart = slot;
+        }
+      } else if (dirtyStart != -1) {
+        // Flush each run of changed rows
+        if (!scrolled) {
+          flushGraphics(0, dirtyStart*rowHeight, width, (slot-dirtyStart)*rowHeight);
+        }
+        dirtyStart = -1;
+      }
+    }
+    if (scrolled) {
+      flushGraphics();
+    }
+    if (bitmaps.size()>MAX_BITMAPS) {
+      bitmaps.clear();
+    }
+    if (DEBUG) {
+      System.out.println("TreeCanvas: drew "+numDrawn+" rows");
+    }
+  }
+
+  /**
+   * Shifts the drawn rows by the given number of rows, leaving the rows
+   * scrolled into view to be drawn.
+   *
+   * @return  <code>true</code> when the screen was shifted and must be flushed
+   */
+  private boolean scroll(int rows) {
+    int numSlots = slotLabels.length;
+    int distance = Math.abs(rows);
+    if (distance<numSlots) {
+      int shift = distance*rowHeight;
+      try {
+        if (rows>0) {
+          graphics.copyArea(0, shift, width, height-shift, 0, 0, Graphics.TOP|Graphics.LEFT);
+        } else {
+          graphics.copyArea(0, 0, width, height-shift, 0, shift, Graphics.TOP|Graphics.LEFT);
+        }
+      } catch (IllegalStateException err) {
+        // Not supported, draw all rows
+        distance = numSlots;
+      }
+    }
+    if (distance >= numSlots) {
+      for (int slot=0; slot<numSlots; slot++) {
+        slotLabels[slot] = null;
+      }
+      return false;
+    }
+    int from = rows>0 ? distance : 0;
+    int to = rows>0 ? 0 : distance;
+    int len = numSlots-distance;
+    System.arraycopy(slotLabels, from, slotLabels, to, len);
+    System.arraycopy(slotImages, from, slotImages, to, len);
+    System.arraycopy(slotDepths, from, slotDepths, to, len);
+    System.arraycopy(slotCursors, from, slotCursors, to, len);
+    // The rows scrolled into view
+    int exposed = rows>0 ? len : 0;
+    for (int slot=exposed, end=exposed+distance; slot<end; slot++) {
+      slotLabels[slot] = null;
+    }
+    return true;
+  }
+
+  private void drawRow(int y, String label, Image image, int depth, boolean isCursor) {
+    int x = Math.min(depth*INDENT, width/3);
+    Graphics g = graphics;
+    g.setClip(0, y, width, rowHeight);
+    if (isCursor) {
+      // The cursor is drawn directly, since bitmaps cannot be transparent
+      g.setColor(CURSOR_BACKGROUND);
+      g.fillRect(0, y, width, rowHeight);
+      drawContent(g, x, y, label, image, CURSOR_FOREGROUND);
+    } else {
+      g.setColor(BACKGROUND);
+      g.fillRect(0, y, x, rowHeight);
+      RowBitmap rowBitmap = (RowBitmap)bitmaps.get(label);
+      if (rowBitmap == null || rowBitmap.icon != image || rowBitmap.bitmap.getWidth() != width-x) {
+        Image bitmap = Image.createImage(width-x, rowHeight);
+        Graphics bg = bitmap.getGraphics();
+        bg.setColor(BACKGROUND);
+        bg.fillRect(0, 0, width-x, rowHeight);
+        bg.setFont(font);
+        drawContent(bg, 0, 0, label, image, FOREGROUND);
+        rowBitmap = new RowBitmap(image, bitmap);
+        bitmaps.put(label, rowBitmap);
+      }
+      g.drawImage(rowBitmap.bitmap, x, y, Graphics.TOP|Graphics.LEFT);
+    }
+    g.setClip(0, 0, width, height);
+  }
+
+  private void drawContent(Graphics g, int x, int y, String label, Image image, int color) {
+    int textX = x + PADDING;
+    if (image != null) {
+      g.drawImage(image, textX, y + (rowHeight-image.getHeight())/2, Graphics.TOP|Graphics.LEFT);
+      textX += image.getWidth() + PADDING;
+    }
+    g.setColor(color);
+    g.drawString(label, textX, y + (rowHeight-font.getHeight())/2, Graphics.TOP|Graphics.LEFT);
+  }
+
+  protected void keyPressed(int keyCode) {
+    handleKey(keyCode);
+  }
+
+  protected void keyRepeated(int keyCode) {
+    handleKey(keyCode);
+  }
+
+  private void handleKey(int keyCode) {
+    String[] selectedPath = null;
+    synchronized (this) {
+      switch (getGameAction(keyCode)) {
+        case UP:
+          if (cursor>0) {
+            cursor--;
+            showCursor();
+            draw();
+          }
+          break;
+        case DOWN:
+          if (cursor<size-1) {
+            cursor++;
+            showCursor();
+            draw();
+          }
+          break;
+        case FIRE:
+        case RIGHT:
+          if (cursor<size) {
+            selectedPath = TreeRows.getPath(labels, pathRows, cursor);
+          }
+          break;
+        case LEFT:
+          if (pathRows>1) {
+            selectedPath = TreeRows.getPath(labels, pathRows, pathRows-2);
+          }
+          break;
+        default:
+          // Ignore other keys
+      }
+    }
+    if (selectedPath != null) {
+      listener.rowSelected(selectedPath);
+    }
+  }
+
+  /**
+   * Draws everything again, since the screen may have been used by another
+   * displayable.
+   */
+  protected synchronized void showNotify() {
+    graphics = null;
+    draw();
+  }
+
+  protected synchronized void sizeChanged(int w, int h) {
+    graphics = null;
+    draw();
+  }
+}
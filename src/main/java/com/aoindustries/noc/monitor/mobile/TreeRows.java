@@ -0,0 +1,333 @@
+/*
+ * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of noc-monitor-mobile.
+ *
+ * noc-monitor-mobile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * noc-monitor-mobile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with noc-monitor-mobile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.noc.monitor.mobile;
+
+import java.util.Hashtable;
+import javax.microedition.lcdui.ChoiceGroup;
+import javax.microedition.lcdui.Image;
+
+/**
+ * The rows shown in the tree {@link ChoiceGroup}: the nodes along the selected
+ * path followed by the children of the last node in the path.
+ * <p>
+ * The new rows are added between {@link #begin()} and {@link #commit(int)},
+ * then the choice group is changed with as few calls as possible.  Each row
+ * is identified by its depth and label, which is unique since siblings have
+ * distinct labels.  Rows that keep their relative order are left in place,
+ * only updating their image when changed, while other rows are deleted or
+ * inserted.  Inserting a row near the top does not rewrite the rows below.
+ * </p>
+ * <p>
+ * Without a choice group, the rows are only kept for {@link TreeCanvas}.
+ * </p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class TreeRows {
+
+  private static final boolean DEBUG = false;
+
+  private final ChoiceGroup choiceGroup;
+
+  // The rows currently in the choice group
+  private String[] labels = new String[16];
+  private Image[] images = new Image[16];
+  private int size;
+  private int pathRows;
+
+  // The rows being added
+  private String[] newLabels = new String[16];
+  private Image[] newImages = new Image[16];
+  private int newSize;
+
+  /**
+   * @param  choiceGroup  the choice group to update or <code>null</code> for none
+   */
+  TreeRows(ChoiceGroup choiceGroup) {
+    this.choiceGroup = choiceGroup;
+  }
+
+  int size() {
+    return size;
+  }
+
+  String getLabel(int row) {
+    if (row<0 || row >= size) {
+      throw new ArrayIndexOutOfBoundsException(row);
+    }
+    return labels[row];
+  }
+
+  Image getImage(int row) {
+    if (row<0 || row >= size) {
+      throw new ArrayIndexOutOfBoundsException(row);
+    }
+    return images[row];
+  }
+
+  /**
+   * Gets the number of rows that are along the selected path.
+   */
+  int getPathRows() {
+    return pathRows;
+  }
+
+  /**
+   * Gets the path of labels to the node shown in the given row.
+   */
+  String[] getPath(int row) {
+    if (row<0 || row >= size) {
+      throw new ArrayIndexOutOfBoundsException(row);
+    }
+    return getPath(labels, pathRows, row);
+  }
+
+  /**
+   * Gets the path of labels to the node shown in the given row.
+   *
+   * @param  labels    the labels of all rows
+   * @param  pathRows  the number of rows that are along the selected path
+   */
+  static String[] getPath(String[] labels, int pathRows, int row) {
+    String[] path;
+    if (row<pathRows) {
+      path = new String[row+1];
+      System.arraycopy(labels, 0, path, 0, row+1);
+    } else {
+      path = new String[pathRows+1];
+      System.arraycopy(labels, 0, path, 0, pathRows);
+      path[pathRows] = labels[row];
+    }
+    return path;
+  }
+
+  /**
+   * Starts a new set of rows.
+   */
+  void begin() {
+    for (int c=0; c<newSize; c++) {
+      newLabels[c] = null;
+      newImages[c] = null;
+    }
+    newSize = 0;
+  }
+
+  /**
+   * Adds the next row.  The rows along the path are added first.
+   */
+  void add(String label, Image image) {
+    if (newSize == newLabels.length) {
+      String[] grownLabels = new String[newSize*2];
+      System.arraycopy(newLabels, 0, grownLabels, 0, newSize);
+      newLabels = grownLabels;
+      Image[] grownImages = new Image[newSize*2];
+      System.arraycopy(newImages, 0, grownImages, 0, newSize);
+      newImages = grownImages;
+    }
+    newLabels[newSize] = label;
+    newImages[newSize] = image;
+    newSize++;
+  }
+
+  /**
+   * Updates the choice group to the rows added since {@link #begin()}.
+   *
+   * @param  newPathRows  the number of rows that are along the selected path
+   */
+  void commit(int newPathRows) {
+    if (newPathRows<0 || newPathRows>newSize) {
+      throw new IllegalArgumentException("newPathRows out of range: "+newPathRows);
+    }
+    // The old row, if any, kept for each new row
+    int[] oldRows = new int[newSize];
+    for (int c=0; c<newSize; c++) oldRows[c] = -1;
+    int numKept = match(newPathRows, oldRows);
+    if (DEBUG) {
+      System.out.println("TreeRows: old="+size+" new="+newSize+" kept="+numKept);
+    }
+
+    if (choiceGroup != null) {
+      updateChoiceGroup(oldRows, numKept);
+    }
+
+    // Swap buffers
+    String[] swapLabels = labels;
+    labels = newLabels;
+    newLabels = swapLabels;
+    Image[] swapImages = images;
+    images = newImages;
+    newImages = swapImages;
+    int swapSize = size;
+    size = newSize;
+    newSize = swapSize;
+    pathRows = newPathRows;
+  }
+
+  /**
+   * Changes the choice group from the current rows to the new rows.
+   */
+  private void updateChoiceGroup(int[] oldRows, int numKept) {
+    // Delete the rows not kept, from the end so indexes are not shifted
+    if (numKept == 0) {
+      if (size>0) {
+        choiceGroup.deleteAll();
+      }
+    } else if (numKept<size) {
+      boolean[] kept = new boolean[size];
+      for (int c=0; c<newSize; c++) {
+        if (oldRows[c] != -1) {
+          kept[oldRows[c]] = true;
+        }
+      }
+      for (int c=size-1; c >= 0; c--) {
+        if (!kept[c]) {
+          choiceGroup.delete(c);
+        }
+      }
+    }
+
+    // Insert new rows, and update the images of kept rows
+    for (int c=0; c<newSize; c++) {
+      int oldRow = oldRows[c];
+      if (oldRow == -1) {
+        if (c == choiceGroup.size()) {
+          choiceGroup.append(newLabels[c], newImages[c]);
+        } else {
+          choiceGroup.insert(c, newLabels[c], newImages[c]);
+        }
+      } else if (images[oldRow] != newImages[c]) {
+        choiceGroup.set(c, newLabels[c], newImages[c]);
+      }
+    }
+  }
+
+  /**
+   * Gets the depth of a row: path rows are at increasing depth and the
+   * remaining rows are all one below the end of the path.
+   */
+  private static int getDepth(int row, int pathRows) {
+    return row<pathRows ? row : pathRows;
+  }
+
+  private boolean sameRow(int oldRow, int newRow, int newPathRows) {
+    return
+      getDepth(oldRow, pathRows) == getDepth(newRow, newPathRows)
+      && labels[oldRow].equals(newLabels[newRow]);
+  }
+
+  /**
+   * Finds the largest set of old rows that may be kept in their current order.
+   * Matching rows at the start and end are kept, then the middle rows are
+   * matched by depth and label and the longest increasing run of new
+   * positions is kept.
+   *
+   * @param  oldRows  set to the old row kept for each new row
+   *
+   * @return  the number of rows kept
+   */
+  private int match(int newPathRows, int[] oldRows) {
+    int minSize = Math.min(size, newSize);
+    int start = 0;
+    while (start<minSize && sameRow(start, start, newPathRows)) {
+      oldRows[start] = start;
+      start++;
+    }
+    int end = 0;
+    while (end<minSize-start && sameRow(size-1-end, newSize-1-end, newPathRows)) {
+      oldRows[newSize-1-end] = size-1-end;
+      end++;
+    }
+    int oldEnd = size - end;
+    int newEnd = newSize - end;
+    int numKept = start + end;
+    if (start == oldEnd || start == newEnd) {
+      return numKept;
+    }
+
+    // Index the new non-path rows in the middle by label
+    Hashtable newChildRows = null;
+    for (int c=Math.max(start, newPathRows); c<newEnd; c++) {
+      if (newChildRows == null) {
+        newChildRows = new Hashtable();
+      }
+      newChildRows.put(newLabels[c], new Integer(c));
+    }
+
+    // The new row matching each old row in the middle, in old order
+    int numMiddle = oldEnd - start;
+    int[] matches = new int[numMiddle];
+    int numMatches = 0;
+    int[] matchedOldRows = new int[numMiddle];
+    for (int c=start; c<oldEnd; c++) {
+      int depth = getDepth(c, pathRows);
+      int newRow = -1;
+      if (depth<newPathRows) {
+        // Path rows are found by depth
+        if (depth >= start && depth<newEnd && labels[c].equals(newLabels[depth])) {
+          newRow = depth;
+        }
+      } else if (depth == newPathRows && newChildRows != null) {
+        Integer found = (Integer)newChildRows.get(labels[c]);
+        if (found != null) {
+          newRow = found.intValue();
+        }
+      }
+      if (newRow != -1) {
+        matches[numMatches] = newRow;
+        matchedOldRows[numMatches] = c;
+        numMatches++;
+      }
+    }
+    if (numMatches == 0) {
+      return numKept;
+    }
+
+    // Longest increasing subsequence of the new rows
+    int[] tails = new int[numMatches];
+    int[] previous = new int[numMatches];
+    int length = 0;
+    for (int c=0; c<numMatches; c++) {
+      int value = matches[c];
+      int low = 0;
+      int high = length;
+      while (low<high) {
+        int mid = (low + high) >>> 1;
+        if (matches[tails[mid]]<value) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      previous[c] = low>0 ? tails[low-1] : -1;
+      tails[low] = c;
+      if (low == length) {
+        length++;
+      }
+    }
+    for (int c=tails[length-1]; c != -1; c=previous[c]) {
+      oldRows[matches[c]] = matchedOldRows[c];
+    }
+    return numKept + length;
+  }
+}
@@ -1,6 +1,6 @@
 /*
  * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
- * Copyright (C) 2009-2012, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2009-2012, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,20 +23,37 @@
 
 package com.aoindustries.noc.monitor.mobile;
 
-import com.tinyline.util.GZIPInputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InterruptedIOException;
 import java.util.Date;
-import java.util.Vector;
 import javax.microedition.io.Connector;
 import javax.microedition.io.SecureConnection;
+import javax.microedition.io.StreamConnection;
 
 /**
  * Asynchronously updates the node tree in a background Thread.  Each update
  * request will time-out after five minutes.  After each successful load,
- * it stores the results as a record.
+ * it notifies the listeners then stores the results as a record in another
+ * background Thread.  At start-up, the record is provided to the listeners
+ * before the first download.
+ * <p>
+ * The version of the current snapshot is sent with each request, and the server
+ * responds with only the changes when it still has that version.  Otherwise, or
+ * when the changes do not apply, the full tree is downloaded.
+ * </p>
+ * <p>
+ * When the server supports it, a single session is kept open instead of polling.
+ * The server pushes each change as it happens, heartbeats are exchanged while
+ * idle, and a dead session is reconnected.
+ * </p>
+ * <p>
+ * While a large full tree is being read, the listeners are periodically given
+ * the incomplete tree so the top levels may be shown before the download ends.
+ * </p>
+ * <p>
+ * When polling, a {@link PollScheduler} polls more often while there are high
+ * alerts or recent changes, and backs off when quiet or after errors.
+ * </p>
  *
  * @author  AO Industries, Inc.
  */
@@ -58,35 +75,180 @@ class Updater implements Runnable {
   private static final int PORT = 4585;
 
   /**
-   * The number of milliseconds between updates.
+   * When enabled, connects to a {@link LocalServer} instead of the real server.
    */
-  private static final long UPDATE_INTERVAL = 5L * 60 * 1000;
+  private static final boolean USE_LOCAL_SERVER = false;
+
+  /**
+   * The record store used with the local server, separate from the snapshot
+   * of the real server so a synthetic tree never replaces it.
+   */
+  private static final String LOCAL_RECORD_NAME = "LocalServer.cache";
 
   /**
    * The time-out duration.
    */
   private static final long TIMEOUT_DURATION = 5L * 60 * 1000;
 
+  /**
+   * When enabled, a session is kept open with the server pushing changes.
+   * Polling is used when disabled or when the server does not support sessions.
+   */
+  private static final boolean USE_SESSION = true;
+
+  /**
+   * The number of milliseconds to wait before reconnecting after an
+   * established session ends.
+   */
+  private static final long RECONNECT_DELAY = 5L * 1000;
+
+  /**
+   * The longest a connection is kept open between polls.  Polls further apart
+   * close the connection instead, since idle connections are often dropped by
+   * the network without notice.
+   */
+  private static final long KEEP_ALIVE_DURATION = 4L * 60 * 1000;
+
+  /**
+   * The number of milliseconds between notifying the listeners of the partial
+   * tree while a full tree is being read.  A tree read faster than this is
+   * only provided once complete.
+   */
+  private static final long PROGRESS_INTERVAL = 2L * 1000;
+
   private final String username;
   private final String password;
+  private final boolean useLocalServer;
+  private final boolean useSession;
 
   private Thread thread;
 
-  private transient boolean updateNow;
+  private final DownloadWorker downloadWorker = new DownloadWorker();
+
+  /**
+   * Decides when to poll and how long to wait after errors.
+   */
+  private final PollScheduler pollScheduler = new PollScheduler();
+
+  /**
+   * Records where the time of each poll and session message went.
+   */
+  private final Diagnostics diagnostics = new Diagnostics();
+
+  /**
+   * The details of nodes, retrieved on demand and prefetched for high alerts.
+   */
+  private final DetailCache detailCache = new DetailCache(
+    new DetailCache.Fetcher() {
+      public NodeDetail fetch(String[] path) throws IOException {
+        return downloadDetail(path);
+      }
+    }
+  );
+
+  private boolean updateNow;
   private transient NodeSnapshot snapshot;
 
-  // Could possibly change this to a single value if no more than one is ever added
-  private final Vector listeners = new Vector();
+  /**
+   * The incomplete tree given to the listeners while a full tree is read.
+   */
+  private NodeSnapshot partialSnapshot;
+
+  /**
+   * Set when the server answers a session request like a legacy server.
+   */
+  private boolean sessionUnsupported;
+
+  /**
+   * Set when the server answers like a legacy server, which has no node
+   * details.  Details are then neither requested nor prefetched.
+   */
+  private volatile boolean detailsUnsupported;
+
+  /**
+   * Set when the next session should start with a full tree.
+   */
+  private boolean sessionRequestFull;
+
+  /**
+   * The connection kept open between polls, along with its response stream.
+   * A download takes the connection while it runs, so it is only used by one
+   * download at a time.
+   */
+  private final Object keepAliveLock = new Object();
+  private ServerConnection keepAlive;
+  private SnapshotInput keepAliveIn;
+  private long keepAliveLastUsed;
+
+  private final Object sessionLock = new Object();
+  private ServerConnection session;
+  private long sessionLastReceived;
+  private boolean heartbeatNow;
+
+  /**
+   * Set once the record has been loaded, whether successful or not.
+   */
+  private boolean recordLoaded;
+
+  private final Object recordWriteLock = new Object();
+  /**
+   * The snapshot waiting to be stored, only the most recent is stored.
+   */
+  private NodeSnapshot pendingRecord;
+  private long pendingRecordCycle;
+  private boolean recordWriting;
+
+  /**
+   * The listeners are replaced, never modified, so they may be used without
+   * locking.  Only changes to the listeners are synchronized.
+   */
+  private volatile ListenerDispatcher[] listeners = new ListenerDispatcher[0];
+  private final Object listenersLock = new Object();
 
   public Updater(String username, String password) {
+    this(username, password, USE_LOCAL_SERVER, USE_SESSION);
+  }
+
+  /**
+   * Allows the server and the use of sessions to be chosen at runtime, such as
+   * by {@link SoakTest}.
+   */
+  Updater(String username, String password, boolean useLocalServer, boolean useSession) {
     this.username = username;
     this.password = password;
+    this.useLocalServer = useLocalServer;
+    this.useSession = useSession;
+  }
+
+  /**
+   * Sets the maximum number of polls started per hour, limiting the battery
+   * and data used.
+   *
+   * @param  maxPollsPerHour  the budget or <code>0</code> for no limit
+   */
+  void setMaxPollsPerHour(int maxPollsPerHour) {
+    pollScheduler.setMaxPollsPerHour(maxPollsPerHour);
+  }
+
+  /**
+   * Gets the recent update cycles.
+   */
+  Diagnostics getDiagnostics() {
+    return diagnostics;
+  }
+
+  /**
+   * Gets the details of nodes.
+   */
+  DetailCache getDetailCache() {
+    return detailCache;
   }
 
   void start() {
     try {
       synchronized (this) {
         if (thread == null) {
+          detailCache.start();
           thread = new Thread(this);
           thread.setPriority(Thread.NORM_PRIORITY-1);
           thread.start();
@@ -100,21 +262,33 @@ class Updater implements Runnable {
   void stop() {
     synchronized (this) {
       thread = null;
+      notifyAll();
     }
+    detailCache.stop();
+    closeSession();
+    downloadWorker.stop();
+    closeKeepAlive();
   }
 
   /**
    * Causes an update of the data as soon as possible.  If an update is in progress,
-   * it will not cause another update after completion.
+   * it will not cause another update after completion.  During a session, the
+   * server already sends every change, so a heartbeat is sent immediately to
+   * verify the session is still alive.
    */
   void updateNow() {
     try {
-      updateNow = true;
-      synchronized (this) {
-        if (thread != null) {
-          thread.interrupt(); // TODO: Use wait/notify instead of interrupt
+      synchronized (sessionLock) {
+        if (session != null) {
+          heartbeatNow = true;
+          sessionLock.notifyAll();
+          return;
         }
       }
+      synchronized (this) {
+        updateNow = true;
+        notifyAll();
+      }
     } catch (Exception err) {
       alert(err);
     }
@@ -125,6 +299,7 @@ class Updater implements Runnable {
       final Thread currentThread = Thread.currentThread();
       while (true) {
         long lastStartTime = System.currentTimeMillis();
+        long cycle = Diagnostics.NO_CYCLE;
         try {
           // Stop if should no longer be running
           Thread runningThread;
@@ -135,227 +310,890 @@ class Updater implements Runnable {
             break;
           }
 
-          // Try to retrieve latest values from a record if not yet loaded
-          if (snapshot == null) {
-            snapshot = NodeSnapshot.getRecord();
-            if (snapshot != null) {
+          // Try to retrieve latest values from a record if not yet loaded,
+          // never showing the tree of the real server with the local server
+          if (snapshot == null && !recordLoaded && !useLocalServer) {
+            recordLoaded = true;
+            NodeSnapshot recordSnapshot = null;
+            try {
+              recordSnapshot = NodeSnapshot.getRecord();
+            } catch (Exception err) {
+              // Download anyway
+              alert(err);
+            }
+            if (recordSnapshot != null) {
+              synchronized (this) {
+                snapshot = recordSnapshot;
+              }
               if (DEBUG) {
                 System.out.println("Got old version from record store");
-                dumpSnapshot(snapshot);
+                dumpSnapshot(recordSnapshot);
               }
-              notifyListenersNodesUpdated(snapshot);
+              notifyListenersNodesUpdated(recordSnapshot);
             }
           }
 
-          // Download the latest values from the noc-monitor-server
-          snapshot = downloadSnapshot();
-          if (DEBUG) {
-            System.out.println("Got new version from server");
-            dumpSnapshot(snapshot);
+          // Keep a session open, reconnecting when it ends
+          if (useSession && !sessionUnsupported) {
+            boolean reconnect = runSession(currentThread);
+            abandonPartialSnapshot();
+            if (reconnect) {
+              pollScheduler.connected();
+              waitForUpdate(System.currentTimeMillis() + RECONNECT_DELAY, RECONNECT_DELAY);
+            }
+            continue;
           }
 
-          // Store the latest values as a new version of the record
-          NodeSnapshot.storeRecord(snapshot);
-          notifyListenersNodesUpdated(snapshot);
+          // Download the latest values from the noc-monitor-server
+          pollScheduler.pollStarted(lastStartTime);
+          cycle = diagnostics.startCycle(false);
+          NodeSnapshot oldSnapshot = snapshot;
+          NodeSnapshot newSnapshot;
+          try {
+            newSnapshot = downloadSnapshot(snapshot, cycle);
+          } catch (NodeDelta.MismatchException err) {
+            if (DEBUG) {
+              System.out.println("Updater: Delta did not apply, downloading full tree: "+err.getMessage());
+            }
+            newSnapshot = downloadSnapshot(null, cycle);
+          }
+          diagnostics.endCycle(cycle, newSnapshot.getTree().getSize());
+          setSnapshot(newSnapshot, cycle);
+          pollScheduler.pollSucceeded(System.currentTimeMillis(), oldSnapshot, newSnapshot);
 
-          // Wait five minutes or until interrupted
-          final long sleepUntil = lastStartTime + UPDATE_INTERVAL;
-          while (!updateNow) {
-            long sleepLeft = sleepUntil - System.currentTimeMillis();
-            // Sleep done or not needed
-            if (sleepLeft <= 0) {
+          // Wait for the next poll or until updateNow
+          long delay = pollScheduler.getDelay(System.currentTimeMillis());
+          if (delay > KEEP_ALIVE_DURATION) {
+            closeKeepAlive();
+          }
+          waitForUpdate(lastStartTime + delay, delay);
+        } catch (Exception err) {
+          synchronized (this) {
+            if (currentThread != thread) {
+              // Stopped during the update
               break;
             }
-            // System time reset
-            if (sleepLeft>UPDATE_INTERVAL) {
-              break;
+          }
+          diagnostics.endCycle(cycle, -1);
+          abandonPartialSnapshot();
+          closeKeepAlive();
+          alert(err);
+          pollScheduler.pollFailed();
+          long delay = pollScheduler.getDelay(System.currentTimeMillis());
+          waitForUpdate(System.currentTimeMillis() + delay, delay);
+        }
+      }
+    } catch (Exception err) {
+      alert(err);
+    }
+  }
+
+  /**
+   * Waits until the provided time, {@link #updateNow()}, or {@link #stop()}.
+   * Returns immediately when the wait would be longer than <code>maxWait</code>,
+   * which happens when the system time is reset.
+   */
+  private void waitForUpdate(long waitUntil, long maxWait) {
+    final Thread currentThread = Thread.currentThread();
+    synchronized (this) {
+      while (!updateNow && currentThread == thread) {
+        long waitLeft = waitUntil - System.currentTimeMillis();
+        // Wait done or not needed, or system time reset
+        if (waitLeft <= 0 || waitLeft>maxWait) {
+          break;
+        }
+        if (DEBUG) {
+          System.out.println("Updater: Waiting for "+waitLeft+" ms");
+        }
+        try {
+          wait(waitLeft);
+        } catch (InterruptedException err) {
+          // Restore the interrupted status
+          currentThread.interrupt();
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Notifies the listeners of the alert transitions and the new snapshot then
+   * stores it as a new version of the record, unless the tree is the same as
+   * before.
+   *
+   * @param  cycle  the cycle the time to store is added to
+   */
+  private void setSnapshot(NodeSnapshot newSnapshot, long cycle) {
+    NodeSnapshot oldSnapshot;
+    synchronized (this) {
+      oldSnapshot = snapshot;
+      snapshot = newSnapshot;
+      partialSnapshot = null;
+    }
+    if (DEBUG) {
+      System.out.println("Got new version from server");
+      dumpSnapshot(newSnapshot);
+    }
+    // The record is not stored again when not modified
+    boolean modified = oldSnapshot == null || oldSnapshot.getTree() != newSnapshot.getTree();
+    if (modified && oldSnapshot != null) {
+      AlertTransition[] transitions = AlertTransition.findTransitions(oldSnapshot.getTree(), newSnapshot.getTree());
+      if (transitions.length > 0) {
+        if (DEBUG) {
+          for (int c=0; c<transitions.length; c++) {
+            System.out.println("Updater: "+transitions[c]);
+          }
+        }
+        notifyListenersAlertTransitions(transitions);
+      }
+    }
+    notifyListenersNodesUpdated(newSnapshot);
+    if (modified) {
+      storeRecordLater(newSnapshot, cycle);
+    }
+    if (!detailsUnsupported) {
+      detailCache.prefetch(newSnapshot.getTree());
+    }
+  }
+
+  /**
+   * Stores the record in a background Thread.  When a store is already in
+   * progress, only the most recent snapshot is stored once it completes.
+   */
+  private void storeRecordLater(NodeSnapshot newSnapshot, long cycle) {
+    synchronized (recordWriteLock) {
+      pendingRecord = newSnapshot;
+      pendingRecordCycle = cycle;
+      if (recordWriting) {
+        return;
+      }
+      recordWriting = true;
+    }
+    Thread recordThread = new Thread(
+      new Runnable() {
+        public void run() {
+          while (true) {
+            NodeSnapshot record;
+            long recordCycle;
+            synchronized (recordWriteLock) {
+              record = pendingRecord;
+              recordCycle = pendingRecordCycle;
+              pendingRecord = null;
+              if (record == null) {
+                recordWriting = false;
+                return;
+              }
             }
             try {
-              if (DEBUG) {
-                System.out.println("Updater: Sleeping for "+sleepLeft+" ms");
-              }
-              Thread.sleep(sleepLeft);
-            } catch (InterruptedException err) {
-              if (updateNow) {
-                break;
-              }
-              if (DEBUG) {
-                System.out.println("Updater: Got interrupt that was not for updateNow flag");
+              long startTime = System.currentTimeMillis();
+              if (useLocalServer) {
+                NodeSnapshot.writeRecords(LOCAL_RECORD_NAME, NodeSnapshot.toRecordBytes(record));
+              } else {
+                NodeSnapshot.storeRecord(record);
               }
+              diagnostics.addTime(recordCycle, Diagnostics.STORE, System.currentTimeMillis() - startTime);
+            } catch (Exception err) {
+              alert(err);
             }
           }
-        } catch (Exception err) {
-          alert(err);
+        }
+      }
+    );
+    recordThread.setPriority(Thread.MIN_PRIORITY);
+    recordThread.start();
+  }
+
+  /**
+   * Runs one session until it ends, storing each snapshot pushed by the server
+   * and notifying the listeners.
+   *
+   * @return  <code>true</code> when the session was established before it ended,
+   *          and the caller should reconnect
+   *
+   * @throws  IOException  when the session could not be established
+   */
+  private boolean runSession(Thread currentThread) throws IOException {
+    boolean established = false;
+    // The first cycle includes establishing the session
+    long cycle = diagnostics.startCycle(true);
+    long connectStart = System.currentTimeMillis();
+    ServerConnection conn;
+    try {
+      conn = new ServerConnection(openConnection());
+    } catch (IOException err) {
+      diagnostics.endCycle(cycle, -1);
+      throw err;
+    }
+    diagnostics.addTime(cycle, Diagnostics.CONNECT, System.currentTimeMillis() - connectStart);
+    SnapshotInput in = null;
+    try {
+      synchronized (sessionLock) {
+        session = conn;
+        sessionLastReceived = System.currentTimeMillis();
+      }
+      synchronized (this) {
+        if (currentThread != thread) {
+          // Stopped while connecting
+          return false;
+        }
+      }
+      NodeSnapshot base = sessionRequestFull ? null : snapshot;
+      long requestTime = System.currentTimeMillis();
+      long startBytes = conn.getBytesRead();
+      DataOutputStream out = conn.getOutputStream();
+      synchronized (out) {
+        out.writeUTF(username);
+        out.writeUTF(password);
+        out.writeShort(Protocol.VERSION);
+        Codec.writeCodecs(out);
+        out.writeByte(Protocol.REQUEST_SESSION);
+        out.writeLong(base == null ? Protocol.NO_VERSION : base.getVersion());
+        out.writeInt(base == null ? 0 : base.getContentHash());
+        out.flush();
+      }
+      startHeartbeat(conn);
+      in = SnapshotInput.getInstance(Codec.readInputStream(conn.getInputStream()));
+      if (!readLogin(in)) {
+        if (DEBUG) {
+          System.out.println("Updater: Server does not support sessions, polling instead");
+        }
+        sessionUnsupported = true;
+        detailsUnsupported = true;
+        return false;
+      }
+      diagnostics.addTime(cycle, Diagnostics.LOGIN, System.currentTimeMillis() - requestTime);
+      while (true) {
+        byte message = in.readByte();
+        long readStart = System.currentTimeMillis();
+        long startReadTime = conn.getReadTime();
+        synchronized (sessionLock) {
+          sessionLastReceived = readStart;
+        }
+        if (message != Protocol.HEARTBEAT) {
+          if (cycle == Diagnostics.NO_CYCLE) {
+            cycle = diagnostics.startCycle(true);
+          }
+          NodeSnapshot newSnapshot = readResponse(message, in, base, readStart, null, cycle);
+          recordRead(cycle, readStart, conn.getReadTime() - startReadTime);
+          diagnostics.addBytes(cycle, conn.getBytesRead() - startBytes);
+          diagnostics.endCycle(cycle, newSnapshot.getTree().getSize());
+          setSnapshot(newSnapshot, cycle);
+          cycle = Diagnostics.NO_CYCLE;
+          base = snapshot;
+          sessionRequestFull = false;
+          established = true;
+        } else if (DEBUG) {
+          System.out.println("Updater: Got heartbeat");
+        }
+        startBytes = conn.getBytesRead();
+      }
+    } catch (IOException err) {
+      synchronized (this) {
+        if (currentThread != thread) {
+          // Closed by stop
+          return false;
+        }
+      }
+      if (err instanceof NodeDelta.MismatchException) {
+        sessionRequestFull = true;
+      }
+      if (!established) {
+        throw err;
+      }
+      if (DEBUG) {
+        System.out.println("Updater: Session ended: "+err.toString());
+      }
+      return true;
+    } finally {
+      // Any cycle not yet ended was interrupted
+      diagnostics.endCycle(cycle, -1);
+      synchronized (sessionLock) {
+        if (session == conn) {
+          session = null;
+        }
+      }
+      conn.close();
+      if (in != null) {
+        close(in);
+      }
+    }
+  }
+
+  /**
+   * Closes the current session, if any.
+   */
+  private void closeSession() {
+    ServerConnection conn;
+    synchronized (sessionLock) {
+      conn = session;
+      session = null;
+      sessionLock.notifyAll();
+    }
+    if (conn != null) {
+      conn.close();
+    }
+  }
+
+  /**
+   * Starts the thread that sends heartbeats for a session and closes the
+   * session when the server has been silent for too long.
+   */
+  private void startHeartbeat(final ServerConnection conn) {
+    Thread heartbeatThread = new Thread(
+      new Runnable() {
+        public void run() {
           try {
-            Thread.sleep(60L * 1000);
-          } catch (InterruptedException err2) {
-            if (!updateNow) {
-              if (DEBUG) {
-                System.out.println("Updater: Got interrupt that was not for updateNow flag");
+            while (true) {
+              synchronized (sessionLock) {
+                if (!heartbeatNow && session == conn) {
+                  sessionLock.wait(Protocol.HEARTBEAT_INTERVAL);
+                }
+                if (session != conn) {
+                  break;
+                }
+                heartbeatNow = false;
+                if (System.currentTimeMillis() - sessionLastReceived > Protocol.HEARTBEAT_TIMEOUT) {
+                  if (DEBUG) {
+                    System.out.println("Updater: Session timed-out");
+                  }
+                  conn.close();
+                  break;
+                }
+              }
+              // Only details use the kept connection during a session
+              closeKeepAliveIfIdle(Protocol.HEARTBEAT_INTERVAL);
+              DataOutputStream out = conn.getOutputStream();
+              synchronized (out) {
+                out.writeByte(Protocol.HEARTBEAT);
+                out.flush();
               }
             }
+          } catch (InterruptedException err) {
+            conn.close();
+          } catch (IOException err) {
+            conn.close();
           }
         }
       }
-    } catch (Exception err) {
-      alert(err);
-    }
+    );
+    heartbeatThread.setPriority(Thread.NORM_PRIORITY-1);
+    heartbeatThread.start();
   }
 
   private static void dumpSnapshot(NodeSnapshot snapshot) {
     System.out.print("Snapshot at ");
     System.out.println(new Date(snapshot.getTime()));
-    dumpTree(0, snapshot.getRootNode());
+    dumpTree(0, snapshot.getTree(), 0);
   }
 
-  private static void dumpTree(int indent, Node node) {
+  private static void dumpTree(int indent, NodeTree tree, int node) {
     for (int c=0;c<indent;c++) {
       System.out.print("    ");
     }
-    System.out.print(node.getLabel());
+    System.out.print(tree.getLabel(node));
     System.out.print(' ');
-    System.out.print(AlertLevel.getDisplay(node.getAlertLevel()));
-    String alertMessage = node.getAlertMessage();
+    System.out.print(AlertLevel.getDisplay(tree.getAlertLevel(node)));
+    String alertMessage = tree.getAlertMessage(node);
     if (alertMessage != null) {
       System.out.print(" \"");
       System.out.print(alertMessage);
       System.out.print('"');
     }
     System.out.println();
-    Vector children = node.getChildren();
-    if (children != null) {
-      for (int c=0, len=children.size(); c<len; c++) dumpTree(indent+1, (Node)children.elementAt(c));
-    }
+    for (int c=tree.getFirstChild(node), end=c+tree.getChildCount(node); c<end; c++) dumpTree(indent+1, tree, c);
   }
 
   /**
    * Gets the current snapshot or <code>null</code> if not yet available.
+   * While a full tree is being read, this is the incomplete tree last given
+   * to the listeners.
    */
-  NodeSnapshot getNodeSnapshot() {
-    return snapshot;
+  synchronized NodeSnapshot getNodeSnapshot() {
+    return partialSnapshot != null ? partialSnapshot : snapshot;
   }
 
   /**
-   * Downloads a snapshot of the current values in a background Thread.
-   * Will time-out at five minutes.
+   * Builds a full tree, periodically giving the incomplete tree to the listeners.
    */
-  private NodeSnapshot downloadSnapshot() throws IOException {
-    try {
-      final long time = System.currentTimeMillis();
-      final NodeSnapshot[] result = new NodeSnapshot[1];
-      final IOException[] ioException = new IOException[1];
-      final Thread outerThread = Thread.currentThread();
-      Thread loaderThread = new Thread(
-        new Runnable() {
-          public void run() {
-            try {
-              NodeSnapshot newSnapshot;
-              // Load the full tree
-              SecureConnection conn = (SecureConnection)Connector.open("ssl://"+HOST+":"+PORT, Connector.READ_WRITE, true);
-              try {
-                DataOutputStream out = conn.openDataOutputStream();
-                try {
-                  out.writeUTF(username);
-                  out.writeUTF(password);
-                  out.flush();
-                  DataInputStream in = new DataInputStream(new GZIPInputStream(conn.openInputStream()));
-                  try {
-                    if (!in.readBoolean()) {
-                      // Login unsuccessful
-                      throw new IOException("Login failed");
-                    }
-                    newSnapshot = new NodeSnapshot(NodeSnapshot.readNodeTree(in, null), time);
-                  } finally {
-                    in.close();
-                  }
-                } finally {
-                  out.close();
-                }
-              } finally {
-                conn.close();
-              }
-              // Set the result
-              synchronized (result) {
-                result[0] = newSnapshot;
-              }
-              // Interrupt the thread that is waiting for the result
-              outerThread.interrupt(); // TODO: Use wait/notify instead of interrupt
-            } catch (IOException err) {
-              synchronized (ioException) {
-                ioException[0] = err;
-                outerThread.interrupt(); // TODO: Use wait/notify instead of interrupt
-              }
-            }
+  private class ProgressBuilder extends FlatNodeTree.Builder {
+
+    private final long version;
+    private final long time;
+    private final DownloadFuture future;
+    private long nextProgress;
+
+    /**
+     * @param  future  the download reading the tree or <code>null</code> when read by a session
+     */
+    private ProgressBuilder(long version, long time, DownloadFuture future) {
+      this.version = version;
+      this.time = time;
+      this.future = future;
+      this.nextProgress = System.currentTimeMillis() + PROGRESS_INTERVAL;
+    }
+
+    public void startNode(int depth, String label, byte alertLevel, String alertMessage, boolean allowsChildren, int numChildren) throws IOException {
+      super.startNode(depth, label, alertLevel, alertMessage, allowsChildren, numChildren);
+      long currentTime = System.currentTimeMillis();
+      // Also notify when system time reset
+      if (currentTime >= nextProgress || (nextProgress-currentTime)>PROGRESS_INTERVAL) {
+        nextProgress = currentTime + PROGRESS_INTERVAL;
+        // A canceled download must not replace the tree
+        if (future == null || !future.isCanceled()) {
+          NodeSnapshot partial = new NodeSnapshot(build(), version, time, false);
+          synchronized (Updater.this) {
+            partialSnapshot = partial;
           }
-        }
-      );
-      loaderThread.start();
-      long startTime = System.currentTimeMillis();
-      while (true) {
-        synchronized (result) {
-          NodeSnapshot res = result[0];
-          if (res != null) {
-            return res;
+          if (DEBUG) {
+            System.out.println("Updater: Partial tree");
           }
+          notifyListenersNodesUpdated(partial);
         }
-        synchronized (ioException) {
-          IOException err = ioException[0];
-          if (err != null) {
-            throw err;
+      }
+    }
+  }
+
+  /**
+   * Reads a full tree.
+   *
+   * @param  compact  <code>true</code> for the {@link CompactNodeTree} format or
+   *                  <code>false</code> for the format of legacy servers
+   * @param  future  the download reading the tree or <code>null</code> when read by a session
+   */
+  private NodeSnapshot readFullTree(SnapshotInput in, boolean compact, long version, long time, DownloadFuture future) throws IOException {
+    ProgressBuilder builder = new ProgressBuilder(version, time, future);
+    if (compact) {
+      CompactNodeTree.read(in, builder);
+    } else {
+      NodeTreeReader.read(in, builder);
+    }
+    return new NodeSnapshot(builder.build(), version, time);
+  }
+
+  /**
+   * Once a download fails, any incomplete tree is replaced by the last
+   * complete snapshot.
+   */
+  private void abandonPartialSnapshot() {
+    NodeSnapshot restore;
+    synchronized (this) {
+      if (partialSnapshot == null) {
+        return;
+      }
+      partialSnapshot = null;
+      restore = snapshot;
+    }
+    notifyListenersNodesUpdated(restore);
+  }
+
+  /**
+   * Closes the connection kept open between polls, if any.
+   */
+  private void closeKeepAlive() {
+    ServerConnection conn;
+    SnapshotInput in;
+    synchronized (keepAliveLock) {
+      conn = keepAlive;
+      in = keepAliveIn;
+      keepAlive = null;
+      keepAliveIn = null;
+    }
+    if (conn != null) {
+      conn.close();
+      close(in);
+    }
+  }
+
+  /**
+   * Closes the connection kept open between requests when it has not been
+   * used for the given number of milliseconds.
+   */
+  private void closeKeepAliveIfIdle(long maxIdle) {
+    ServerConnection conn;
+    SnapshotInput in;
+    synchronized (keepAliveLock) {
+      conn = keepAlive;
+      in = keepAliveIn;
+      if (conn == null || (System.currentTimeMillis() - keepAliveLastUsed) <= maxIdle) {
+        return;
+      }
+      keepAlive = null;
+      keepAliveIn = null;
+    }
+    if (DEBUG) {
+      System.out.println("Updater: Closing idle kept connection");
+    }
+    conn.close();
+    close(in);
+  }
+
+  /**
+   * Closes a response, which makes its reader and inflater available for reuse.
+   */
+  private static void close(SnapshotInput in) {
+    try {
+      in.close();
+    } catch (IOException err) {
+      // Closing anyway
+    }
+  }
+
+  /**
+   * Opens a new connection to the server.
+   */
+  private StreamConnection openConnection() throws IOException {
+    if (useLocalServer) {
+      LocalServer.start();
+      return (StreamConnection)Connector.open("socket://127.0.0.1:"+LocalServer.PORT, Connector.READ_WRITE, true);
+    } else {
+      return (SecureConnection)Connector.open("ssl://"+HOST+":"+PORT, Connector.READ_WRITE, true);
+    }
+  }
+
+  /**
+   * Reads the login byte that begins each response.
+   *
+   * @return  <code>true</code> when the server supports the current protocol
+   *          or <code>false</code> when a full tree from a legacy server follows
+   */
+  private static boolean readLogin(SnapshotInput in) throws IOException {
+    byte login = in.readByte();
+    if (login == Protocol.LOGIN_FAILED) {
+      // Login unsuccessful
+      throw new IOException("Login failed");
+    }
+    if (login == Protocol.LOGIN_LEGACY) {
+      return false;
+    }
+    if (login != Protocol.LOGIN_OK) {
+      throw new IOException("Unexpected login response: "+login);
+    }
+    return true;
+  }
+
+  /**
+   * Reads a full tree or delta response, after the response byte has been read.
+   *
+   * @param  base    the snapshot the request was relative to or <code>null</code> for none
+   * @param  future  the download reading the response or <code>null</code> when read by a session
+   * @param  cycle   the cycle the type of response is recorded to
+   */
+  private NodeSnapshot readResponse(byte response, SnapshotInput in, NodeSnapshot base, long time, DownloadFuture future, long cycle) throws IOException {
+    if (response == Protocol.RESPONSE_FULL) {
+      diagnostics.setResult(cycle, Diagnostics.FULL);
+      return readFullTree(in, true, in.readLong(), time, future);
+    }
+    if (response == Protocol.RESPONSE_DELTA) {
+      diagnostics.setResult(cycle, Diagnostics.DELTA);
+      long baseVersion = in.readLong();
+      long version = in.readLong();
+      if (base == null || base.getVersion() != baseVersion) {
+        throw new NodeDelta.MismatchException("Delta from unexpected version: "+baseVersion);
+      }
+      return new NodeSnapshot(NodeDelta.readAndApply(in, base.getTree()), version, time);
+    }
+    if (response == Protocol.RESPONSE_NOT_MODIFIED) {
+      diagnostics.setResult(cycle, Diagnostics.NOT_MODIFIED);
+      long version = in.readLong();
+      if (base == null) {
+        throw new NodeDelta.MismatchException("Not modified without a previous snapshot");
+      }
+      // Keep the same tree and its content hash, only the version and time are new
+      return new NodeSnapshot(base.getTree(), version, time, base.getContentHash());
+    }
+    throw new IOException("Unexpected response: "+response);
+  }
+
+  /**
+   * Records the time reading a response after its first byte, split into the
+   * time blocked on the network and the time decoding.
+   */
+  private void recordRead(long cycle, long readStart, long transferTime) {
+    diagnostics.addTime(cycle, Diagnostics.TRANSFER, transferTime);
+    diagnostics.addTime(cycle, Diagnostics.DECODE, System.currentTimeMillis() - readStart - transferTime);
+  }
+
+  /**
+   * A request sent on the connection kept open between polls, or on a new
+   * connection that is then kept, saving the connect and handshake.  When a
+   * kept connection turns out to be dead, the request is sent again once on a
+   * new connection.
+   */
+  private abstract class KeptRequest implements DownloadWorker.Task {
+
+    private final long cycle;
+
+    /**
+     * @param  cycle  the cycle the request is recorded to or {@link Diagnostics#NO_CYCLE}
+     */
+    KeptRequest(long cycle) {
+      this.cycle = cycle;
+    }
+
+    /**
+     * Writes the request, beginning with its request byte.
+     *
+     * @param  first  <code>true</code> when the first request on a new connection
+     */
+    abstract void write(DataOutputStream out, boolean first) throws IOException;
+
+    /**
+     * Reads the response, after its first byte.
+     */
+    abstract Object read(byte response, SnapshotInput in, DownloadFuture future) throws IOException;
+
+    /**
+     * Reads the full tree sent by a legacy server instead of a response.
+     */
+    abstract Object readLegacy(SnapshotInput in, DownloadFuture future) throws IOException;
+
+    /**
+     * Determines if a failure on a kept connection should be retried on a new
+     * connection.
+     */
+    boolean isRetryable(IOException err) {
+      return true;
+    }
+
+    public Object run(DownloadFuture future) throws IOException {
+      while (true) {
+        ServerConnection conn;
+        SnapshotInput in;
+        synchronized (keepAliveLock) {
+          conn = keepAlive;
+          in = keepAliveIn;
+          keepAlive = null;
+          keepAliveIn = null;
+          if (
+            conn != null
+            && (conn.isClosed() || (System.currentTimeMillis() - keepAliveLastUsed) > KEEP_ALIVE_DURATION)
+          ) {
+            conn.close();
+            close(in);
+            conn = null;
+            in = null;
           }
         }
-        long timeLeft = startTime + TIMEOUT_DURATION - System.currentTimeMillis();
-        if (timeLeft <= 0) {
-          throw new InterruptedIOException("Time-out retrieving systems node tree");
+        boolean reused = conn != null;
+        if (reused) {
+          diagnostics.setReused(cycle);
+        } else {
+          long connectStart = System.currentTimeMillis();
+          conn = new ServerConnection(openConnection());
+          diagnostics.addTime(cycle, Diagnostics.CONNECT, System.currentTimeMillis() - connectStart);
         }
+        boolean keep = false;
+        long requestTime = System.currentTimeMillis();
+        long startBytes = conn.getBytesRead();
+        long readStart = -1;
+        long startReadTime = 0;
         try {
-          Thread.sleep(timeLeft);
-        } catch (InterruptedException err) {
-          // This is expected
+          future.setConnection(conn);
+          DataOutputStream out = conn.getOutputStream();
+          if (!reused) {
+            out.writeUTF(username);
+            out.writeUTF(password);
+            out.writeShort(Protocol.VERSION);
+            Codec.writeCodecs(out);
+          }
+          write(out, !reused);
+          out.flush();
+          if (in == null) {
+            in = SnapshotInput.getInstance(Codec.readInputStream(conn.getInputStream()));
+          }
+          boolean versioned = reused || readLogin(in);
+          byte response = versioned ? in.readByte() : 0;
+          readStart = System.currentTimeMillis();
+          startReadTime = conn.getReadTime();
+          diagnostics.addTime(cycle, Diagnostics.LOGIN, readStart - requestTime);
+          if (!versioned) {
+            // Server does not support versions, and closes the connection
+            return readLegacy(in, future);
+          }
+          Object result = read(response, in, future);
+          keep = true;
+          return result;
+        } catch (IOException err) {
+          if (
+            !reused
+            || future.isCanceled()
+            || !isRetryable(err)
+          ) {
+            throw err;
+          }
+          if (DEBUG) {
+            System.out.println("Updater: Kept connection failed, reconnecting: "+err.toString());
+          }
+        } finally {
+          if (readStart != -1) {
+            recordRead(cycle, readStart, conn.getReadTime() - startReadTime);
+          }
+          diagnostics.addBytes(cycle, conn.getBytesRead() - startBytes);
+          if (keep) {
+            synchronized (keepAliveLock) {
+              keepAlive = conn;
+              keepAliveIn = in;
+              keepAliveLastUsed = System.currentTimeMillis();
+            }
+          } else {
+            conn.close();
+            if (in != null) {
+              close(in);
+            }
+          }
         }
       }
+    }
+  }
+
+  /**
+   * Downloads a snapshot of the current values on the download worker.
+   * Will time-out at five minutes, closing the connection.
+   *
+   * @param  base   the snapshot to request changes relative to or <code>null</code> to request the full tree
+   * @param  cycle  the cycle the download is recorded to
+   *
+   * @see  KeptRequest
+   */
+  private NodeSnapshot downloadSnapshot(final NodeSnapshot base, final long cycle) throws IOException {
+    try {
+      final long time = System.currentTimeMillis();
+      DownloadFuture future = downloadWorker.submit(
+        new KeptRequest(cycle) {
+          void write(DataOutputStream out, boolean first) throws IOException {
+            out.writeByte(first ? Protocol.REQUEST_KEEP_ALIVE : Protocol.REQUEST_SNAPSHOT);
+            out.writeLong(base == null ? Protocol.NO_VERSION : base.getVersion());
+            out.writeInt(base == null ? 0 : base.getContentHash());
+          }
+
+          Object read(byte response, SnapshotInput in, DownloadFuture future) throws IOException {
+            return readResponse(response, in, base, time, future, cycle);
+          }
+
+          Object readLegacy(SnapshotInput in, DownloadFuture future) throws IOException {
+            detailsUnsupported = true;
+            diagnostics.setResult(cycle, Diagnostics.LEGACY);
+            return readFullTree(in, false, Protocol.NO_VERSION, time, future);
+          }
+
+          boolean isRetryable(IOException err) {
+            return !(err instanceof NodeDelta.MismatchException);
+          }
+        }
+      );
+      return (NodeSnapshot)future.get(TIMEOUT_DURATION);
     } finally {
-      updateNow = false;
+      synchronized (this) {
+        updateNow = false;
+      }
     }
   }
 
+  /**
+   * Downloads the details of one node on the download worker, sharing the
+   * connection kept open between polls.  Will time-out at five minutes,
+   * closing the connection.
+   *
+   * @return  the details or <code>null</code> when the node is not found
+   *
+   * @throws  IOException  when the server does not support details
+   *
+   * @see  DetailCache
+   */
+  private NodeDetail downloadDetail(final String[] path) throws IOException {
+    if (detailsUnsupported) {
+      throw new IOException("Server does not support node details");
+    }
+    DownloadFuture future = downloadWorker.submit(
+      new KeptRequest(Diagnostics.NO_CYCLE) {
+        void write(DataOutputStream out, boolean first) throws IOException {
+          out.writeByte(Protocol.REQUEST_DETAIL);
+          out.writeByte(path.length);
+          for (int c=0; c<path.length; c++) out.writeUTF(path[c]);
+        }
+
+        Object read(byte response, SnapshotInput in, DownloadFuture future) throws IOException {
+          if (response == Protocol.RESPONSE_DETAIL) {
+            return NodeDetail.read(in);
+          }
+          if (response == Protocol.RESPONSE_NO_DETAIL) {
+            return null;
+          }
+          throw new IOException("Unexpected response: "+response);
+        }
+
+        Object readLegacy(SnapshotInput in, DownloadFuture future) throws IOException {
+          detailsUnsupported = true;
+          throw new IOException("Server does not support node details");
+        }
+      }
+    );
+    return (NodeDetail)future.get(TIMEOUT_DURATION);
+  }
+
+  /**
+   * Adds a listener.  Listeners are called on their own threads, and a listener
+   * that falls behind is given only the most recent snapshot.
+   */
   void addUpdaterListener(UpdaterListener listener) {
-    synchronized (listeners) {
-      listeners.addElement(listener);
+    synchronized (listenersLock) {
+      ListenerDispatcher[] oldListeners = listeners;
+      int len = oldListeners.length;
+      ListenerDispatcher[] newListeners = new ListenerDispatcher[len+1];
+      System.arraycopy(oldListeners, 0, newListeners, 0, len);
+      newListeners[len] = new ListenerDispatcher(listener);
+      listeners = newListeners;
     }
   }
 
+  /**
+   * Removes a listener.  Events not yet delivered to the listener are
+   * discarded.
+   */
   void removeUpdaterListener(UpdaterListener listener) {
-    synchronized (listeners) {
-      for (int c=listeners.size()-1;c >= 0;c--) {
-        if (listeners.elementAt(c) == listener) {
-          listeners.removeElementAt(c);
+    synchronized (listenersLock) {
+      ListenerDispatcher[] oldListeners = listeners;
+      int len = oldListeners.length;
+      int numRemaining = 0;
+      for (int c=0; c<len; c++) {
+        if (oldListeners[c].getListener() != listener) {
+          numRemaining++;
         }
       }
+      if (numRemaining<len) {
+        ListenerDispatcher[] newListeners = new ListenerDispatcher[numRemaining];
+        int index = 0;
+        for (int c=0; c<len; c++) {
+          ListenerDispatcher dispatcher = oldListeners[c];
+          if (dispatcher.getListener() != listener) {
+            newListeners[index++] = dispatcher;
+          } else {
+            dispatcher.close();
+          }
+        }
+        listeners = newListeners;
+      }
     }
   }
 
   private void notifyListenersNodesUpdated(NodeSnapshot snapshot) {
-    synchronized (listeners) {
-      for (int c=0, len=listeners.size(); c<len; c++) {
-        try {
-          ((UpdaterListener)listeners.elementAt(c)).nodesUpdated(snapshot);
-        } catch (Exception err) {
-          alert(err);
-        }
-      }
+    ListenerDispatcher[] currentListeners = listeners;
+    for (int c=0, len=currentListeners.length; c<len; c++) {
+      currentListeners[c].nodesUpdated(snapshot);
+    }
+  }
+
+  private void notifyListenersAlertTransitions(AlertTransition[] transitions) {
+    ListenerDispatcher[] currentListeners = listeners;
+    for (int c=0, len=currentListeners.length; c<len; c++) {
+      currentListeners[c].alertTransitions(transitions);
     }
   }
 
   private void alert(Exception err) {
-    synchronized (listeners) {
-      for (int c=0, len=listeners.size(); c<len; c++) {
-        try {
-          ((UpdaterListener)listeners.elementAt(c)).alert(err);
-        } catch (Exception err2) {
-          err2.printStackTrace();
-        }
-      }
+    ListenerDispatcher[] currentListeners = listeners;
+    for (int c=0, len=currentListeners.length; c<len; c++) {
+      currentListeners[c].alert(err);
     }
   }
 }
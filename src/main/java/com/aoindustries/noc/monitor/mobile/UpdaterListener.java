@@ -1,6 +1,6 @@
 /*
  * noc-monitor-mobile - Java ME Interface for Network Operations Center Monitoring.
- * Copyright (C) 2009, 2020, 2022  AO Industries, Inc.
+ * Copyright (C) 2009, 2020, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -38,6 +38,14 @@ public interface UpdaterListener {
    */
   void nodesUpdated(NodeSnapshot snapshot);
 
+  /**
+   * Called when nodes change between critical and other alert levels, or
+   * appear or disappear, in the order they were found.  Every transition is
+   * delivered, even when the snapshots themselves are replaced by newer ones
+   * before delivery.
+   */
+  void alertTransitions(AlertTransition[] transitions);
+
   /**
    * Called when an exception occurs.
    */